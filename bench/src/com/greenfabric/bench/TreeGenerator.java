@@ -0,0 +1,286 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Makes a directory tree to search, the same one every time for the same
+ * settings and seed, so that benchmark runs on different machines search the
+ * same thing.
+ * <p>
+ *
+ * Every directory down to the given depth has the same number of
+ * subdirectories, the fanout, and of files. Names are random letters and
+ * digits, of lengths spread evenly between a minimum and a maximum, with an
+ * extension drawn from a weighted list, like a source tree's: mostly .java,
+ * some .class, .txt, and so on. Some names have characters that need quoting
+ * in a shell or a URL. Some files are symbolic links to a file made just
+ * before, and some files have contents, of a few KB, so that sizes differ.
+ * <p>
+ *
+ * The number of entries depends only on the fanout, depth and files per
+ * directory, and is returned by countEntries(), so that a benchmark can tell
+ * how many it's passing over per run.
+ *
+ * <pre>
+ * java com.greenfabric.bench.TreeGenerator /tmp/tree [fanout depth files [seed]]
+ * </pre>
+ */
+public final class TreeGenerator {
+
+	/**
+	 * The settings of the tree the benchmarks search, and its number of
+	 * entries, counting the root.
+	 */
+	public static final int STANDARD_FANOUT = 6;
+
+	public static final int STANDARD_DEPTH = 3;
+
+	public static final int STANDARD_FILES = 24;
+
+	public static final int STANDARD_ENTRIES = 1 + 6 + 36 + 216 + 24 * (1 + 6 + 36 + 216);
+
+	private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_-";
+
+	private static final String SPECIAL = " '\"$&()[]*?#%";
+
+	private static final String[] EXTENSIONS = { "java", "class", "txt", "xml", "html", "png", "c", "h", "log", "" };
+
+	private static final int[] EXTENSION_WEIGHTS = { 40, 20, 8, 8, 6, 5, 4, 4, 3, 2 };
+
+	private final long seed;
+
+	private int fanout = STANDARD_FANOUT;
+
+	private int depth = STANDARD_DEPTH;
+
+	private int filesPerDirectory = STANDARD_FILES;
+
+	private int minNameLength = 4;
+
+	private int maxNameLength = 16;
+
+	private int symlinkEvery = 12;
+
+	private int specialNameEvery = 20;
+
+	private int contentEvery = 4;
+
+	private Random random;
+
+	/**
+	 * Constructs a new TreeGenerator that makes the standard tree, from the
+	 * given seed.
+	 */
+	public TreeGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	public void setFanout(int fanout) {
+		this.fanout = fanout;
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public void setFilesPerDirectory(int files) {
+		filesPerDirectory = files;
+	}
+
+	/**
+	 * Specify the shortest and longest names, not counting extensions.
+	 */
+	public void setNameLengths(int min, int max) {
+		minNameLength = min;
+		maxNameLength = max;
+	}
+
+	/**
+	 * Specify that one file in so many is a symbolic link, or 0 for none.
+	 */
+	public void setSymlinkEvery(int n) {
+		symlinkEvery = n;
+	}
+
+	/**
+	 * Specify that one name in so many has characters that need quoting, or 0
+	 * for none.
+	 */
+	public void setSpecialNameEvery(int n) {
+		specialNameEvery = n;
+	}
+
+	/**
+	 * Return the number of entries a tree with the given settings has,
+	 * counting its root.
+	 */
+	public static int countEntries(int fanout, int depth, int filesPerDirectory) {
+		int directories = 1;
+		int level = 1;
+		for (int d = 1; d <= depth; d++) {
+			level *= fanout;
+			directories += level;
+		}
+		return directories + directories * filesPerDirectory;
+	}
+
+	/**
+	 * Make the tree in the given directory, which must not exist yet, and
+	 * return the number of entries, counting the root.
+	 */
+	public int generate(File root) throws IOException {
+		if (root.exists()) {
+			throw new IOException(root + " already exists");
+		}
+		random = new Random(seed);
+		return generate(root, 0);
+	}
+
+	/**
+	 * Return the given number of made-up paths, with the same names a tree
+	 * would have, without making any files.
+	 */
+	public String[] paths(int count) {
+		random = new Random(seed);
+		String[] paths = new String[count];
+		StringBuffer path = new StringBuffer();
+		for (int i = 0; i < count; i++) {
+			path.setLength(0);
+			path.append("/tree");
+			int levels = random.nextInt(depth + 1);
+			for (int d = 0; d < levels; d++) {
+				path.append('/').append(name(i, false));
+			}
+			path.append('/').append(name(i, true));
+			paths[i] = path.toString();
+		}
+		return paths;
+	}
+
+	/**
+	 * Delete a tree made by generate().
+	 */
+	public static void delete(File root) {
+		File[] children = root.listFiles();
+		if (children != null && !Files.isSymbolicLink(root.toPath())) {
+			for (int i = 0; i < children.length; i++) {
+				delete(children[i]);
+			}
+		}
+		root.delete();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1 && args.length != 4 && args.length != 5) {
+			System.err.println("Usage: TreeGenerator directory [fanout depth files [seed]]");
+			System.exit(1);
+		}
+		TreeGenerator generator = new TreeGenerator(args.length == 5 ? Long.parseLong(args[4]) : 0);
+		if (args.length > 1) {
+			generator.setFanout(Integer.parseInt(args[1]));
+			generator.setDepth(Integer.parseInt(args[2]));
+			generator.setFilesPerDirectory(Integer.parseInt(args[3]));
+		}
+		System.out.println(generator.generate(new File(args[0])) + " entries");
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private int generate(File directory, int level) throws IOException {
+		if (!directory.mkdir()) {
+			throw new IOException("Can't make " + directory);
+		}
+		int entries = 1;
+		File previous = null;
+		for (int i = 0; i < filesPerDirectory; i++) {
+			File file = new File(directory, name(i, true));
+			if (symlinkEvery > 0 && previous != null && i % symlinkEvery == symlinkEvery - 1) {
+				Files.createSymbolicLink(file.toPath(), new File(previous.getName()).toPath());
+			} else {
+				FileOutputStream out = new FileOutputStream(file);
+				try {
+					if (contentEvery > 0 && random.nextInt(contentEvery) == 0) {
+						out.write(new byte[random.nextInt(8 * 1024)]);
+					}
+				} finally {
+					out.close();
+				}
+				previous = file;
+			}
+			entries++;
+		}
+		if (level < depth) {
+			for (int i = 0; i < fanout; i++) {
+				entries += generate(new File(directory, name(i, false)), level + 1);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Return a random name, made unique within its directory by its index.
+	 */
+	private String name(int index, boolean isFile) {
+		StringBuffer name = new StringBuffer();
+		int length = minNameLength + random.nextInt(maxNameLength - minNameLength + 1);
+		boolean special = specialNameEvery > 0 && random.nextInt(specialNameEvery) == 0;
+		for (int i = 0; i < length; i++) {
+			if (special && i == length / 2) {
+				name.append(SPECIAL.charAt(random.nextInt(SPECIAL.length())));
+			} else {
+				name.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+			}
+		}
+		name.append('.').append(index);
+		if (isFile) {
+			String extension = extension();
+			if (extension.length() > 0) {
+				name.append('.').append(extension);
+			}
+		}
+		return name.toString();
+	}
+
+	private String extension() {
+		int total = 0;
+		for (int i = 0; i < EXTENSION_WEIGHTS.length; i++) {
+			total += EXTENSION_WEIGHTS[i];
+		}
+		int pick = random.nextInt(total);
+		for (int i = 0; i < EXTENSIONS.length; i++) {
+			pick -= EXTENSION_WEIGHTS[i];
+			if (pick < 0) {
+				return EXTENSIONS[i];
+			}
+		}
+		return "";
+	}
+}
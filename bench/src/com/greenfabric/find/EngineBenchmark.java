@@ -0,0 +1,160 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.greenfabric.bench.TreeGenerator;
+import com.greenfabric.system.FileStat;
+
+/**
+ * Searches the standard generated tree with each engine, in each mode. Every
+ * benchmark passes over the whole tree once per invocation, and counts as
+ * one operation per entry, so the scores are in entries per second, and with
+ * <code>-prof gc</code>, gc.alloc.rate.norm is the bytes allocated per
+ * entry.
+ * <p>
+ *
+ * The engine is "off", for the Java engine, or "on", for find(1). The modes
+ * are "names", every entry's name and nothing more, "regex", only the .java
+ * files, and "stats", every entry along with its attributes, as for a printf
+ * format or a sort.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+	@Param({ "off", "on" })
+	public String engine;
+
+	@Param({ "names", "regex", "stats" })
+	public String mode;
+
+	private File root;
+
+	private FindPlan plan;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		if (engine.equals("on") && !GnuNativeFind.canFunction()) {
+			throw new IllegalStateException("find(1) can't be run here");
+		}
+		root = new File(System.getProperty("java.io.tmpdir"), "javafind-bench-" + System.nanoTime());
+		int entries = new TreeGenerator(0).generate(root);
+		if (entries != TreeGenerator.STANDARD_ENTRIES) {
+			throw new IllegalStateException("The tree has " + entries + " entries");
+		}
+		Find options = new Find(root.getPath());
+		options.setOptimizeMode(engine);
+		if (mode.equals("regex")) {
+			options.setPattern("/\\.java$/");
+		} else if (mode.equals("stats")) {
+			options.setMatchStats(true);
+		}
+		plan = new FindQuery(options).compile();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		TreeGenerator.delete(root);
+	}
+
+	/**
+	 * The public API: a search that collects the matches, and an Iterator
+	 * over them.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TreeGenerator.STANDARD_ENTRIES)
+	public void listRecursively(Blackhole bh) throws IOException {
+		Iterator<String> matches = plan.newFind(root.getPath()).listRecursively();
+		while (matches.hasNext()) {
+			bh.consume(matches.next());
+		}
+	}
+
+	/**
+	 * The engine alone: the matches go straight to a consumer.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TreeGenerator.STANDARD_ENTRIES)
+	public void consume(final Blackhole bh) throws IOException {
+		Find find = plan.newFind(root.getPath());
+		find.setOutput(new MatchConsumer() {
+			public void receive(String path) {
+				bh.consume(path);
+			}
+
+			public void receive(String path, int depth, FileStat stat) {
+				bh.consume(path);
+				bh.consume(stat);
+			}
+		});
+		find.search();
+	}
+
+	/**
+	 * The same search, with each directory a task on the MultiRootFind pool.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TreeGenerator.STANDARD_ENTRIES)
+	public void parallel(final Blackhole bh) throws IOException {
+		MultiRootFind find = new MultiRootFind(plan.getQuery(), new String[] { root.getPath() });
+		find.search(new RootedConsumer() {
+			public void receive(String root, String path) {
+				bh.consume(path);
+			}
+		}, null);
+	}
+
+	/**
+	 * Aggregation during the search, with no matches passed on.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TreeGenerator.STANDARD_ENTRIES)
+	public Object diskUsage() throws IOException {
+		return new DiskUsage(plan.getQuery()).search(root.getPath());
+	}
+}
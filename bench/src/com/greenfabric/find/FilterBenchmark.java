@@ -0,0 +1,116 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.FilenameFilter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greenfabric.bench.TreeGenerator;
+
+/**
+ * Runs the filename filters over generated paths, one path per operation, so
+ * the scores are in entries per second, and with <code>-prof gc</code>,
+ * gc.alloc.rate.norm is the bytes allocated per entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+	/*
+	 * A power of two, so that the next path is found with a mask.
+	 */
+	private static final int PATHS = 4096;
+
+	@Param({ "/\\.java$/", "/^\\/tree\\/[a-m]/i", "/(html|xml)$/" })
+	public String pattern;
+
+	private String[] paths;
+
+	private int next = 0;
+
+	private FilenameFilter regex;
+
+	private FilenameFilter negated;
+
+	private FilenameFilter all;
+
+	private SubtreePruner pruner;
+
+	@Setup
+	public void setUp() {
+		paths = new TreeGenerator(0).paths(PATHS);
+		regex = new RegexFilenameFilter(pattern);
+		negated = new NegatedRegexFilenameFilter(pattern);
+		all = new AllFilenameFilter();
+		pruner = SubtreePruner.forPattern(pattern);
+	}
+
+	@Benchmark
+	public boolean regex() {
+		return regex.accept(null, nextPath());
+	}
+
+	@Benchmark
+	public boolean negatedRegex() {
+		return negated.accept(null, nextPath());
+	}
+
+	@Benchmark
+	public boolean all() {
+		return all.accept(null, nextPath());
+	}
+
+	/**
+	 * The check that decides whether a directory is searched at all. It's
+	 * null for patterns that can't rule any out.
+	 */
+	@Benchmark
+	public boolean pruner() {
+		return pruner == null || pruner.mayContainMatches(nextPath());
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private String nextPath() {
+		next = (next + 1) & (PATHS - 1);
+		return paths[next];
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.greenfabric.bench.TreeGenerator;
+
+/**
+ * Checks the entries of the standard generated tree for symbolic links, and
+ * stats them, one entry per operation, so the scores are in entries per
+ * second, and with <code>-prof gc</code>, gc.alloc.rate.norm is the bytes
+ * allocated per entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymLinkBenchmark {
+
+	private File root;
+
+	private File[] files;
+
+	private int next = 0;
+
+	private OSInfo osInfo;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		root = new File(System.getProperty("java.io.tmpdir"), "javafind-bench-" + System.nanoTime());
+		new TreeGenerator(0).generate(root);
+		List<File> all = new ArrayList<File>();
+		collect(root, all);
+		files = all.toArray(new File[all.size()]);
+		osInfo = SystemPack.getOSInfo();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		TreeGenerator.delete(root);
+	}
+
+	@Benchmark
+	public boolean isSymLink() throws IOException {
+		return osInfo.isSymLink(nextFile());
+	}
+
+	@Benchmark
+	public FileStat lstat() throws IOException {
+		return osInfo.stat(nextFile(), false);
+	}
+
+	@Benchmark
+	public FileStat stat() throws IOException {
+		return osInfo.stat(nextFile(), true);
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private File nextFile() {
+		if (++next == files.length) {
+			next = 0;
+		}
+		return files[next];
+	}
+
+	private static void collect(File file, List<File> all) {
+		all.add(file);
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++) {
+				collect(children[i], all);
+			}
+		}
+	}
+}
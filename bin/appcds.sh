@@ -0,0 +1,74 @@
+#!/bin/bash
+#
+# Build a class data sharing (AppCDS) archive for the javafind command line,
+# and measure how long the first result takes with and without it.
+#
+# Usage: bin/appcds.sh CLASSES ORO_JAR [TREE]
+#
+#   CLASSES  the compiled javafind classes: a directory or a jar.
+#   ORO_JAR  the Jakarta ORO jar.
+#   TREE     the directory to search in the training and timing runs.
+#            Default: a small generated tree.
+#
+# The archive only holds classes loaded from jars, so a directory of classes
+# is packed into build/javafind.jar first. Then a training run records
+# every class the command line loads, into build/javafind.jsa. Run the
+# command line with the same class path and
+#
+#   java -XX:SharedArchiveFile=build/javafind.jsa -cp ... com.greenfabric.find.Find ...
+#
+# to start from the archive. It must be rebuilt whenever the classes or the
+# JDK change; a stale one is ignored, with a warning.
+#
+# Requires JDK 13 or later, for -XX:ArchiveClassesAtExit.
+
+set -e
+
+if [ $# -lt 2 ]; then
+    sed -n '4,11p' "$0" | sed 's/^# \{0,1\}//'
+    exit 1
+fi
+CLASSES=$1
+ORO_JAR=$2
+TREE=$3
+BUILD=build
+RUNS=${RUNS:-10}
+
+mkdir -p $BUILD
+JAR=$CLASSES
+if [ -d "$CLASSES" ]; then
+    JAR=$BUILD/javafind.jar
+    jar cf $JAR -C "$CLASSES" .
+fi
+CP=$JAR:$ORO_JAR
+
+if [ -z "$TREE" ]; then
+    TREE=$BUILD/tree
+    rm -rf $TREE
+    for d in 1 2 3 4 5; do
+	mkdir -p $TREE/d$d/sub
+	for f in 1 2 3 4 5 6 7 8; do
+	    touch $TREE/d$d/f$f.java $TREE/d$d/sub/f$f.txt
+	done
+    done
+fi
+
+# The training run: the plain Java engine and a regex, so that the classes
+# both paths need are archived.
+java -XX:ArchiveClassesAtExit=$BUILD/javafind.jsa -Djavafind.allowoptimize=off \
+    -cp $CP com.greenfabric.find.Find "$TREE" '/\.java$/' > /dev/null
+java -XX:SharedArchiveFile=$BUILD/javafind.jsa -cp $CP com.greenfabric.find.Find "$TREE" > /dev/null
+
+# Print the median time, in milliseconds, from starting the JVM to reading
+# the first line it prints.
+first_result() {
+    for i in $(seq $RUNS); do
+	start=$(date +%s%N)
+	{ read -r line; end=$(date +%s%N); cat > /dev/null; } < <(java "$@" -cp $CP com.greenfabric.find.Find "$TREE")
+	echo $(( (end - start) / 1000000 ))
+    done | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p"
+}
+
+echo "Time to first result, median of $RUNS runs:"
+echo "  without archive: $(first_result -Xshare:auto) ms"
+echo "  with archive:    $(first_result -XX:SharedArchiveFile=$BUILD/javafind.jsa) ms"
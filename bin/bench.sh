@@ -0,0 +1,39 @@
+#!/bin/bash
+#
+# Build and run the JMH benchmarks in bench/src.
+#
+# Usage: bin/bench.sh ORO_JAR JMH_CLASSPATH [JMH options]
+#
+#   ORO_JAR        the Jakarta ORO jar.
+#   JMH_CLASSPATH  the JMH jars, separated by colons: jmh-core,
+#                  jmh-generator-annprocess, jopt-simple and commons-math3.
+#   JMH options    passed on, e.g. a benchmark name or -p engine=off.
+#                  Default: all of them.
+#
+# The benchmarks are compiled together with the javafind sources, into
+# build/bench, since some of them use classes that are private to their
+# packages. They're run with the GC profiler, so that alongside the scores,
+# in entries per second, gc.alloc.rate.norm gives the bytes allocated per
+# entry.
+#
+# The trees they search are made by com.greenfabric.bench.TreeGenerator,
+# which can also be run on its own:
+#
+#   java -cp build/bench/classes com.greenfabric.bench.TreeGenerator DIR [FANOUT DEPTH FILES [SEED]]
+
+set -e
+
+if [ $# -lt 2 ]; then
+    sed -n '4,12p' "$0" | sed 's/^# \{0,1\}//'
+    exit 1
+fi
+ORO_JAR=$1
+JMH_CLASSPATH=$2
+shift 2
+BUILD=build/bench
+
+rm -rf $BUILD
+mkdir -p $BUILD/classes
+javac -encoding UTF-8 -cp "$ORO_JAR:$JMH_CLASSPATH" -d $BUILD/classes \
+    $(find src bench/src -name '*.java')
+java -cp "$BUILD/classes:$ORO_JAR:$JMH_CLASSPATH" org.openjdk.jmh.Main -prof gc "$@"
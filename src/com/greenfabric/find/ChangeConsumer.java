@@ -0,0 +1,50 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+/**
+ * Classes that handle the output of a snapshot diff implement this interface.
+ * It plays the same closure-like role for snapshot diffs that StdOutConsumer
+ * plays for find results. Changes are reported in path order.
+ *
+ * @see Snapshot
+ * @see Find#diffSnapshot(java.io.File, ChangeConsumer)
+ */
+public interface ChangeConsumer {
+
+	/**
+	 * The entry exists now, but didn't when the older snapshot was taken.
+	 */
+	public void added(SnapshotEntry entry);
+
+	/**
+	 * The entry existed when the older snapshot was taken, but doesn't now.
+	 */
+	public void removed(SnapshotEntry entry);
+
+	/**
+	 * The entry exists in both, but its size, modification time, inode or type
+	 * changed.
+	 */
+	public void modified(SnapshotEntry before, SnapshotEntry after);
+}
@@ -0,0 +1,178 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.greenfabric.system.StdOutConsumer;
+import com.greenfabric.system.SystemPack;
+
+/**
+ * Implements Find's "modified since checkpoint" mode. It's meant to be used
+ * only from within this package.
+ * <p>
+ *
+ * A checkpoint file is a snapshot (see Snapshot) whose creation time is the
+ * checkpoint time: the moment the last successful run began. The pure-Java
+ * engine diffs the tree against it, which means that directories whose
+ * modification time hasn't changed aren't listed again, and only new and
+ * modified entries are reported. It then replaces the checkpoint with a new
+ * snapshot recorded during the same traversal.
+ * <p>
+ *
+ * The native engine can't use the recorded directory times, so it lets find(1)
+ * compare the entries' modification and status change times against the
+ * checkpoint time instead. Afterwards it writes a checkpoint holding only the
+ * time. When the Java engine meets such a checkpoint, it falls back to the
+ * same time comparison for one run, and records a full snapshot again.
+ * <p>
+ *
+ * A search that stops early, at its result limit or because it was cancelled,
+ * leaves the checkpoint where it was, so the next run reports everything that
+ * this one didn't get to.
+ */
+final class Checkpoint {
+
+	private Checkpoint() {
+	}
+
+	/**
+	 * Return the time of the checkpoint, or Find.NO_TIME if there's no
+	 * checkpoint yet.
+	 */
+	static long getTime(File checkpointFile) throws IOException {
+		if (!checkpointFile.exists()) {
+			return Find.NO_TIME;
+		}
+		SnapshotReader reader = new SnapshotReader(checkpointFile);
+		try {
+			return reader.getCreated();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Return the latest time that is safe to compare entry times against. Many
+	 * file systems only keep whole seconds, so a file written just after the
+	 * checkpoint was taken can have a time that is before it. Going back to the
+	 * start of the previous second means such files are reported again rather
+	 * than missed.
+	 */
+	static long floorSeconds(long time) {
+		if (time == Find.NO_TIME) {
+			return time;
+		}
+		return Math.floorDiv(time, 1000L) * 1000L - 1000L;
+	}
+
+	/**
+	 * Send every entry that is new or modified since the checkpoint to the
+	 * consumer, and then update the checkpoint.
+	 */
+	static void findChanged(final Find find, File checkpointFile, final StdOutConsumer consumer)
+			throws IOException {
+		SnapshotReader reader;
+		if (checkpointFile.exists()) {
+			reader = new SnapshotReader(checkpointFile);
+		} else {
+			reader = SnapshotReader.empty(find.getPath());
+		}
+
+		/*
+		 * An empty checkpoint was written by the native engine, and has nothing but
+		 * the time. Everything will be reported as added, so the additions have to
+		 * be filtered by time.
+		 */
+		final long since = reader.peek() == null ? floorSeconds(reader.getCreated()) : Find.NO_TIME;
+
+		ChangeConsumer changes = new ChangeConsumer() {
+			public void added(SnapshotEntry entry) {
+				if (since == Find.NO_TIME || isChangedSince(find, entry, since)) {
+					emit(find, entry, consumer);
+				}
+			}
+
+			public void removed(SnapshotEntry entry) {
+			}
+
+			public void modified(SnapshotEntry before, SnapshotEntry after) {
+				emit(find, after, consumer);
+			}
+		};
+		Snapshot.diff(find, reader, changes, checkpointFile);
+	}
+
+	/**
+	 * Replace the checkpoint with one that records only the given time. This is
+	 * what the native engine leaves behind.
+	 */
+	static void writeTime(Find find, File checkpointFile, long time) throws IOException {
+		new SnapshotWriter(checkpointFile, find.getPath(), time).commit();
+	}
+
+	/**
+	 * Return true if the entry was modified, or had its status changed (e.g. by
+	 * being moved into the tree), after the given time.
+	 */
+	private static boolean isChangedSince(Find find, SnapshotEntry entry, long since) {
+		if (entry.getLastModified() > since) {
+			return true;
+		}
+		try {
+			return SystemPack.getOSInfo().stat(file(find, entry), find.getFollow()).getLastChanged() > since;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Pass on an added or modified entry, if it's deep enough and passes the
+	 * find's other tests. The snapshot diff has checked its name and type.
+	 */
+	private static void emit(Find find, SnapshotEntry entry, StdOutConsumer consumer) {
+		if (depth(entry) >= find.getMinDepth()) {
+			File file = file(find, entry);
+			if (find.passesTests(file)) {
+				consumer.receive(file.getPath());
+			}
+		}
+	}
+
+	private static File file(Find find, SnapshotEntry entry) {
+		return entry.getPath().length() == 0 ? find : new File(find, entry.getPath());
+	}
+
+	private static int depth(SnapshotEntry entry) {
+		String path = entry.getPath();
+		if (path.length() == 0) {
+			return 0;
+		}
+		int depth = 1;
+		for (int i = path.indexOf(File.separatorChar); i != -1; i = path.indexOf(File.separatorChar, i + 1)) {
+			depth++;
+		}
+		return depth;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.oro.text.perl.MalformedPerl5PatternException;
+import org.apache.oro.text.regex.MalformedPatternException;
+import org.apache.oro.text.regex.Pattern;
+import org.apache.oro.text.regex.Perl5Compiler;
+import org.apache.oro.text.regex.Perl5Matcher;
+
+/**
+ * A Perl 5 regex in the syntax Perl5Util.match() takes, like
+ * <code>/\.html?$/i</code>, compiled once. It's meant to be used only from
+ * within this package.
+ * <p>
+ *
+ * A Perl5Util keeps its compiled patterns and its last match in the instance,
+ * so the filters that used to share one had to take turns, and looked the
+ * pattern up again for every filename. A compiled Pattern can be shared by
+ * any number of threads; each thread gets its own matcher. So a CompiledRegex
+ * can be used from many searches at once, without locking.
+ * <p>
+ *
+ * The most recently used patterns are kept, so a long-running process, like
+ * FindDaemon, compiles a pattern it sees again and again only once.
+ */
+final class CompiledRegex {
+
+	private static final int CACHE_SIZE = 64;
+
+	private static final Map<String, CompiledRegex> cache = new LinkedHashMap<String, CompiledRegex>(CACHE_SIZE,
+			0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<String, CompiledRegex> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private final Pattern pattern;
+
+	private final ThreadLocal<Perl5Matcher> matcher = new ThreadLocal<Perl5Matcher>() {
+		protected Perl5Matcher initialValue() {
+			return new Perl5Matcher();
+		}
+	};
+
+	private CompiledRegex(Pattern pattern) {
+		this.pattern = pattern;
+	}
+
+	/**
+	 * Compile a pattern written like <code>/regex/flags</code> or
+	 * <code>m#regex#flags</code>, with any of the flags i, m, s and x.
+	 *
+	 * @exception MalformedPerl5PatternException if the pattern isn't valid.
+	 */
+	static CompiledRegex compile(String perlPattern) throws MalformedPerl5PatternException {
+		CompiledRegex regex;
+		synchronized (cache) {
+			regex = cache.get(perlPattern);
+		}
+		if (regex == null) {
+			regex = parse(perlPattern);
+			synchronized (cache) {
+				cache.put(perlPattern, regex);
+			}
+		}
+		return regex;
+	}
+
+	/**
+	 * Return true if the regex matches somewhere in the given string.
+	 */
+	boolean matches(String s) {
+		return matcher.get().contains(s, pattern);
+	}
+
+	/**
+	 * Return where the regex first matches in the given string, or -1 if it
+	 * doesn't match.
+	 */
+	int indexIn(String s) {
+		Perl5Matcher m = matcher.get();
+		return m.contains(s, pattern) ? m.getMatch().beginOffset(0) : -1;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static CompiledRegex parse(String perlPattern) throws MalformedPerl5PatternException {
+		int start = perlPattern.startsWith("m") ? 1 : 0;
+		if (perlPattern.length() < start + 2 || (start == 0 && perlPattern.charAt(0) != '/')) {
+			throw new MalformedPerl5PatternException("Invalid expression: " + perlPattern);
+		}
+		char delimiter = perlPattern.charAt(start);
+		int end = perlPattern.lastIndexOf(delimiter);
+		if (end == start) {
+			throw new MalformedPerl5PatternException("Invalid expression: " + perlPattern);
+		}
+
+		int options = Perl5Compiler.READ_ONLY_MASK;
+		for (int i = end + 1; i < perlPattern.length(); i++) {
+			switch (perlPattern.charAt(i)) {
+			case 'i':
+				options |= Perl5Compiler.CASE_INSENSITIVE_MASK;
+				break;
+			case 'm':
+				options |= Perl5Compiler.MULTILINE_MASK;
+				break;
+			case 's':
+				options |= Perl5Compiler.SINGLELINE_MASK;
+				break;
+			case 'x':
+				options |= Perl5Compiler.EXTENDED_MASK;
+				break;
+			case 'o':
+			case 'g':
+				break; // Meaningless here, and ignored by Perl5Util, too.
+			default:
+				throw new MalformedPerl5PatternException("Invalid option: " + perlPattern);
+			}
+		}
+
+		try {
+			return new CompiledRegex(new Perl5Compiler().compile(perlPattern.substring(start + 1, end), options));
+		} catch (MalformedPatternException e) {
+			throw new MalformedPerl5PatternException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+/**
+ * Classes that handle the output of a content search implement this
+ * interface. The lines that match in one file are passed on together, in
+ * order, and only one thread at a time passes anything on, so an
+ * implementation doesn't have to be thread-safe. The files themselves come in
+ * no particular order.
+ *
+ * @see ContentSearch
+ */
+public interface ContentConsumer {
+
+	/**
+	 * Take a matching line.
+	 *
+	 * @param path   the file's pathname.
+	 * @param line   the line's number, starting at 1.
+	 * @param offset where in the file the first match on the line starts, in
+	 *               bytes.
+	 * @param text   the line, without its line terminator.
+	 */
+	public void receive(String path, int line, long offset, String text);
+}
@@ -0,0 +1,497 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+import org.apache.oro.text.perl.MalformedPerl5PatternException;
+
+import com.greenfabric.system.FileStat;
+
+/**
+ * Searches the contents of a search's matches for a string or a regex, like
+ * grep. Each matching line is passed on to a ContentConsumer with its file,
+ * line number and byte offset.
+ * <p>
+ *
+ * Files are searched in parallel, on a ForkJoinPool, while the search goes
+ * on: each match is handed to the pool as soon as it's found, so reading and
+ * traversing overlap. If the pool falls behind, the search waits for it,
+ * rather than queueing up more than a few files per thread. Small files are
+ * read whole into a direct buffer that each thread reuses; large ones are
+ * memory-mapped, 64 MB at a time, or more for a line that's longer than
+ * that; only lines over 2 GB are searched in pieces. Only regular files are searched, and files
+ * with a NUL byte near the start are taken to be binary and skipped, like grep
+ * does. Files that can't be read are skipped, too.
+ * <p>
+ *
+ * A string is compared byte for byte, in the default charset, without
+ * decoding the file. A regex is matched against each line, decoded in the
+ * default charset, so it's slower. The offset is that of the first match on
+ * the line.
+ *
+ * <pre>
+ * Find find = new Find(&quot;src&quot;);
+ * find.setPattern(&quot;/\\.java$/&quot;);
+ * ContentSearch todo = ContentSearch.forString(&quot;TODO&quot;);
+ * todo.setConsumer(new ContentConsumer() {
+ * 	public void receive(String path, int line, long offset, String text) {
+ * 		System.out.println(path + &quot;:&quot; + line + &quot;:&quot; + text);
+ * 	}
+ * });
+ * find.setContentSearch(todo);
+ * find.search();
+ * </pre>
+ *
+ * @see Find#setContentSearch(ContentSearch)
+ */
+public final class ContentSearch implements MatchConsumer {
+
+	/**
+	 * Files up to this size are read into a buffer; larger ones are mapped.
+	 */
+	static final int SMALL_FILE = 256 * 1024;
+
+	/**
+	 * How much of a large file is mapped at once.
+	 */
+	static final long WINDOW = 64L * 1024 * 1024;
+
+	/**
+	 * The most of a large file that can be mapped at once.
+	 */
+	private static final long MAX_WINDOW = Integer.MAX_VALUE;
+
+	/**
+	 * How much of the start of a file is checked for NUL bytes.
+	 */
+	private static final int BINARY_CHECK = 8 * 1024;
+
+	/**
+	 * How many files per thread can wait to be searched.
+	 */
+	private static final int QUEUE_PER_THREAD = 4;
+
+	private static ForkJoinPool defaultPool;
+
+	private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(SMALL_FILE);
+		}
+	};
+
+	private final String pattern;
+
+	/*
+	 * The encoded string, or null if I search for a regex.
+	 */
+	private final byte[] literal;
+
+	private final CompiledRegex regex;
+
+	private final Charset charset = Charset.defaultCharset();
+
+	private ContentConsumer consumer;
+
+	private ForkJoinPool pool;
+
+	private Semaphore slots;
+
+	private int slotCount;
+
+	private volatile boolean stopped = false;
+
+	/*
+	 * Held while the lines of a file are passed on, and guards the counts.
+	 */
+	private final Object output = new Object();
+
+	private long filesSearched = 0;
+
+	private long filesMatched = 0;
+
+	private long linesMatched = 0;
+
+	private ContentSearch(String pattern, byte[] literal, CompiledRegex regex) {
+		this.pattern = pattern;
+		this.literal = literal;
+		this.regex = regex;
+	}
+
+	/**
+	 * Return a ContentSearch for lines that contain the given string.
+	 */
+	public static ContentSearch forString(String text) {
+		if (text.length() == 0) {
+			throw new IllegalArgumentException("The string to search for is empty.");
+		}
+		return new ContentSearch(text, text.getBytes(Charset.defaultCharset()), null);
+	}
+
+	/**
+	 * Return a ContentSearch for lines that match the given regex, written
+	 * like the pattern of a Find, e.g. <code>/todo|fixme/i</code>.
+	 *
+	 * @exception MalformedPerl5PatternException if the regex has a syntax
+	 *                                           error.
+	 */
+	public static ContentSearch forRegex(String perlPattern) throws MalformedPerl5PatternException {
+		return new ContentSearch(perlPattern, null, CompiledRegex.compile(perlPattern));
+	}
+
+	/**
+	 * Return the string or regex I search for.
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Specify where the matching lines go. Without a consumer, they're only
+	 * counted.
+	 */
+	public void setConsumer(ContentConsumer consumer) {
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Specify the pool to search on. Default is a pool shared by all
+	 * ContentSearches, with a thread per processor, or as many as the
+	 * <b>javafind.threads</b> system property says. It has to be set before the
+	 * search starts.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Return the pool that ContentSearches search on unless told otherwise.
+	 */
+	public static synchronized ForkJoinPool getDefaultPool() {
+		if (defaultPool == null) {
+			defaultPool = new ForkJoinPool(
+					Integer.getInteger("javafind.threads", Runtime.getRuntime().availableProcessors()).intValue());
+		}
+		return defaultPool;
+	}
+
+	/**
+	 * Return the number of files that have been searched, not counting binary
+	 * or unreadable ones.
+	 */
+	public long getFilesSearched() {
+		synchronized (output) {
+			return filesSearched;
+		}
+	}
+
+	/**
+	 * Return the number of files with at least one matching line.
+	 */
+	public long getFilesMatched() {
+		synchronized (output) {
+			return filesMatched;
+		}
+	}
+
+	/**
+	 * Return the number of matching lines.
+	 */
+	public long getLinesMatched() {
+		synchronized (output) {
+			return linesMatched;
+		}
+	}
+
+	/**
+	 * Take a match that comes without its attributes. It's searched if it's a
+	 * regular file.
+	 */
+	public void receive(String path) {
+		if (new File(path).isFile()) {
+			submit(path);
+		}
+	}
+
+	public void receive(String path, int depth, FileStat stat) {
+		if (stat == null) {
+			receive(path);
+		} else if (stat.isFile()) {
+			submit(path);
+		}
+	}
+
+	/**
+	 * Wait until all the files taken so far have been searched.
+	 *
+	 * @param cancelled true to stop searching the files right away.
+	 */
+	void finish(boolean cancelled) {
+		Semaphore s;
+		int n;
+		synchronized (this) {
+			s = slots;
+			n = slotCount;
+		}
+		if (s == null) {
+			return; // Nothing was searched.
+		}
+		stopped = cancelled;
+		s.acquireUninterruptibly(n);
+		s.release(n);
+		stopped = false;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Hand a file to the pool, once there's room in its queue. Until then, the
+	 * search waits here.
+	 */
+	private void submit(final String path) {
+		ForkJoinPool p;
+		Semaphore s;
+		synchronized (this) {
+			p = pool != null ? pool : getDefaultPool();
+			if (slots == null) {
+				slotCount = p.getParallelism() * QUEUE_PER_THREAD;
+				slots = new Semaphore(slotCount);
+			}
+			s = slots;
+		}
+		final Semaphore taken = s;
+		taken.acquireUninterruptibly();
+		try {
+			p.execute(new Runnable() {
+				public void run() {
+					try {
+						search(path);
+					} finally {
+						taken.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			taken.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Search one file, and pass on its matching lines.
+	 */
+	private void search(String path) {
+		if (stopped) {
+			return;
+		}
+		FileScan scan = new FileScan();
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(path);
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size <= SMALL_FILE) {
+				ByteBuffer buffer = buffers.get();
+				buffer.clear();
+				while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+					// Read it all; it may have grown, but it's read up to the buffer's size.
+				}
+				buffer.flip();
+				if (isBinary(buffer)) {
+					return;
+				}
+				scan.scan(buffer, 0, true);
+			} else {
+				long position = 0;
+				long windowSize = WINDOW;
+				while (position < size && !stopped) {
+					long length = Math.min(windowSize, size - position);
+					ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+					if (position == 0 && isBinary(window)) {
+						return;
+					}
+					int searched = scan.scan(window, position, position + length == size || length == MAX_WINDOW);
+					if (searched == 0) { // A line longer than the window: map more of it.
+						windowSize = Math.min(windowSize * 2, MAX_WINDOW);
+					} else {
+						position += searched;
+						windowSize = WINDOW;
+					}
+				}
+			}
+		} catch (IOException e) {
+			return; // Unreadable, or gone: skipped.
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// Nothing more to do.
+				}
+			}
+		}
+
+		synchronized (output) {
+			filesSearched++;
+			if (scan.hits.isEmpty()) {
+				return;
+			}
+			filesMatched++;
+			linesMatched += scan.hits.size();
+			if (consumer != null) {
+				for (int i = 0; i < scan.hits.size(); i++) {
+					Hit hit = scan.hits.get(i);
+					consumer.receive(path, hit.line, hit.offset, hit.text);
+				}
+			}
+		}
+	}
+
+	private static boolean isBinary(ByteBuffer buffer) {
+		int end = Math.min(buffer.limit(), BINARY_CHECK);
+		for (int i = 0; i < end; i++) {
+			if (buffer.get(i) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A matching line.
+	 */
+	private static final class Hit {
+		final int line;
+
+		final long offset;
+
+		final String text;
+
+		Hit(int line, long offset, String text) {
+			this.line = line;
+			this.offset = offset;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * The search of one file, which may take several buffers.
+	 */
+	private final class FileScan {
+		int line = 1;
+
+		final List<Hit> hits = new ArrayList<Hit>();
+
+		/**
+		 * Search the complete lines in a buffer that holds the file from the
+		 * given offset on. Unless it's the end of the file, a line that runs
+		 * past the buffer is left for the next one.
+		 *
+		 * @param atEnd true to search a last line that runs past the buffer, too.
+		 * @return the number of bytes searched, 0 if the buffer holds only part
+		 *         of a line.
+		 */
+		int scan(ByteBuffer buffer, long base, boolean atEnd) {
+			int limit = buffer.limit();
+			int start = 0;
+			while (start < limit) {
+				int end = indexOf(buffer, (byte) '\n', start, limit);
+				if (end == -1) {
+					if (!atEnd) {
+						return start;
+					}
+					end = limit;
+				}
+				match(buffer, start, end, base);
+				line++;
+				start = end + 1;
+			}
+			return limit;
+		}
+
+		private void match(ByteBuffer buffer, int start, int end, long base) {
+			if (literal != null) {
+				int at = indexOf(buffer, literal, start, end);
+				if (at != -1) {
+					add(base + at, decode(buffer, start, end));
+				}
+			} else {
+				String text = decode(buffer, start, end);
+				int at = regex.indexIn(text);
+				if (at != -1) {
+					add(base + start + text.substring(0, at).getBytes(charset).length, text);
+				}
+			}
+		}
+
+		private void add(long offset, String text) {
+			hits.add(new Hit(line, offset, text));
+		}
+
+		private String decode(ByteBuffer buffer, int start, int end) {
+			byte[] bytes = new byte[end - start];
+			ByteBuffer line = buffer.duplicate();
+			line.position(start);
+			line.get(bytes);
+			return new String(bytes, charset);
+		}
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte[] target, int from, int to) {
+		byte first = target[0];
+		int last = to - target.length;
+		for (int i = from; i <= last; i++) {
+			if (buffer.get(i) != first) {
+				continue;
+			}
+			int j = 1;
+			while (j < target.length && buffer.get(i + j) == target[j]) {
+				j++;
+			}
+			if (j == target.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
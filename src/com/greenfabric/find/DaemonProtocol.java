@@ -0,0 +1,275 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.greenfabric.system.CancellationToken;
+
+/**
+ * What FindClient and FindDaemon say to each other over their socket. It's
+ * meant to be used only from within this package.
+ * <p>
+ *
+ * The client sends one request: MAGIC, its working directory, its command
+ * line arguments, and its environment, for the commands of -exec. The daemon
+ * answers with frames, each a type byte, a length and that many bytes:
+ * output for the client's standard output and standard error, as it's
+ * produced, and last of all the exit status. Then it closes the connection.
+ */
+final class DaemonProtocol {
+
+	static final int MAGIC = 0x4A464432; // "JFD2"
+
+	static final byte STDOUT = 1;
+
+	static final byte STDERR = 2;
+
+	static final byte EXIT = 3;
+
+	private DaemonProtocol() {
+	}
+
+	/**
+	 * Return the address of the daemon's socket: the <b>javafind.socket</b>
+	 * system property, or else <code>javafind.sock</code> in this user's
+	 * runtime directory, $XDG_RUNTIME_DIR, or else in a directory of this
+	 * user's in the temp directory, <code>javafind-</code><i>user</i>.
+	 */
+	static UnixDomainSocketAddress getAddress() {
+		String path = System.getProperty("javafind.socket");
+		if (path == null) {
+			String runtime = System.getenv("XDG_RUNTIME_DIR");
+			File directory = runtime != null && runtime.length() > 0 ? new File(runtime)
+					: new File(System.getProperty("java.io.tmpdir"), "javafind-" + System.getProperty("user.name"));
+			path = new File(directory, "javafind.sock").getPath();
+		}
+		return UnixDomainSocketAddress.of(path);
+	}
+
+	/**
+	 * Make sure that the directory of the given socket is only usable by this
+	 * user, creating it if need be, so that no one else can connect to the
+	 * socket, or put one of their own in its place. It's created with those
+	 * permissions, rather than changed to them afterwards, so it's never open
+	 * to others.
+	 *
+	 * @exception IOException if it isn't a directory, belongs to someone else,
+	 *                        or can be used by others.
+	 */
+	static void makePrivateDirectory(Path socket) throws IOException {
+		Path directory = socket.toAbsolutePath().getParent();
+		boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+		if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+			try {
+				if (posix) {
+					Files.createDirectory(directory,
+							PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+				} else {
+					Files.createDirectory(directory);
+				}
+			} catch (FileAlreadyExistsException e) {
+				// Made by someone else meanwhile; it's checked below.
+			}
+		}
+		if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+			throw new IOException(directory + " isn't a directory");
+		}
+		if (!isMine(directory)) {
+			throw new IOException(directory + " belongs to someone else");
+		}
+		if (posix && !PosixFilePermissions.toString(Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS))
+				.endsWith("------")) {
+			throw new IOException(directory + " can be used by others; it should be mode 700");
+		}
+	}
+
+	/**
+	 * Return true if the given file, or the link itself if it's a symbolic
+	 * link, belongs to this user.
+	 */
+	static boolean isMine(Path path) throws IOException {
+		UserPrincipal me = path.getFileSystem().getUserPrincipalLookupService()
+				.lookupPrincipalByName(System.getProperty("user.name"));
+		return me.equals(Files.getOwner(path, LinkOption.NOFOLLOW_LINKS));
+	}
+
+	/**
+	 * Send a request.
+	 *
+	 * @exception IOException if it can't be sent, e.g. because an argument or
+	 *                        a variable is longer than 64 KB.
+	 */
+	static void writeRequest(DataOutputStream out, String directory, String[] args, Map<String, String> environment)
+			throws IOException {
+		out.writeInt(MAGIC);
+		out.writeUTF(directory);
+		out.writeInt(args.length);
+		for (int i = 0; i < args.length; i++) {
+			out.writeUTF(args[i]);
+		}
+		out.writeInt(environment.size());
+		Iterator<Map.Entry<String, String>> variables = environment.entrySet().iterator();
+		while (variables.hasNext()) {
+			Map.Entry<String, String> variable = variables.next();
+			out.writeUTF(variable.getKey());
+			out.writeUTF(variable.getValue());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a request.
+	 *
+	 * @exception IOException if it isn't a request.
+	 */
+	static Request readRequest(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a javafind request");
+		}
+		String directory = in.readUTF();
+		String[] args = new String[count(in.readInt())];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = in.readUTF();
+		}
+		int variables = count(in.readInt());
+		Map<String, String> environment = new HashMap<String, String>();
+		for (int i = 0; i < variables; i++) {
+			String name = in.readUTF();
+			environment.put(name, in.readUTF());
+		}
+		return new Request(directory, args, environment);
+	}
+
+	/**
+	 * Send the given bytes as one frame. Frames from different threads don't
+	 * mix, since the stream is locked for each.
+	 */
+	static void writeFrame(DataOutputStream out, byte type, byte[] b, int off, int len) throws IOException {
+		synchronized (out) {
+			out.writeByte(type);
+			out.writeInt(len);
+			out.write(b, off, len);
+			out.flush();
+		}
+	}
+
+	static void writeExit(DataOutputStream out, int status) throws IOException {
+		byte[] b = new byte[] { (byte) (status >>> 24), (byte) (status >>> 16), (byte) (status >>> 8),
+				(byte) status };
+		writeFrame(out, EXIT, b, 0, b.length);
+	}
+
+	private static int count(int n) throws IOException {
+		if (n < 0 || n > 64 * 1024) {
+			throw new IOException("Bad count in request: " + n);
+		}
+		return n;
+	}
+
+	/**
+	 * What a client asks the daemon to run, and where.
+	 */
+	static final class Request {
+		final String directory;
+
+		final String[] args;
+
+		final Map<String, String> environment;
+
+		Request(String directory, String[] args, Map<String, String> environment) {
+			this.directory = directory;
+			this.args = args;
+			this.environment = environment;
+		}
+	}
+
+	/**
+	 * A channel that sends what's written to it as frames of one type. If the
+	 * client has gone away, the search is cancelled, since there's no one left
+	 * to read its output.
+	 */
+	static final class FrameChannel extends OutputStream implements WritableByteChannel {
+		private final DataOutputStream out;
+
+		private final byte type;
+
+		private final CancellationToken token;
+
+		private boolean open = true;
+
+		FrameChannel(DataOutputStream out, byte type, CancellationToken token) {
+			this.out = out;
+			this.type = type;
+			this.token = token;
+		}
+
+		public int write(ByteBuffer src) throws IOException {
+			int n = src.remaining();
+			byte[] b = new byte[n];
+			src.get(b);
+			write(b, 0, n);
+			return n;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return;
+			}
+			try {
+				writeFrame(out, type, b, off, len);
+			} catch (IOException e) {
+				token.cancel();
+				throw e;
+			}
+		}
+
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public boolean isOpen() {
+			return open;
+		}
+
+		public void close() {
+			open = false;
+		}
+	}
+}
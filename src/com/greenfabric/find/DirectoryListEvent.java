@@ -0,0 +1,57 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A flight recorder event for one directory listed by the Java engine, so
+ * that a recording shows which directories a slow search spent its time in.
+ * By default only listings that take 10 ms or more are recorded; the
+ * threshold can be changed in a .jfc file, like bin/javafind.jfc.
+ * <p>
+ *
+ * The path is only worked out for an event that's going to be committed. The
+ * event is only created once the flight recorder has been started, so that a
+ * search that isn't recorded doesn't load jdk.jfr; see FlightRecording.
+ */
+@Name("com.greenfabric.find.DirectoryList")
+@Label("Directory Listing")
+@Category({ "JavaFind", "Search" })
+@Description("A directory listed by the Java engine")
+@Threshold("10 ms")
+@StackTrace(false)
+final class DirectoryListEvent extends Event {
+
+	@Label("Path")
+	String path;
+
+	@Label("Entries")
+	int entries;
+}
@@ -0,0 +1,558 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.oro.text.perl.MalformedPerl5PatternException;
+
+import com.greenfabric.system.CancellationToken;
+import com.greenfabric.system.FileStat;
+import com.greenfabric.system.SystemPack;
+
+/**
+ * Adds up the sizes of the matches of a search by directory, like du(1). Each
+ * directory gets the bytes and the number of the files right in it, and the
+ * totals of its whole subtree.
+ * <p>
+ *
+ * The sizes are taken from the attributes the search already fetches, so no
+ * file is looked at twice. The directories are searched in parallel, like a
+ * MultiRootFind's, and each thread adds up what it finds on its own, in
+ * arrays indexed by directory, without sharing anything with the others.
+ * Only when the search is over are the threads' sums merged, and added up
+ * from the deepest directories to the top.
+ * <p>
+ *
+ * Sizes are the files' lengths, not the disk blocks they take, like
+ * <code>du --apparent-size</code>. A file with several links is counted once
+ * for each. Directories themselves take no space, and only the files that
+ * match the query are counted, so e.g. the space taken by logs can be found
+ * with a pattern.
+ *
+ * <pre>
+ * Find options = new Find(&quot;.&quot;);
+ * DiskUsage du = new DiskUsage(new FindQuery(options));
+ * DiskUsage.Report report = du.search(&quot;/data&quot;);
+ * Iterator&lt;DiskUsage.Usage&gt; largest = report.getLargest(10, 3).iterator();
+ * while (largest.hasNext()) {
+ * 	System.out.println(largest.next());
+ * }
+ * </pre>
+ */
+public final class DiskUsage {
+
+	private final FindPlan plan;
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructs a new DiskUsage that adds up the matches of the given query.
+	 *
+	 * @exception MalformedPerl5PatternException if the query's regex pattern has
+	 *                                           a syntax error.
+	 */
+	public DiskUsage(FindQuery query) throws MalformedPerl5PatternException {
+		Find options = query.newFind(".");
+		options.setMatchStats(true); // Every match's size and type.
+		plan = new FindQuery(options).compile();
+	}
+
+	/**
+	 * Specify the pool to search on. Default is the one MultiRootFinds share.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Search the given directory, and return what its directories hold.
+	 */
+	public Report search(String directoryName) throws IOException {
+		return search(directoryName, null);
+	}
+
+	/**
+	 * Search the given directory, and return what its directories hold. If the
+	 * token is cancelled, the report is partial: it holds what was found up to
+	 * then.
+	 *
+	 * @param token may be null.
+	 */
+	public Report search(String directoryName, CancellationToken token) throws IOException {
+		final String root = new File(directoryName).getPath();
+		final List<Tally> tallies = Collections.synchronizedList(new ArrayList<Tally>());
+		final ThreadLocal<Tally> tally = new ThreadLocal<Tally>() {
+			protected Tally initialValue() {
+				Tally t = new Tally(root);
+				tallies.add(t);
+				return t;
+			}
+		};
+
+		Find find = plan.newFind(root);
+		find.setCancellationToken(token);
+		find.setRoots(new String[] { root }, pool != null ? pool : MultiRootFind.getDefaultPool(), false);
+		find.setConcurrentOutput(new MatchConsumer() {
+			public void receive(String path) {
+				receive(path, 0, null);
+			}
+
+			public void receive(String path, int depth, FileStat stat) {
+				tally.get().add(path, stat);
+			}
+		});
+		FindResult result = find.search();
+		return merge(root, tallies, result.isPartial());
+	}
+
+	/**
+	 * What a search found in each directory.
+	 */
+	public static final class Report {
+		private final String root;
+
+		private final boolean partial;
+
+		private final int count;
+
+		private final String[] paths;
+
+		private final int[] depths;
+
+		private final long[] ownBytes;
+
+		private final long[] ownFiles;
+
+		private final long[] bytes;
+
+		private final long[] files;
+
+		Report(String root, boolean partial, int count, String[] paths, int[] depths, long[] ownBytes,
+				long[] ownFiles, long[] bytes, long[] files) {
+			this.root = root;
+			this.partial = partial;
+			this.count = count;
+			this.paths = paths;
+			this.depths = depths;
+			this.ownBytes = ownBytes;
+			this.ownFiles = ownFiles;
+			this.bytes = bytes;
+			this.files = files;
+		}
+
+		/**
+		 * Return the directory that was searched.
+		 */
+		public String getRoot() {
+			return root;
+		}
+
+		/**
+		 * Return true if the search stopped before it was done.
+		 */
+		public boolean isPartial() {
+			return partial;
+		}
+
+		public int getDirectoryCount() {
+			return count;
+		}
+
+		public long getTotalBytes() {
+			return count == 0 ? 0 : bytes[0];
+		}
+
+		public long getTotalFiles() {
+			return count == 0 ? 0 : files[0];
+		}
+
+		/**
+		 * Return the Usage of every directory down to the given depth, in order
+		 * of their paths. Depth 0 is the root alone.
+		 */
+		public List<Usage> getDirectories(int maxDepth) {
+			List<Usage> result = new ArrayList<Usage>();
+			for (int i = 0; i < count; i++) {
+				if (depths[i] <= maxDepth) {
+					result.add(usage(i));
+				}
+			}
+			Collections.sort(result);
+			return result;
+		}
+
+		/**
+		 * Return the Usage of the given number of directories down to the given
+		 * depth whose subtrees hold the most bytes, the largest first.
+		 */
+		public List<Usage> getLargest(int n, int maxDepth) {
+			if (n <= 0) {
+				return new ArrayList<Usage>();
+			}
+			int[] heap = new int[n]; // The smallest of the largest on top.
+			int size = 0;
+			for (int i = 0; i < count; i++) {
+				if (depths[i] > maxDepth) {
+					continue;
+				}
+				if (size < n) {
+					heap[size] = i;
+					siftUp(heap, size++);
+				} else if (smaller(heap[0], i)) {
+					heap[0] = i;
+					siftDown(heap, size);
+				}
+			}
+			List<Usage> result = new ArrayList<Usage>(size);
+			while (size > 0) {
+				result.add(usage(heap[0]));
+				heap[0] = heap[--size];
+				siftDown(heap, size);
+			}
+			Collections.reverse(result);
+			return result;
+		}
+
+		/**
+		 * Return the Usage of the given directory, or null if none of its
+		 * files matched.
+		 */
+		public Usage getUsage(String directoryName) {
+			String path = new File(directoryName).getPath();
+			for (int i = 0; i < count; i++) {
+				if (paths[i].equals(path)) {
+					return usage(i);
+				}
+			}
+			return null;
+		}
+
+		public String toString() {
+			return "Report[root=" + root + " directories=" + count + " bytes=" + getTotalBytes() + " files="
+					+ getTotalFiles() + (partial ? " partial" : "") + "]";
+		}
+
+		/*
+		 * PRIVATE METHODS
+		 */
+
+		private Usage usage(int i) {
+			return new Usage(paths[i], depths[i], bytes[i], files[i], ownBytes[i], ownFiles[i]);
+		}
+
+		private void siftUp(int[] heap, int i) {
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!smaller(heap[i], heap[parent])) {
+					break;
+				}
+				swap(heap, i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int[] heap, int size) {
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && smaller(heap[child + 1], heap[child])) {
+					child++;
+				}
+				if (!smaller(heap[child], heap[i])) {
+					break;
+				}
+				swap(heap, i, child);
+				i = child;
+			}
+		}
+
+		/**
+		 * Return true if the first directory holds fewer bytes. Ties go by
+		 * path, so the order doesn't depend on the threads.
+		 */
+		private boolean smaller(int a, int b) {
+			if (bytes[a] != bytes[b]) {
+				return bytes[a] < bytes[b];
+			}
+			return paths[a].compareTo(paths[b]) > 0;
+		}
+
+		private static void swap(int[] heap, int i, int j) {
+			int t = heap[i];
+			heap[i] = heap[j];
+			heap[j] = t;
+		}
+	}
+
+	/**
+	 * What one directory holds.
+	 */
+	public static final class Usage implements Comparable<Usage> {
+		private final String path;
+
+		private final int depth;
+
+		private final long bytes;
+
+		private final long files;
+
+		private final long ownBytes;
+
+		private final long ownFiles;
+
+		Usage(String path, int depth, long bytes, long files, long ownBytes, long ownFiles) {
+			this.path = path;
+			this.depth = depth;
+			this.bytes = bytes;
+			this.files = files;
+			this.ownBytes = ownBytes;
+			this.ownFiles = ownFiles;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Return how far the directory is below the root.
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 * Return the bytes in the directory's whole subtree.
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Return the number of files in the directory's whole subtree.
+		 */
+		public long getFiles() {
+			return files;
+		}
+
+		/**
+		 * Return the bytes in the files right in the directory.
+		 */
+		public long getOwnBytes() {
+			return ownBytes;
+		}
+
+		/**
+		 * Return the number of files right in the directory.
+		 */
+		public long getOwnFiles() {
+			return ownFiles;
+		}
+
+		public int compareTo(Usage o) {
+			return path.compareTo(o.path);
+		}
+
+		public String toString() {
+			return bytes + "\t" + files + "\t" + path;
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Merge the threads' sums into one set of directories, add the ones in
+	 * between that held no matches, and add up each one's subtree.
+	 */
+	private static Report merge(String root, List<Tally> tallies, boolean partial) {
+		Tally all = new Tally(root);
+		all.id(root); // The root is always directory 0.
+		for (int t = 0; t < tallies.size(); t++) {
+			Tally tally = tallies.get(t);
+			for (int i = 0; i < tally.count; i++) {
+				int id = all.id(tally.paths[i]);
+				all.bytes[id] += tally.bytes[i];
+				all.files[id] += tally.files[i];
+			}
+		}
+
+		/*
+		 * Find each directory's parent, adding it if it's new. The ones added
+		 * are at the end, so they get their parents too.
+		 */
+		int[] parents = new int[all.paths.length];
+		int[] depths = new int[all.paths.length];
+		int deepest = 0;
+		for (int i = 0; i < all.count; i++) {
+			String path = all.paths[i];
+			if (path.length() <= root.length()) {
+				parents[i] = -1;
+				continue;
+			}
+			int parent = all.id(all.parentOf(path));
+			if (all.count > parents.length) {
+				parents = Arrays.copyOf(parents, all.paths.length);
+				depths = Arrays.copyOf(depths, all.paths.length);
+			}
+			parents[i] = parent;
+			depths[i] = Find.depthOf(path, root);
+			deepest = Math.max(deepest, depths[i]);
+		}
+
+		/*
+		 * Add up the subtrees, deepest directories first, by bucketing them by
+		 * depth.
+		 */
+		int n = all.count;
+		long[] bytes = Arrays.copyOf(all.bytes, n);
+		long[] files = Arrays.copyOf(all.files, n);
+		int[] start = new int[deepest + 2];
+		for (int i = 0; i < n; i++) {
+			start[depths[i] + 1]++;
+		}
+		for (int d = 1; d < start.length; d++) {
+			start[d] += start[d - 1];
+		}
+		int[] byDepth = new int[n];
+		int[] next = Arrays.copyOf(start, start.length);
+		for (int i = 0; i < n; i++) {
+			byDepth[next[depths[i]]++] = i;
+		}
+		for (int k = n - 1; k >= 0; k--) {
+			int i = byDepth[k];
+			if (parents[i] != -1) {
+				bytes[parents[i]] += bytes[i];
+				files[parents[i]] += files[i];
+			}
+		}
+		return new Report(root, partial, n, Arrays.copyOf(all.paths, n), Arrays.copyOf(depths, n),
+				Arrays.copyOf(all.bytes, n), Arrays.copyOf(all.files, n), bytes, files);
+	}
+
+	/*
+	 * PRIVATE CLASSES
+	 */
+
+	/**
+	 * The bytes and files one thread has found in each directory, in arrays
+	 * indexed by the order it first saw them in.
+	 */
+	private static final class Tally {
+		private final String root;
+
+		private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+		private int count = 0;
+
+		private String[] paths = new String[64];
+
+		private long[] bytes = new long[64];
+
+		private long[] files = new long[64];
+
+		/*
+		 * The directory of the last match, since a directory's files come
+		 * together.
+		 */
+		private String lastDirectory;
+
+		private int lastId;
+
+		Tally(String root) {
+			this.root = root;
+		}
+
+		void add(String path, FileStat stat) {
+			if (stat == null) {
+				try {
+					stat = SystemPack.getOSInfo().stat(new File(path), false);
+				} catch (IOException e) {
+					return; // It has disappeared.
+				}
+			}
+			if (stat.isDirectory()) {
+				id(path); // Listed even if it's empty.
+				return;
+			}
+			int id;
+			if (path.length() <= root.length()) {
+				id = id(root); // The root is a file.
+			} else {
+				int end = directoryEnd(path);
+				if (lastDirectory != null && lastDirectory.length() == end && path.startsWith(lastDirectory)) {
+					id = lastId;
+				} else {
+					lastDirectory = path.substring(0, end);
+					lastId = id = id(lastDirectory);
+				}
+			}
+			bytes[id] += stat.getSize();
+			files[id]++;
+		}
+
+		/**
+		 * Return the id of the given directory, adding it if it's new.
+		 */
+		int id(String directory) {
+			Integer id = ids.get(directory);
+			if (id != null) {
+				return id.intValue();
+			}
+			if (count == paths.length) {
+				int n = count * 2;
+				paths = Arrays.copyOf(paths, n);
+				bytes = Arrays.copyOf(bytes, n);
+				files = Arrays.copyOf(files, n);
+			}
+			paths[count] = directory;
+			ids.put(directory, Integer.valueOf(count));
+			return count++;
+		}
+
+		String parentOf(String path) {
+			return path.substring(0, directoryEnd(path));
+		}
+
+		/**
+		 * Return where the directory part of the given path ends. The root
+		 * directory is kept whole.
+		 */
+		private static int directoryEnd(String path) {
+			int slash = path.lastIndexOf(File.separatorChar);
+			return slash == 0 ? 1 : slash;
+		}
+	}
+}
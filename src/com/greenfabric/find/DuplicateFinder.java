@@ -0,0 +1,521 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.oro.text.perl.MalformedPerl5PatternException;
+
+import com.greenfabric.system.CancellationToken;
+import com.greenfabric.system.FileStat;
+import com.greenfabric.system.SystemPack;
+
+/**
+ * Finds files with the same contents among the matches of a search. Only
+ * regular, non-empty files are compared.
+ * <p>
+ *
+ * Files are read as little as possible. During the search, the matches are
+ * grouped by size, which is already known, since the search fetches their
+ * attributes; only files that share their size with another one can be
+ * duplicates. Of those, the first 4 KB are hashed, which tells most files
+ * apart. Only the files whose sizes and first 4 KB are both the same as
+ * another's are read and hashed in full. The hashing runs on a few threads at
+ * once, since it's mostly waiting for the disk; how many is set with
+ * setIoThreads().
+ * <p>
+ *
+ * Hard links are found by their inode: several links to one file are the
+ * same file, read once, and are reported together with the duplicates of the
+ * file, if there are any. A file with no duplicates but several links isn't
+ * reported, since it takes no extra space.
+ *
+ * <pre>
+ * Find options = new Find(&quot;.&quot;);
+ * options.setFindDirectories(false);
+ * DuplicateFinder finder = new DuplicateFinder(new FindQuery(options));
+ * Iterator&lt;DuplicateFinder.Group&gt; groups = finder.search(&quot;/home/shared&quot;).iterator();
+ * while (groups.hasNext()) {
+ * 	DuplicateFinder.Group group = groups.next();
+ * 	report(group.getWastedBytes(), group.getPaths());
+ * }
+ * </pre>
+ */
+public final class DuplicateFinder {
+
+	/**
+	 * How much of each file is hashed first.
+	 */
+	public static final int HEAD_SIZE = 4 * 1024;
+
+	/**
+	 * The default number of files hashed at once.
+	 */
+	public static final int DEFAULT_IO_THREADS = 4;
+
+	private static final String DIGEST = "SHA-256";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FindPlan plan;
+
+	private int ioThreads = DEFAULT_IO_THREADS;
+
+	/**
+	 * Constructs a new DuplicateFinder that compares the matches of the given
+	 * query.
+	 *
+	 * @exception MalformedPerl5PatternException if the query's regex pattern has
+	 *                                           a syntax error.
+	 */
+	public DuplicateFinder(FindQuery query) throws MalformedPerl5PatternException {
+		Find options = query.newFind(".");
+		options.setMatchStats(true); // Every match's size and inode.
+		plan = new FindQuery(options).compile();
+	}
+
+	/**
+	 * Specify how many files are read and hashed at once. Default is
+	 * DEFAULT_IO_THREADS.
+	 */
+	public void setIoThreads(int ioThreads) {
+		if (ioThreads < 1) {
+			throw new IllegalArgumentException("ioThreads must be at least 1");
+		}
+		this.ioThreads = ioThreads;
+	}
+
+	public int getIoThreads() {
+		return ioThreads;
+	}
+
+	/**
+	 * Search the given directory, and return its groups of duplicates, those
+	 * that waste the most space first.
+	 */
+	public List<Group> search(String directoryName) throws IOException {
+		return search(directoryName, null);
+	}
+
+	/**
+	 * Search the given directory, and return its groups of duplicates, those
+	 * that waste the most space first. If the token is cancelled, the groups
+	 * that were confirmed up to then are returned.
+	 *
+	 * @param token may be null.
+	 */
+	public List<Group> search(String directoryName, CancellationToken token) throws IOException {
+		Catalog files = new Catalog();
+		Find find = plan.newFind(directoryName);
+		find.setCancellationToken(token);
+		find.setOutput(files);
+		find.search();
+
+		ExecutorService readers = Executors.newFixedThreadPool(ioThreads, new ThreadFactory() {
+			private int count = 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "javafind-hash-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			return files.duplicates(readers, token);
+		} finally {
+			readers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Files that have the same contents.
+	 */
+	public static final class Group {
+		private final long size;
+
+		private final int copies;
+
+		private final String[] paths;
+
+		Group(long size, int copies, String[] paths) {
+			this.size = size;
+			this.copies = copies;
+			this.paths = paths;
+		}
+
+		/**
+		 * Return the size of each file.
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Return the number of separate copies, not counting hard links to the
+		 * same file.
+		 */
+		public int getCopies() {
+			return copies;
+		}
+
+		/**
+		 * Return the pathnames of all the files, hard links included, in order.
+		 */
+		public String[] getPaths() {
+			return paths.clone();
+		}
+
+		/**
+		 * Return the space that would be freed by keeping only one copy.
+		 */
+		public long getWastedBytes() {
+			return size * (copies - 1);
+		}
+
+		public String toString() {
+			return "Group[size=" + size + " copies=" + copies + " paths=" + Arrays.asList(paths) + "]";
+		}
+	}
+
+	/*
+	 * PRIVATE CLASSES
+	 */
+
+	/**
+	 * The regular files a search found, indexed by size and, for those with
+	 * several links, by inode, in arrays. A file is only recorded once: each
+	 * further link to it is chained to the first one found, its
+	 * representative, and only representatives are indexed and read.
+	 */
+	private static final class Catalog implements MatchConsumer {
+		private int count = 0;
+
+		private String[] paths = new String[1024];
+
+		private long[] sizes = new long[1024];
+
+		private long[] devices = new long[1024];
+
+		private long[] inodes = new long[1024];
+
+		/*
+		 * The next representative of the same size, or -1.
+		 */
+		private int[] nextOfSize = new int[1024];
+
+		/*
+		 * The next representative with the same inode number, on another
+		 * device, or -1.
+		 */
+		private int[] nextOfInode = new int[1024];
+
+		/*
+		 * The next link to the same representative, or -1.
+		 */
+		private int[] nextLink = new int[1024];
+
+		private final LongIntMap bySize = new LongIntMap(1024);
+
+		private final LongIntMap byInode = new LongIntMap(64);
+
+		public void receive(String path) {
+			FileStat stat;
+			try {
+				stat = SystemPack.getOSInfo().stat(new File(path), false);
+			} catch (IOException e) {
+				return; // It has disappeared.
+			}
+			receive(path, 0, stat);
+		}
+
+		public synchronized void receive(String path, int depth, FileStat stat) {
+			if (stat == null) {
+				receive(path);
+				return;
+			}
+			if (!stat.isFile() || stat.getSize() == 0) {
+				return;
+			}
+			if (count == paths.length) {
+				grow();
+			}
+			int i = count++;
+			paths[i] = path;
+			sizes[i] = stat.getSize();
+			devices[i] = stat.getDevice();
+			inodes[i] = stat.getInode();
+			nextLink[i] = -1;
+			nextOfInode[i] = -1;
+			nextOfSize[i] = -1;
+
+			if (stat.getLinks() > 1) {
+				int first = byInode.get(inodes[i]);
+				for (int r = first; r != LongIntMap.MISSING; r = nextOfInode[r]) {
+					if (devices[r] == devices[i]) { // Another link to a file I have.
+						nextLink[i] = nextLink[r];
+						nextLink[r] = i;
+						return;
+					}
+				}
+				nextOfInode[i] = first;
+				byInode.put(inodes[i], i);
+			}
+			int head = bySize.get(sizes[i]);
+			nextOfSize[i] = head == LongIntMap.MISSING ? -1 : head;
+			bySize.put(sizes[i], i);
+		}
+
+		/**
+		 * Return the groups of representatives whose contents are the same.
+		 */
+		List<Group> duplicates(ExecutorService readers, CancellationToken token) {
+			/*
+			 * 1. Files that share their size with another one.
+			 */
+			List<int[]> sameSize = new ArrayList<int[]>();
+			for (int slot = 0; slot < bySize.capacity(); slot++) {
+				if (bySize.isUsed(slot) && nextOfSize[bySize.valueAt(slot)] != -1) {
+					sameSize.add(members(bySize.valueAt(slot)));
+				}
+			}
+
+			/*
+			 * 2. Of those, the ones whose first 4 KB are the same as another's.
+			 * Those that are no bigger than that are confirmed already.
+			 */
+			List<int[]> confirmed = new ArrayList<int[]>();
+			List<int[]> sameHead = new ArrayList<int[]>();
+			Iterator<int[]> groups = regroup(sameSize, readers, token, HEAD_SIZE).iterator();
+			while (groups.hasNext()) {
+				int[] group = groups.next();
+				(sizes[group[0]] <= HEAD_SIZE ? confirmed : sameHead).add(group);
+			}
+
+			/*
+			 * 3. Of those, the ones whose whole contents are the same.
+			 */
+			confirmed.addAll(regroup(sameHead, readers, token, Long.MAX_VALUE));
+
+			List<Group> result = new ArrayList<Group>(confirmed.size());
+			for (int i = 0; i < confirmed.size(); i++) {
+				result.add(group(confirmed.get(i)));
+			}
+			Collections.sort(result, new Comparator<Group>() {
+				public int compare(Group g1, Group g2) {
+					if (g1.getWastedBytes() != g2.getWastedBytes()) {
+						return g1.getWastedBytes() > g2.getWastedBytes() ? -1 : 1;
+					}
+					return g1.paths[0].compareTo(g2.paths[0]);
+				}
+			});
+			return result;
+		}
+
+		/**
+		 * Hash the given amount of each file in each group, and split the
+		 * groups by hash. Files that couldn't be read are dropped, and so are
+		 * groups of one.
+		 */
+		private List<int[]> regroup(List<int[]> groups, ExecutorService readers, CancellationToken token,
+				long length) {
+			List<Hash> tasks = new ArrayList<Hash>();
+			for (int g = 0; g < groups.size(); g++) {
+				int[] group = groups.get(g);
+				for (int j = 0; j < group.length; j++) {
+					tasks.add(new Hash(paths[group[j]], length, token));
+				}
+			}
+			List<Future<ByteBuffer>> hashes;
+			try {
+				hashes = readers.invokeAll(tasks);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return new ArrayList<int[]>();
+			}
+
+			List<int[]> result = new ArrayList<int[]>();
+			int next = 0;
+			for (int g = 0; g < groups.size(); g++) {
+				int[] group = groups.get(g);
+				Map<ByteBuffer, List<Integer>> byHash = new HashMap<ByteBuffer, List<Integer>>();
+				for (int j = 0; j < group.length; j++) {
+					ByteBuffer hash = result(hashes.get(next++));
+					if (hash != null) {
+						List<Integer> same = byHash.get(hash);
+						if (same == null) {
+							same = new ArrayList<Integer>();
+							byHash.put(hash, same);
+						}
+						same.add(Integer.valueOf(group[j]));
+					}
+				}
+				Iterator<List<Integer>> sets = byHash.values().iterator();
+				while (sets.hasNext()) {
+					List<Integer> same = sets.next();
+					if (same.size() > 1) {
+						int[] members = new int[same.size()];
+						for (int k = 0; k < members.length; k++) {
+							members[k] = same.get(k).intValue();
+						}
+						result.add(members);
+					}
+				}
+			}
+			return result;
+		}
+
+		private static ByteBuffer result(Future<ByteBuffer> future) {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause().toString());
+			}
+		}
+
+		/**
+		 * Return the representatives on the chain of the given size.
+		 */
+		private int[] members(int head) {
+			int n = 0;
+			for (int i = head; i != -1; i = nextOfSize[i]) {
+				n++;
+			}
+			int[] members = new int[n];
+			n = 0;
+			for (int i = head; i != -1; i = nextOfSize[i]) {
+				members[n++] = i;
+			}
+			return members;
+		}
+
+		private Group group(int[] representatives) {
+			List<String> all = new ArrayList<String>();
+			for (int i = 0; i < representatives.length; i++) {
+				for (int j = representatives[i]; j != -1; j = nextLink[j]) {
+					all.add(paths[j]);
+				}
+			}
+			String[] sorted = all.toArray(new String[all.size()]);
+			Arrays.sort(sorted);
+			return new Group(sizes[representatives[0]], representatives.length, sorted);
+		}
+
+		private void grow() {
+			int n = paths.length * 2;
+			paths = Arrays.copyOf(paths, n);
+			sizes = Arrays.copyOf(sizes, n);
+			devices = Arrays.copyOf(devices, n);
+			inodes = Arrays.copyOf(inodes, n);
+			nextOfSize = Arrays.copyOf(nextOfSize, n);
+			nextOfInode = Arrays.copyOf(nextOfInode, n);
+			nextLink = Arrays.copyOf(nextLink, n);
+		}
+	}
+
+	/**
+	 * Hashes the start of a file, or all of it. The hash is null if the file
+	 * can't be read, or the search has been cancelled.
+	 */
+	private static final class Hash implements Callable<ByteBuffer> {
+		private final String path;
+
+		private final long length;
+
+		private final CancellationToken token;
+
+		Hash(String path, long length, CancellationToken token) {
+			this.path = path;
+			this.length = length;
+			this.token = token;
+		}
+
+		public ByteBuffer call() {
+			if (token != null && token.isCancelled()) {
+				return null;
+			}
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance(DIGEST);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(DIGEST + " isn't available");
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, length));
+			FileInputStream in = null;
+			try {
+				in = new FileInputStream(path);
+				FileChannel channel = in.getChannel();
+				long left = length;
+				while (left > 0) {
+					if (token != null && token.isCancelled()) {
+						return null;
+					}
+					buffer.clear();
+					if (left < buffer.capacity()) {
+						buffer.limit((int) left);
+					}
+					int n = channel.read(buffer);
+					if (n == -1) {
+						break;
+					}
+					buffer.flip();
+					digest.update(buffer);
+					left -= n;
+				}
+			} catch (IOException e) {
+				return null; // Unreadable, or gone.
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+						// Nothing more to do.
+					}
+				}
+			}
+			return ByteBuffer.wrap(digest.digest());
+		}
+	}
+}
@@ -0,0 +1,530 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import com.greenfabric.system.FileStat;
+
+/**
+ * Runs a command on the matches of a search, like find's <code>-exec</code>.
+ * The command is given as its arguments, with <code>{}</code> where the
+ * matches go, and is started directly, not through a shell, so nothing in a
+ * pathname needs quoting.
+ * <p>
+ *
+ * Run one at a time, the command is started once per match, and every
+ * <code>{}</code> in its arguments is replaced by the match, like
+ * <code>-exec cmd {} ;</code>. Run in batches, like
+ * <code>-exec cmd {} +</code>, the <code>{}</code> must be the last argument,
+ * and is replaced by as many matches as fit on one command line. A command
+ * line is kept under 128 KB, counting the environment, which any Unix
+ * accepts, so a batch never fails with "argument list too long".
+ * <p>
+ *
+ * The commands get this process's environment, or the one given to
+ * setEnvironment(), like that of a client of FindDaemon. Then the program is
+ * looked for in that environment's PATH, not in mine.
+ * <p>
+ *
+ * Commands run while the search goes on, up to a maximum number at once: by
+ * default one at a time for single matches, so that they run in order, and a
+ * process per processor for batches. When that many are running, the search
+ * waits for one to finish, so that it never gets far ahead of the commands.
+ * When the search is over, it waits for the last of them. Then the action
+ * tells how many commands ran, how many failed, and the worst exit status.
+ * A search that's cancelled starts no more commands, but lets the ones
+ * already running finish.
+ *
+ * <pre>
+ * Find find = new Find(&quot;src&quot;);
+ * find.setPattern(&quot;/\\.java$/&quot;);
+ * ExecAction wc = new ExecAction(new String[] { &quot;wc&quot;, &quot;-l&quot;, &quot;{}&quot; }, true);
+ * find.setExec(wc);
+ * find.search();
+ * if (wc.getExitStatus() != 0) ...
+ * </pre>
+ *
+ * @see Find#setExec(ExecAction)
+ */
+public final class ExecAction implements MatchConsumer {
+
+	/**
+	 * What's replaced by the matches in the command's arguments.
+	 */
+	public static final String PLACEHOLDER = "{}";
+
+	/**
+	 * The default limit on the size of a command line, in bytes. It's what
+	 * xargs uses, and far below what current systems allow.
+	 */
+	public static final int DEFAULT_ARG_MAX = 128 * 1024;
+
+	/*
+	 * What an argument costs on top of its characters: the NUL at its end and
+	 * its pointer in argv.
+	 */
+	private static final int ARG_OVERHEAD = 1 + 8;
+
+	/*
+	 * Room left for whatever the system adds, like the program's path.
+	 */
+	private static final int HEADROOM = 2048;
+
+	private final String[] command;
+
+	private final boolean batch;
+
+	/*
+	 * The size of everything on a command line except the matches.
+	 */
+	private int fixedBytes;
+
+	private int argMax = DEFAULT_ARG_MAX;
+
+	private int maxProcesses;
+
+	private Semaphore slots;
+
+	private File directory;
+
+	private Map<String, String> environment;
+
+	/*
+	 * The program found in the environment's PATH, and what it was found as.
+	 */
+	private String program;
+
+	private String programPath;
+
+	private OutputStream output;
+
+	private OutputStream errors;
+
+	private final List<String> pending = new ArrayList<String>();
+
+	private int pendingBytes = 0;
+
+	/*
+	 * Guards the counts, which the commands' waiting threads update while
+	 * the search may hold my lock, waiting for a slot.
+	 */
+	private final Object counts = new Object();
+
+	private int runs = 0;
+
+	private int failures = 0;
+
+	private int worstStatus = 0;
+
+	/*
+	 * Set if a command couldn't be started. It's thrown by finish(), because
+	 * receive() can't throw it.
+	 */
+	private IOException failure;
+
+	/**
+	 * Constructs a new ExecAction.
+	 *
+	 * @param command the program and its arguments, with {} for the matches.
+	 * @param batch   true to pass as many matches to each command as fit, false
+	 *                for one per command.
+	 * @exception IllegalArgumentException if there's no program, or in a batch,
+	 *                                      if the last argument isn't the only
+	 *                                      {}.
+	 */
+	public ExecAction(String[] command, boolean batch) throws IllegalArgumentException {
+		if (command.length == 0 || command[0].equals(PLACEHOLDER)) {
+			throw new IllegalArgumentException("-exec needs a command");
+		}
+		if (batch) {
+			if (!command[command.length - 1].equals(PLACEHOLDER)) {
+				throw new IllegalArgumentException("-exec ... + needs {} just before the +");
+			}
+			for (int i = 0; i < command.length - 1; i++) {
+				if (command[i].indexOf(PLACEHOLDER) != -1) {
+					throw new IllegalArgumentException("Only one {} is allowed with -exec ... +");
+				}
+			}
+		}
+		this.command = command.clone();
+		this.batch = batch;
+		setMaxProcesses(batch ? Runtime.getRuntime().availableProcessors() : 1);
+		fixedBytes = fixedBytes(System.getenv());
+	}
+
+	/**
+	 * Specify how many commands can run at once. It has to be set before the
+	 * search starts.
+	 */
+	public synchronized void setMaxProcesses(int maxProcesses) {
+		if (maxProcesses < 1) {
+			throw new IllegalArgumentException("maxProcesses must be at least 1");
+		}
+		this.maxProcesses = maxProcesses;
+		slots = new Semaphore(maxProcesses);
+	}
+
+	public synchronized int getMaxProcesses() {
+		return maxProcesses;
+	}
+
+	/**
+	 * Specify the most bytes a batch's command line can take, including the
+	 * environment. Default is DEFAULT_ARG_MAX.
+	 */
+	public synchronized void setArgMax(int argMax) {
+		this.argMax = argMax;
+	}
+
+	public synchronized int getArgMax() {
+		return argMax;
+	}
+
+	/**
+	 * Specify the directory the commands run in. Default is this process's
+	 * working directory.
+	 */
+	public synchronized void setDirectory(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Specify the environment the commands run with, instead of this
+	 * process's. It has to be set before the search starts.
+	 */
+	synchronized void setEnvironment(Map<String, String> environment) {
+		this.environment = new HashMap<String, String>(environment);
+		program = null;
+		programPath = null;
+		fixedBytes = fixedBytes(environment);
+	}
+
+	/**
+	 * Send what the commands print to the given streams. By default, the
+	 * commands share this process's standard input, output and error; with
+	 * these streams, they get no input.
+	 */
+	public synchronized void setOutput(OutputStream output, OutputStream errors) {
+		this.output = output;
+		this.errors = errors;
+	}
+
+	/**
+	 * Return the number of commands that have been run.
+	 */
+	public int getRuns() {
+		synchronized (counts) {
+			return runs;
+		}
+	}
+
+	/**
+	 * Return the number of commands that exited with a non-zero status, or
+	 * couldn't be started.
+	 */
+	public int getFailures() {
+		synchronized (counts) {
+			return failures;
+		}
+	}
+
+	/**
+	 * Return the highest exit status of the commands: 0 if they all
+	 * succeeded. A command that couldn't be started counts as 127, like in the
+	 * shell.
+	 */
+	public int getExitStatus() {
+		synchronized (counts) {
+			return worstStatus;
+		}
+	}
+
+	/**
+	 * Return true if matches are passed on in batches.
+	 */
+	public boolean isBatch() {
+		return batch;
+	}
+
+	/**
+	 * Take a match. In a batch, it's held until the command line is full.
+	 */
+	public synchronized void receive(String path) {
+		if (failure != null) {
+			return; // The command can't be started.
+		}
+		if (!batch) {
+			List<String> argv = new ArrayList<String>(command.length);
+			for (int i = 0; i < command.length; i++) {
+				argv.add(command[i].replace(PLACEHOLDER, path));
+			}
+			launch(argv);
+			return;
+		}
+		int size = argBytes(path);
+		if (!pending.isEmpty() && fixedBytes + pendingBytes + size > argMax) {
+			runPending();
+		}
+		pending.add(path);
+		pendingBytes += size;
+	}
+
+	public void receive(String path, int depth, FileStat stat) {
+		receive(path);
+	}
+
+	/**
+	 * Run the last batch, if asked to, and wait for all the commands to
+	 * finish.
+	 *
+	 * @exception IOException if a command couldn't be started.
+	 */
+	synchronized void finish(boolean runPending) throws IOException {
+		if (runPending && !pending.isEmpty() && failure == null) {
+			runPending();
+		}
+		pending.clear();
+		pendingBytes = 0;
+		slots.acquireUninterruptibly(maxProcesses);
+		slots.release(maxProcesses);
+		if (failure != null) {
+			IOException e = failure;
+			failure = null;
+			throw e;
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Return the number of bytes the given argument takes on a command line,
+	 * encoded in UTF-8.
+	 */
+	private static int argBytes(String arg) {
+		int n = ARG_OVERHEAD;
+		for (int i = 0; i < arg.length(); i++) {
+			char c = arg.charAt(i);
+			if (c < 0x80) {
+				n++;
+			} else if (c < 0x800) {
+				n += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				n += 4;
+				i++;
+			} else {
+				n += 3;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Return the size of a command line without the matches, with the given
+	 * environment.
+	 */
+	private int fixedBytes(Map<String, String> environment) {
+		int size = HEADROOM;
+		for (int i = 0; i < command.length; i++) {
+			if (!batch || i < command.length - 1) {
+				size += argBytes(command[i]);
+			}
+		}
+		Iterator<Map.Entry<String, String>> variables = environment.entrySet().iterator();
+		while (variables.hasNext()) {
+			Map.Entry<String, String> variable = variables.next();
+			size += argBytes(variable.getKey()) + argBytes(variable.getValue());
+		}
+		return size;
+	}
+
+	/**
+	 * Return the path of the given program in the PATH of the commands'
+	 * environment. ProcessBuilder would look for it in mine.
+	 *
+	 * @exception IOException if it isn't there.
+	 */
+	private String findProgram(String name) throws IOException {
+		if (name.indexOf(File.separatorChar) != -1) {
+			return name;
+		}
+		if (name.equals(program)) {
+			return programPath;
+		}
+		String path = environment.get("PATH");
+		if (path != null) {
+			String[] entries = path.split(File.pathSeparator, -1);
+			for (int i = 0; i < entries.length; i++) {
+				File file = new File(entries[i].length() == 0 ? "." : entries[i], name);
+				if (!file.isAbsolute() && directory != null) {
+					file = new File(directory, file.getPath());
+				}
+				if (file.isFile() && file.canExecute()) {
+					program = name;
+					programPath = file.getPath();
+					return programPath;
+				}
+			}
+		}
+		throw new IOException(name + ": command not found");
+	}
+
+	private void runPending() {
+		List<String> argv = new ArrayList<String>(command.length - 1 + pending.size());
+		for (int i = 0; i < command.length - 1; i++) {
+			argv.add(command[i]);
+		}
+		argv.addAll(pending);
+		pending.clear();
+		pendingBytes = 0;
+		launch(argv);
+	}
+
+	/**
+	 * Start a command, once there's a free slot for it. Until then, the search
+	 * waits here.
+	 */
+	private void launch(List<String> argv) {
+		slots.acquireUninterruptibly();
+		final Process process;
+		try {
+			ProcessBuilder builder = new ProcessBuilder(argv).directory(directory);
+			if (environment != null) {
+				argv.set(0, findProgram(argv.get(0)));
+				builder.environment().clear();
+				builder.environment().putAll(environment);
+			}
+			if (output == null) {
+				builder.inheritIO();
+			}
+			process = builder.start();
+		} catch (IOException e) {
+			slots.release();
+			failure = e;
+			record(127);
+			return;
+		}
+
+		final OutputStream out = output;
+		final OutputStream err = errors;
+		Thread waiter = new Thread("javafind-exec") {
+			public void run() {
+				try {
+					if (out != null) {
+						closeQuietly(process.getOutputStream());
+						Thread errorCopier = copier(process.getErrorStream(), err);
+						copy(process.getInputStream(), out);
+						waitFor(errorCopier);
+					}
+					record(waitFor(process));
+				} finally {
+					slots.release();
+				}
+			}
+		};
+		waiter.setDaemon(true);
+		waiter.start();
+	}
+
+	private void record(int status) {
+		synchronized (counts) {
+			runs++;
+			if (status != 0) {
+				failures++;
+				worstStatus = Math.max(worstStatus, status);
+			}
+		}
+	}
+
+	private static int waitFor(Process process) {
+		while (true) {
+			try {
+				return process.waitFor();
+			} catch (InterruptedException e) {
+				// Keep waiting: the slot isn't free until the command ends.
+			}
+		}
+	}
+
+	private static void waitFor(Thread thread) {
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				// Keep waiting.
+			}
+		}
+	}
+
+	private static Thread copier(final InputStream in, final OutputStream out) {
+		Thread t = new Thread("javafind-exec-stderr") {
+			public void run() {
+				copy(in, out);
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+
+	/**
+	 * Copy a command's output, a block at a time, so that output from
+	 * different commands is only mixed between blocks.
+	 */
+	private static void copy(InputStream in, OutputStream out) {
+		byte[] buffer = new byte[8192];
+		try {
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				synchronized (out) {
+					out.write(buffer, 0, n);
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			// The command or the reader went away.
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	private static void closeQuietly(Closeable c) {
+		try {
+			c.close();
+		} catch (IOException e) {
+			// Nothing more to do.
+		}
+	}
+}
@@ -0,0 +1,418 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.greenfabric.system.FileStat;
+import com.greenfabric.system.SystemPack;
+
+/**
+ * Sorts matches that may not fit in memory. It's meant to be used only from
+ * within this package, as the consumer a search sends its matches to when a
+ * sort order is set.
+ * <p>
+ *
+ * Matches are collected in memory until their estimated size passes a limit.
+ * Then they're sorted and written to a temporary file, called a run, and
+ * collection starts over. At the end, the runs are merged, always taking the
+ * smallest of their next matches, and passed on in order. Only one match per
+ * run is in memory during the merge. If there are very many runs, groups of
+ * them are merged into longer runs first, so that only so many files are
+ * open at once. When everything fits in memory, nothing is written at all.
+ * <p>
+ *
+ * A run holds one record per match:
+ *
+ * <pre>
+ *   varint path length, path bytes (UTF-8), long sort key, varint depth,
+ *   and, if the attributes are kept, long size, mtime, atime, ctime, inode,
+ *   device, and int mode, uid, gid, links
+ * </pre>
+ *
+ * Matches with equal keys are ordered by path, so the output is the same
+ * however the matches were spilled.
+ */
+final class ExternalSort implements MatchConsumer {
+
+	static final int BY_PATH = 0;
+
+	static final int BY_SIZE = 1;
+
+	static final int BY_MTIME = 2;
+
+	static final int BY_ATIME = 3;
+
+	/**
+	 * The most runs merged at once.
+	 */
+	private static final int MAX_FAN_IN = 64;
+
+	/**
+	 * A rough guess at the memory used by a match, on top of its path's
+	 * characters.
+	 */
+	private static final int RECORD_OVERHEAD = 96;
+
+	private static final int STAT_OVERHEAD = 80;
+
+	private final int key;
+
+	private final Comparator<Record> order;
+
+	private final long memoryLimit;
+
+	private final boolean keepStats;
+
+	private final boolean follow;
+
+	private final Find find;
+
+	private List<Record> records = new ArrayList<Record>();
+
+	private long memoryUsed = 0;
+
+	private final List<File> runs = new ArrayList<File>();
+
+	/*
+	 * Set if a run couldn't be written. It's thrown by finish(), because
+	 * receive() can't throw it.
+	 */
+	private IOException failure;
+
+	/**
+	 * @param key         BY_PATH, BY_SIZE, BY_MTIME or BY_ATIME.
+	 * @param reverse     true for the largest key first.
+	 * @param memoryLimit about how many bytes of matches to hold before
+	 *                    spilling them to a run.
+	 * @param keepStats   true if the matches' attributes have to be passed on,
+	 *                    e.g. for a printf format.
+	 */
+	ExternalSort(Find find, int key, boolean reverse, long memoryLimit, boolean keepStats) {
+		this.key = key;
+		this.order = comparator(key, reverse);
+		this.memoryLimit = memoryLimit;
+		this.keepStats = keepStats;
+		this.follow = find.getFollow();
+		this.find = find;
+	}
+
+	/**
+	 * Return true if sorting by the given key needs the matches' attributes.
+	 */
+	static boolean needsStat(int key) {
+		return key != BY_PATH;
+	}
+
+	/**
+	 * Take a match that comes without its attributes. They're fetched here, if
+	 * they're needed.
+	 */
+	public void receive(String path) {
+		FileStat stat = null;
+		if (needsStat(key) || keepStats) {
+			try {
+				stat = SystemPack.getOSInfo().stat(new File(path), follow);
+			} catch (IOException e) {
+				return; // It has disappeared.
+			}
+		}
+		receive(path, Find.depthOf(path, find.startPointOf(path)), stat);
+	}
+
+	public void receive(String path, int depth, FileStat stat) {
+		if (failure != null) {
+			return;
+		}
+		Record r = new Record();
+		r.path = path;
+		r.depth = depth;
+		r.key = keyOf(key, stat);
+		r.stat = keepStats ? stat : null;
+		records.add(r);
+		memoryUsed += RECORD_OVERHEAD + 2L * path.length() + (r.stat == null ? 0 : STAT_OVERHEAD);
+		if (memoryUsed >= memoryLimit) {
+			spill();
+		}
+	}
+
+	/**
+	 * Pass the first matches, in order, on to the given consumer.
+	 *
+	 * @param limit how many to pass on at most.
+	 */
+	void finish(MatchConsumer consumer, int limit) throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (runs.isEmpty()) {
+			Collections.sort(records, order);
+			for (int i = 0; i < records.size() && i < limit; i++) {
+				Record r = records.get(i);
+				consumer.receive(r.path, r.depth, r.stat);
+			}
+			records = new ArrayList<Record>();
+			return;
+		}
+
+		writeRun();
+		while (runs.size() > MAX_FAN_IN) {
+			File merged = createRunFile();
+			runs.add(merged); // So that close() deletes it, even if the merge fails.
+			DataOutputStream out = openRun(merged);
+			try {
+				merge(runs.subList(0, MAX_FAN_IN), out, null, Integer.MAX_VALUE);
+			} finally {
+				out.close();
+			}
+			deleteRuns(runs.subList(0, MAX_FAN_IN));
+		}
+		merge(runs, null, consumer, limit);
+	}
+
+	/**
+	 * Delete the temporary files. This must be called when the sort is done
+	 * with, whether or not it finished, from a finally block: the files aren't
+	 * registered with File.deleteOnExit(), whose list only grows, so as not to
+	 * leak in a long-running process like FindDaemon.
+	 */
+	void close() {
+		deleteRuns(runs);
+		records = new ArrayList<Record>();
+	}
+
+	/**
+	 * Return a match's sort key.
+	 */
+	static long keyOf(int key, FileStat stat) {
+		switch (key) {
+		case BY_SIZE:
+			return stat.getSize();
+		case BY_MTIME:
+			return stat.getLastModified();
+		case BY_ATIME:
+			return stat.getLastAccessed();
+		default:
+			return 0;
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * One match, in memory or read back from a run.
+	 */
+	private static final class Record {
+		String path;
+
+		int depth;
+
+		long key;
+
+		FileStat stat;
+
+		/*
+		 * The run this record was read from, during a merge.
+		 */
+		DataInputStream in;
+	}
+
+	private static Comparator<Record> comparator(final int key, final boolean reverse) {
+		return new Comparator<Record>() {
+			public int compare(Record a, Record b) {
+				int c = 0;
+				if (key != BY_PATH) {
+					c = a.key < b.key ? -1 : (a.key == b.key ? 0 : 1);
+				}
+				if (c == 0) {
+					c = Snapshot.comparePaths(a.path, b.path);
+				}
+				return reverse ? -c : c;
+			}
+		};
+	}
+
+	/**
+	 * Write the matches in memory to a new run. If that fails, the failure is
+	 * kept for finish(), and no more matches are collected.
+	 */
+	private void spill() {
+		try {
+			writeRun();
+		} catch (IOException e) {
+			failure = e;
+			records = new ArrayList<Record>();
+		}
+	}
+
+	private void writeRun() throws IOException {
+		Collections.sort(records, order);
+		File run = createRunFile();
+		runs.add(run);
+		DataOutputStream out = openRun(run);
+		try {
+			for (int i = 0; i < records.size(); i++) {
+				write(records.get(i), out);
+			}
+		} finally {
+			out.close();
+		}
+		records = new ArrayList<Record>();
+		memoryUsed = 0;
+	}
+
+	/**
+	 * Merge the given runs, writing the result to a new run or passing it on to
+	 * a consumer.
+	 */
+	private void merge(List<File> files, DataOutputStream out, MatchConsumer consumer, int limit) throws IOException {
+		PriorityQueue<Record> queue = new PriorityQueue<Record>(files.size(), order);
+		List<DataInputStream> inputs = new ArrayList<DataInputStream>();
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				DataInputStream in = new DataInputStream(
+						new BufferedInputStream(new FileInputStream(files.get(i)), 64 * 1024));
+				inputs.add(in);
+				Record r = read(in);
+				if (r != null) {
+					queue.add(r);
+				}
+			}
+
+			int count = 0;
+			while (!queue.isEmpty() && count < limit) {
+				Record r = queue.poll();
+				if (out != null) {
+					write(r, out);
+				} else {
+					consumer.receive(r.path, r.depth, r.stat);
+				}
+				count++;
+				Record next = read(r.in);
+				if (next != null) {
+					queue.add(next);
+				}
+			}
+		} finally {
+			for (int i = 0; i < inputs.size(); i++) {
+				inputs.get(i).close();
+			}
+		}
+	}
+
+	private void write(Record r, DataOutputStream out) throws IOException {
+		byte[] path = r.path.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(out, path.length);
+		out.write(path);
+		out.writeLong(r.key);
+		writeVarLong(out, r.depth);
+		if (keepStats) {
+			FileStat s = r.stat;
+			out.writeLong(s.getSize());
+			out.writeLong(s.getLastModified());
+			out.writeLong(s.getLastAccessed());
+			out.writeLong(s.getLastChanged());
+			out.writeLong(s.getInode());
+			out.writeLong(s.getDevice());
+			out.writeInt(s.getMode());
+			out.writeInt(s.getUid());
+			out.writeInt(s.getGid());
+			out.writeInt(s.getLinks());
+		}
+	}
+
+	/**
+	 * Read the next record of a run, or return null at its end.
+	 */
+	private Record read(DataInputStream in) throws IOException {
+		int length;
+		try {
+			length = (int) readVarLong(in);
+		} catch (EOFException e) {
+			return null;
+		}
+		byte[] path = new byte[length];
+		in.readFully(path);
+		Record r = new Record();
+		r.path = new String(path, StandardCharsets.UTF_8);
+		r.key = in.readLong();
+		r.depth = (int) readVarLong(in);
+		if (keepStats) {
+			r.stat = new FileStat(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+					in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+		}
+		r.in = in;
+		return r;
+	}
+
+	private static File createRunFile() throws IOException {
+		return File.createTempFile("javafind", ".run");
+	}
+
+	private static DataOutputStream openRun(File run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 64 * 1024));
+	}
+
+	private static void deleteRuns(List<File> files) {
+		for (int i = 0; i < files.size(); i++) {
+			files.get(i).delete();
+		}
+		files.clear();
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
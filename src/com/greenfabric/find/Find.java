@@ -25,11 +25,21 @@ package com.greenfabric.find;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.oro.text.perl.MalformedPerl5PatternException;
 
-import com.greenfabric.system.OSInfo;
+import com.greenfabric.system.CancellationToken;
+import com.greenfabric.system.FileStat;
+import com.greenfabric.system.FlightRecording;
+import com.greenfabric.system.LineWriter;
 import com.greenfabric.system.StdOutConsumer;
 import com.greenfabric.system.SystemPack;
 
@@ -48,7 +58,8 @@ import com.greenfabric.system.SystemPack;
  * Currently, it looks like this class isn't too efficient reading data from the
  * system. So, Find only calls the native GNU utilities when a regular
  * expression is explicitly specified. In this case, it's still faster: about 2x
- * faster than pure Java.
+ * faster than pure Java. (The benchmarks in bench/src, run by bin/bench.sh,
+ * measure both engines on a generated tree.)
  * 
  * <p>
  * This class also adds the useful method <a href="#isSymLink">isSymLink </a> to
@@ -137,7 +148,8 @@ public class Find extends File {
 	/*
 	 * STATIC FIELDS
 	 */
-	private static OSInfo osInfo = SystemPack.getOSInfo();
+
+	private static final long serialVersionUID = 1L;
 
 	private static String allowOptimizeDefault = "regex";
 
@@ -145,6 +157,8 @@ public class Find extends File {
 
 	private static final String EVERYTHING_PATTERN = "//";
 
+	private static final String USAGE = "Usage: Find [pathname [regex]] [expression]";
+
 	private static final String BAD_PATTERN_MESSAGE = "Error:  Your regular expression is invalid.\nRegular expressions must "
 			+ "follow Perl 5 syntax,\nexcept that the / characters are optional:\n"
 			+ "Examples of valid regular expressions:\n\n" + "classes    html    /html/i    '/\\.h$'";
@@ -156,9 +170,11 @@ public class Find extends File {
 
 	private FilenameFilter fileFilter;
 
+	private SubtreePruner pruner;
+
 	private String pattern = EVERYTHING_PATTERN;
 
-	private Map excludeList;
+	private Map<File, Integer> excludeList;
 
 	/**
 	 * The default level to start searching at
@@ -170,9 +186,28 @@ public class Find extends File {
 	 */
 	static final int DEFAULT_MAX_DEPTH = Integer.MAX_VALUE;
 
+	/**
+	 * The value of a time option that hasn't been set
+	 */
+	static final long NO_TIME = Long.MIN_VALUE;
+
+	/**
+	 * The value of maxResults when there's no limit
+	 */
+	static final int NO_LIMIT = Integer.MAX_VALUE;
+
+	/**
+	 * The default memory for sorting, before matches are spilled to disk
+	 */
+	static final long DEFAULT_SORT_MEMORY = 64L * 1024 * 1024;
+
+	private static final String[] SORT_KEYS = { "path", "size", "mtime", "atime" };
+
+	private static final int NO_SORT = -1;
+
 	/*
 	 * Find options, and their defaults. These are reminiscent of GNU find. When a
-	 * new option is added, the private constructor must be updated.
+	 * new option is added, copyOptions() must be updated.
 	 */
 	private boolean follow = false;
 
@@ -191,8 +226,130 @@ public class Find extends File {
 	 */
 	private boolean stdOut = false; // Print names to stdout?
 
+	private boolean print0 = false; // End them with a NUL?
+
+	private PrintfFormat printf = null; // Or print them in this format?
+
+	private int sortKey = NO_SORT;
+
+	private boolean sortReverse = false;
+
+	private long sortMemory = DEFAULT_SORT_MEMORY;
+
 	private boolean negated = false;
 
+	private long modifiedSince = NO_TIME;
+
+	private File checkpoint = null;
+
+	private FindExpression expression = null;
+
+	private int maxResults = NO_LIMIT;
+
+	private boolean firstMatch = false;
+
+	private CancellationToken cancellationToken = null;
+
+	private long timeout = NO_TIME;
+
+	private FindMetrics metrics = null;
+
+	private ProgressListener progressListener = null;
+
+	private FindProfile profile = null;
+
+	private long progressInterval;
+
+	/*
+	 * The native command line after the starting point, when a FindPlan has
+	 * worked it out in advance. Null means it's built for each search.
+	 */
+	private String nativeCommandTail = null;
+
+	/*
+	 * The time the current search started. Age tests are measured from here.
+	 */
+	private long searchStarted;
+
+	/*
+	 * Cancelled when the current search has to stop: when the result limit is
+	 * reached, or when the caller's token is cancelled. Null between searches.
+	 */
+	private CancellationToken stop;
+
+	/*
+	 * What the current search counts into, or null if it isn't measured.
+	 */
+	private FindMetrics searchMetrics;
+
+	/*
+	 * What the current search reports its progress through, or null if it
+	 * has no ProgressListener.
+	 */
+	private ProgressSampler progress;
+
+	/*
+	 * The directories the current search didn't finish with, when it stops
+	 * early.
+	 */
+	private List<String> unvisited;
+
+	/*
+	 * For a search of several starting points: their paths, and the pool their
+	 * directories are searched on, in parallel. Set only by MultiRootFind.
+	 */
+	private String[] rootPaths;
+
+	private ForkJoinPool rootPool;
+
+	private boolean distinctMatches;
+
+	/*
+	 * True if subdirectories are searched as separate tasks on the current
+	 * ForkJoinPool, instead of one after another.
+	 */
+	private boolean parallel = false;
+
+	/*
+	 * Where the matches go instead of being collected or printed, if it's set.
+	 */
+	private MatchConsumer output;
+
+	/*
+	 * True if the output can take matches from several threads at once, so
+	 * that a parallel search passes them on without a lock.
+	 */
+	private boolean concurrentOutput = false;
+
+	/*
+	 * True if the current search's first consumer can take matches from
+	 * several threads at once.
+	 */
+	private boolean lockFreeConsumer = false;
+
+	/*
+	 * Where to print, instead of standard output, and the path to show in
+	 * place of mine. Set when running for a client of FindDaemon.
+	 */
+	private LineWriter writer;
+
+	private String displayPath;
+
+	private ExecAction exec;
+
+	private ContentSearch contentSearch;
+
+	/*
+	 * True if every match is passed on with its attributes, whatever the
+	 * output needs.
+	 */
+	private boolean matchStats = false;
+
+	/*
+	 * Runs the deadlines of all searches. It's created when first needed.
+	 */
+	private static Timer deadlineTimer;
+
 	/*
 	 * Set the default optimize mode with a static constructor.
 	 */
@@ -219,7 +376,7 @@ public class Find extends File {
 		 * Set up some of my fields
 		 */
 		fileFilter = new AllFilenameFilter();
-		excludeList = new HashMap();
+		excludeList = new HashMap<File, Integer>();
 
 		/*
 		 * Handle the case that the user gave us a directory name with the file
@@ -241,6 +398,16 @@ public class Find extends File {
 		this(directory.getPath());
 	}
 
+	/**
+	 * Constructs a new Find object that has the same options as the given find,
+	 * but starts searching somewhere else. The compiled pattern and the other
+	 * option objects are shared, not rebuilt. This is how FindPlan runs a query.
+	 */
+	Find(String directoryName, Find template) {
+		this(directoryName);
+		copyOptions(template);
+	}
+
 	/**
 	 * Constructs a new Find object that has the same options as the given find.
 	 * This is used when recursing into subdirectories: A new Find is created for
@@ -249,14 +416,71 @@ public class Find extends File {
 	 */
 	private Find(Find modelFind, String name) {
 		super(modelFind, name);
+		copyOptions(modelFind);
+		searchStarted = modelFind.searchStarted;
+		stop = modelFind.stop;
+		searchMetrics = modelFind.searchMetrics;
+		progress = modelFind.progress;
+		profile = modelFind.profile;
+		unvisited = modelFind.unvisited;
+		parallel = modelFind.parallel;
+	}
+
+	/**
+	 * Take all of the given find's options, except for its CancellationToken.
+	 * The option objects themselves are never changed once set, only replaced,
+	 * so they can be shared.
+	 */
+	private void copyOptions(Find modelFind) {
 		fileFilter = modelFind.fileFilter;
+		pruner = modelFind.pruner;
+		pattern = modelFind.pattern;
+		negated = modelFind.negated;
+		optimizeMode = modelFind.optimizeMode;
 		follow = modelFind.follow;
 		minDepth = modelFind.minDepth;
 		maxDepth = modelFind.maxDepth;
 		collectingDirectories = modelFind.collectingDirectories;
 		collectingFiles = modelFind.collectingFiles;
 		stdOut = modelFind.stdOut;
+		print0 = modelFind.print0;
+		printf = modelFind.printf;
+		sortKey = modelFind.sortKey;
+		sortReverse = modelFind.sortReverse;
+		sortMemory = modelFind.sortMemory;
 		excludeList = modelFind.excludeList;
+		modifiedSince = modelFind.modifiedSince;
+		checkpoint = modelFind.checkpoint;
+		expression = modelFind.expression;
+		maxResults = modelFind.maxResults;
+		firstMatch = modelFind.firstMatch;
+		timeout = modelFind.timeout;
+		matchStats = modelFind.matchStats;
+		nativeCommandTail = modelFind.nativeCommandTail;
+	}
+
+	/**
+	 * Return a Find that searches just like I would: it has my options, and
+	 * also what my searches pass their matches on to, and what measures them
+	 * and reports on them, which a FindQuery leaves out. Only my
+	 * CancellationToken isn't copied.
+	 */
+	Find copyForSearch() {
+		Find copy = new Find(getPath(), this);
+		copy.rootPaths = rootPaths;
+		copy.rootPool = rootPool;
+		copy.distinctMatches = distinctMatches;
+		copy.output = output;
+		copy.concurrentOutput = concurrentOutput;
+		copy.writer = writer;
+		copy.displayPath = displayPath;
+		copy.exec = exec;
+		copy.contentSearch = contentSearch;
+		copy.metrics = metrics;
+		copy.progressListener = progressListener;
+		copy.progressInterval = progressInterval;
+		copy.profile = profile;
+		return copy;
 	}
 
 	/*
@@ -280,6 +504,129 @@ public class Find extends File {
 		return stdOut;
 	}
 
+	/**
+	 * Specify that the names printed to standard output end with a NUL character
+	 * instead of a newline, like the -print0 action of GNU find. This is the safe
+	 * way to feed names containing newlines to <code>xargs -0</code>. Default =
+	 * false.
+	 */
+	public void setPrint0(boolean b) {
+		print0 = b;
+	}
+
+	/**
+	 * Return true if the names I print end with a NUL character.
+	 */
+	public boolean getPrint0() {
+		return print0;
+	}
+
+	/**
+	 * Specify a format for the matches printed to standard output, like the
+	 * -printf action of GNU find. For example, to print each match's size,
+	 * modification time and permissions along with its path:
+	 * 
+	 * <pre>
+	 * find.setPrintf(&quot;%s %T@ %m %p\n&quot;);
+	 * </pre>
+	 * 
+	 * The attributes are taken from the same pass over the tree that finds the
+	 * matches. See PrintfFormat for the supported directives. This only has an
+	 * effect when setStdOut(true) is set; the format replaces the -print0 option.
+	 * 
+	 * @param format the format, or null to print just the names.
+	 * @exception IllegalArgumentException if the format isn't valid.
+	 */
+	public void setPrintf(String format) throws IllegalArgumentException {
+		setPrintf(format == null ? null : PrintfFormat.compile(format));
+	}
+
+	/**
+	 * Specify an already compiled format for the matches printed to standard
+	 * output.
+	 */
+	public void setPrintf(PrintfFormat format) {
+		printf = format;
+	}
+
+	/**
+	 * Return my printf format, or null if I print just the names.
+	 */
+	public PrintfFormat getPrintf() {
+		return printf;
+	}
+
+	/**
+	 * Specify an order for the matches: by "path", "size", "mtime"
+	 * (modification time) or "atime" (access time), or "none", the order
+	 * they're found in, which is the default. Matches with the same size or
+	 * time are ordered by path. Paths are ordered like a listing of the tree,
+	 * with each directory followed by its contents.
+	 * <p>
+	 * 
+	 * The sort doesn't have to fit in memory: see setSortMemory(). Since the
+	 * first match in sorted order can't be known until the whole tree has been
+	 * searched, a result limit no longer cuts the search short; it only limits
+	 * the output. But then only that many matches are kept, as long as there
+	 * aren't more than 65536 of them, so that e.g. the 100 largest files of a
+	 * huge tree take no more memory than 100 matches.
+	 * 
+	 * @exception IllegalArgumentException if the key isn't one of these.
+	 */
+	public void setSortBy(String key) throws IllegalArgumentException {
+		if (key == null || key.equals("none")) {
+			sortKey = NO_SORT;
+			return;
+		}
+		for (int i = 0; i < SORT_KEYS.length; i++) {
+			if (SORT_KEYS[i].equals(key)) {
+				sortKey = i;
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Unknown sort key: " + key);
+	}
+
+	/**
+	 * Return the key the matches are sorted by, or "none".
+	 */
+	public String getSortBy() {
+		return sortKey == NO_SORT ? "none" : SORT_KEYS[sortKey];
+	}
+
+	/**
+	 * Specify whether to sort in descending order, e.g. the biggest files first.
+	 * Default is false.
+	 */
+	public void setSortReverse(boolean b) {
+		sortReverse = b;
+	}
+
+	/**
+	 * Return true if I sort in descending order.
+	 */
+	public boolean getSortReverse() {
+		return sortReverse;
+	}
+
+	/**
+	 * Specify roughly how much memory sorting may use. Once the collected
+	 * matches take more than this, they're sorted and written to a temporary
+	 * file, and the files are merged at the end. Default is 64 MB.
+	 * 
+	 * @param bytes the memory to use, in bytes.
+	 */
+	public void setSortMemory(long bytes) {
+		sortMemory = bytes;
+	}
+
+	/**
+	 * Return roughly how much memory sorting may use, in bytes.
+	 */
+	public long getSortMemory() {
+		return sortMemory;
+	}
+
 	/**
 	 * Specify if Find can optimize things by using GNU tools when they exist.
 	 * 
@@ -305,8 +652,8 @@ public class Find extends File {
 		 * of objects are in there.
 		 */
 
-		Integer zero = new Integer(0);
-		excludeList = new Hashtable();
+		Integer zero = Integer.valueOf(0);
+		excludeList = new Hashtable<File, Integer>();
 		for (int i = 0; i < dirs.length; i++) {
 			excludeList.put(dirs[i], zero);
 		}
@@ -321,10 +668,10 @@ public class Find extends File {
 		if (size == 0)
 			return array;
 
-		Iterator keys = excludeList.keySet().iterator();
+		Iterator<File> keys = excludeList.keySet().iterator();
 		int i = 0;
 		while (keys.hasNext()) {
-			array[i] = (File) keys.next();
+			array[i] = keys.next();
 			i++;
 		}
 		return array;
@@ -438,6 +785,232 @@ public class Find extends File {
 		return negated;
 	}
 
+	/**
+	 * Specify to find only entries modified after the given time, like the
+	 * -newermt option of GNU find. Default is to find entries regardless of
+	 * their modification time.
+	 * 
+	 * @param time milliseconds since the epoch.
+	 */
+	public void setModifiedSince(long time) {
+		modifiedSince = time;
+	}
+
+	/**
+	 * Return the time that entries must have been modified after, or
+	 * Long.MIN_VALUE if there's no such restriction.
+	 */
+	public long getModifiedSince() {
+		return modifiedSince;
+	}
+
+	/**
+	 * Specify a checkpoint file, switching on the "modified since checkpoint"
+	 * mode. This is meant for backup and sync jobs: each run finds only the
+	 * entries that are new or modified since the previous successful run, and
+	 * then moves the checkpoint forward. The first run, when the file doesn't
+	 * exist yet, finds everything.
+	 * <p>
+	 * 
+	 * The pure-Java engine keeps a snapshot of the tree in the checkpoint file
+	 * (see writeSnapshot()), and doesn't list directories again whose
+	 * modification time is unchanged. The native engine passes the checkpoint
+	 * time to find(1) instead.
+	 * 
+	 * @param file the checkpoint file, or null to switch the mode off. It
+	 *             shouldn't be inside the tree being searched.
+	 */
+	public void setCheckpoint(File file) {
+		checkpoint = file;
+	}
+
+	/**
+	 * Return my checkpoint file, or null if I'm not in "modified since
+	 * checkpoint" mode.
+	 */
+	public File getCheckpoint() {
+		return checkpoint;
+	}
+
+	/**
+	 * Specify a GNU find style expression that entries must match, in addition
+	 * to the regex and the other options. For example:
+	 * 
+	 * <pre>
+	 * find.setExpression(&quot;-size +100M -mtime -7 -not -user root&quot;);
+	 * </pre>
+	 * 
+	 * See FindExpression for the supported tests. The expression is compiled
+	 * right away, so syntax errors are reported here.
+	 * 
+	 * @param expression the expression, or null to remove it.
+	 * @exception IllegalArgumentException if the expression isn't valid.
+	 */
+	public void setExpression(String expression) throws IllegalArgumentException {
+		setExpression(expression == null ? null : FindExpression.parse(expression));
+	}
+
+	/**
+	 * Specify an already compiled expression that entries must match.
+	 */
+	public void setExpression(FindExpression expression) {
+		this.expression = expression;
+	}
+
+	/**
+	 * Return my expression, or null if I don't have one.
+	 */
+	public FindExpression getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Specify the most matches to find. The search stops as soon as it has found
+	 * this many, and its result is marked as partial. Default is no limit.
+	 * 
+	 * @param max the limit, or Integer.MAX_VALUE for none.
+	 */
+	public void setMaxResults(int max) {
+		maxResults = max;
+	}
+
+	/**
+	 * Return the most matches I'll find.
+	 */
+	public int getMaxResults() {
+		return maxResults;
+	}
+
+	/**
+	 * Specify to stop at the first match, like ending a GNU find expression with
+	 * -quit. This is the fast way to learn whether anything matches at all.
+	 * Default is false.
+	 */
+	public void setFirstMatch(boolean b) {
+		firstMatch = b;
+	}
+
+	/**
+	 * Return true if I stop at the first match.
+	 */
+	public boolean getFirstMatch() {
+		return firstMatch;
+	}
+
+	/**
+	 * Specify a token that another thread can cancel to stop my searches. A
+	 * stopped search returns the matches found so far, marked as partial, and a
+	 * native search has its processes killed.
+	 * 
+	 * @param token the token, or null for searches that can't be cancelled.
+	 */
+	public void setCancellationToken(CancellationToken token) {
+		cancellationToken = token;
+	}
+
+	/**
+	 * Return my cancellation token, or null if I don't have one.
+	 */
+	public CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+
+	/**
+	 * Specify a FindMetrics for my searches to count what they do into: the
+	 * directories listed, the files stat'ed, the regexes run, and so on. Like
+	 * the CancellationToken, it isn't one of the options a FindQuery keeps.
+	 * Searches without one are measured only if FindMetrics are enabled for
+	 * all searches.
+	 * 
+	 * @param metrics the counts, or null.
+	 * @see FindMetrics
+	 */
+	public void setMetrics(FindMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Return the FindMetrics my searches count into, or null if I don't have
+	 * one.
+	 */
+	public FindMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Specify a listener to be told how my searches are getting on: how many
+	 * directories and entries they've seen, how many matches, how fast they're
+	 * going, and where they are. It's called from a timer thread every given
+	 * number of milliseconds, and once more at the end of each search. The
+	 * search itself only updates a few counters per directory, so it isn't
+	 * slowed down. Like the CancellationToken, it isn't one of the options a
+	 * FindQuery keeps.
+	 * 
+	 * @param listener the listener, or null for none.
+	 * @param millis   the time between reports, which must be positive.
+	 * @see FindProgress
+	 */
+	public void setProgressListener(ProgressListener listener, long millis) {
+		if (listener != null && millis <= 0) {
+			throw new IllegalArgumentException("The progress interval must be positive: " + millis);
+		}
+		progressListener = listener;
+		progressInterval = millis;
+	}
+
+	/**
+	 * Return my progress listener, or null if I don't have one.
+	 */
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	/**
+	 * Specify a FindProfile to record where my searches spend their time: per
+	 * directory, and per phase of the work. Like the CancellationToken, it
+	 * isn't one of the options a FindQuery keeps.
+	 * 
+	 * @param profile the profile, or null for none.
+	 * @see FindProfile
+	 */
+	public void setProfile(FindProfile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Return the FindProfile my searches record into, or null if I don't have
+	 * one.
+	 */
+	public FindProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Specify how long a search may take. When the time is up, the search stops
+	 * and returns what it has found so far, marked as timed out, along with the
+	 * directories it didn't get to. A native search has its processes killed.
+	 * Default is no limit.
+	 * <p>
+	 * 
+	 * The pure-Java engine checks the time between file system calls, so a single
+	 * call that hangs, like listing a directory on a dead NFS server, can still
+	 * hold it up.
+	 * 
+	 * @param millis the time allowed for each search, in milliseconds, or
+	 *               Long.MIN_VALUE for no limit.
+	 */
+	public void setTimeout(long millis) {
+		timeout = millis;
+	}
+
+	/**
+	 * Return the time allowed for a search, in milliseconds, or Long.MIN_VALUE if
+	 * there's no limit.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
 	/**
 	 * Return the regular expression I use.
 	 */
@@ -465,13 +1038,20 @@ public class Find extends File {
 		 */
 		if (pattern.equals(EVERYTHING_PATTERN)) {
 			fileFilter = new AllFilenameFilter();
+			pruner = null;
 			return;
 		}
 
+		/*
+		 * A pattern anchored to a path prefix also tells us which subtrees can't
+		 * contain any matches. A negated one doesn't.
+		 */
 		if (negated) {
 			fileFilter = new NegatedRegexFilenameFilter(pattern);
+			pruner = null;
 		} else {
 			fileFilter = new RegexFilenameFilter(pattern);
+			pruner = SubtreePruner.forPattern(pattern);
 		}
 	}
 
@@ -488,7 +1068,7 @@ public class Find extends File {
 		 * The logic has been moved to an OSInfo adapter, so that symlinks are checked
 		 * in the appropriate way for the current operating system.
 		 */
-		return osInfo.isSymLink(this);
+		return SystemPack.getOSInfo().isSymLink(this);
 	}
 
 	/*
@@ -508,15 +1088,7 @@ public class Find extends File {
 	 * @return The list of matching Files
 	 */
 	public File[] listFilesRecursively() throws MalformedPerl5PatternException, IOException {
-		List fileList = generateList();
-
-		// Create an array of files from the vector of files.
-		File[] array = new File[fileList.size()];
-		for (int i = 0; i < array.length; i++) {
-			array[i] = new File((String) fileList.get(i));
-		}
-
-		return array;
+		return generateList().getFiles();
 	}
 
 	/**
@@ -531,11 +1103,447 @@ public class Find extends File {
 	 *                                           GNU
 	 * @return The list of matching filenames
 	 */
-	public Iterator listRecursively() throws IOException, MalformedPerl5PatternException {
-		return generateList().iterator();
+	public Iterator<String> listRecursively() throws IOException, MalformedPerl5PatternException {
+		return generateList().getPaths().iterator();
 	}
 
-	/*
+	/**
+	 * Perform the find recursively, returning the matches along with whether the
+	 * search ran to the end. Use this instead of listRecursively() when a result
+	 * limit or a cancellation token is set, to tell a partial result from a
+	 * complete one.
+	 * 
+	 * @exception MalformedPerl5PatternException if the regex pattern has a syntax
+	 *                                           error
+	 * @exception IOException                    if there's a problem accessing the
+	 *                                           file system, or executing native
+	 *                                           GNU utilities.
+	 */
+	public FindResult search() throws IOException, MalformedPerl5PatternException {
+		return generateList();
+	}
+
+	/**
+	 * Return how a search would be run, without running it: which engine, and
+	 * why, the native command line if find(1) is used, and how a sorted or
+	 * limited output is produced. This is what the <b>javafind.debug</b>
+	 * property shows as a search runs, on demand.
+	 * 
+	 * @exception IOException if the native command line needs a checkpoint's
+	 *                        time, and it can't be read.
+	 */
+	public String explain() throws IOException {
+		StringBuffer b = new StringBuffer();
+		if (rootPaths != null) {
+			b.append("roots:   ").append(rootPaths.length).append(", searched in parallel\n");
+		}
+		if (usesNativeEngine()) {
+			b.append("engine:  find(1)\n");
+			b.append("command: ").append(new GnuNativeFind(this).buildCommand()).append('\n');
+		} else {
+			b.append("engine:  Java");
+			if (optimizeMode.equals("off")) {
+				b.append(", because optimizing is off");
+			} else if (!GnuNativeFind.canFunction()) {
+				b.append(", because find(1) can't be run here");
+			} else {
+				b.append(", because there's no pattern for find(1) to help with");
+			}
+			b.append('\n');
+			b.append("pattern: ").append(negated ? "not " : "").append(pattern);
+			b.append(pruner != null ? ", and directories that can't match are skipped\n" : "\n");
+			if (checkpoint != null) {
+				b.append("changes: since checkpoint ").append(checkpoint).append('\n');
+			}
+		}
+		if (sortKey != NO_SORT) {
+			b.append("sort:    by ").append(getSortBy()).append(sortReverse ? ", reversed" : "");
+			b.append(TopK.canSelect(getOutputLimit()) ? ", keeping the first " + getOutputLimit() + " in a heap\n"
+					: ", in memory or spilling to disk\n");
+		} else if (getOutputLimit() != NO_LIMIT) {
+			b.append("limit:   ").append(getOutputLimit()).append(" matches, then the search stops\n");
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Start the search in the background, on the default SearchExecutor, and
+	 * return its result when it's done. My options are copied first, so I can be
+	 * changed or reused right away; so are my exec action, content search,
+	 * metrics, progress listener and profile, which the search uses just as
+	 * search() would. Cancelling the future, or my CancellationToken, stops the
+	 * search.
+	 * 
+	 * @see SearchExecutor
+	 */
+	public CompletableFuture<FindResult> searchAsync() {
+		return searchAsync(SearchExecutor.getDefault());
+	}
+
+	/**
+	 * Start the search in the background, on the given executor.
+	 * 
+	 * @see #searchAsync()
+	 */
+	public CompletableFuture<FindResult> searchAsync(SearchExecutor executor) {
+		return executor.submit(this);
+	}
+
+	/**
+	 * Record a snapshot of the tree under me: the path, size, modification time
+	 * and inode of every entry, sorted by path. The snapshot can later be diffed
+	 * against the live tree with diffSnapshot(), or against another snapshot
+	 * with Snapshot.diff(). The directories to exclude, the maximum depth and the
+	 * follow option determine what gets recorded.
+	 * 
+	 * @param snapshotFile where to write the snapshot. An existing file is
+	 *                     replaced only once the new snapshot is complete.
+	 * @exception IOException if the snapshot can't be written.
+	 * @see Snapshot
+	 */
+	public void writeSnapshot(File snapshotFile) throws IOException {
+		Snapshot.record(this, snapshotFile);
+	}
+
+	/**
+	 * Report what changed in the tree under me since a snapshot was recorded.
+	 * Directories whose modification time is unchanged aren't listed again:
+	 * their contents are taken from the snapshot. Only changes to entries that
+	 * match my regex and file type options are reported.
+	 * 
+	 * @param snapshotFile a snapshot recorded by writeSnapshot().
+	 * @param consumer     receives the added, removed and modified entries.
+	 * @exception IOException                    if the snapshot can't be read.
+	 * @exception MalformedPerl5PatternException if the regex pattern has a syntax
+	 *                                           error
+	 */
+	public void diffSnapshot(File snapshotFile, ChangeConsumer consumer)
+			throws IOException, MalformedPerl5PatternException {
+		Snapshot.diff(this, new SnapshotReader(snapshotFile), consumer, null);
+	}
+
+	/**
+	 * Report what changed since a snapshot was recorded, and record a new
+	 * snapshot of the current tree during the same traversal. This is the way to
+	 * keep a rolling snapshot: pass the same file twice.
+	 * 
+	 * @param newSnapshotFile where to write the new snapshot. This may be the
+	 *                        same file as snapshotFile.
+	 */
+	public void diffSnapshot(File snapshotFile, ChangeConsumer consumer, File newSnapshotFile)
+			throws IOException, MalformedPerl5PatternException {
+		Snapshot.diff(this, new SnapshotReader(snapshotFile), consumer, newSnapshotFile);
+	}
+
+	/*
+	 * PACKAGE METHODS
+	 */
+
+	/**
+	 * Return the pruner derived from my pattern, or null if every subtree has to
+	 * be searched.
+	 */
+	SubtreePruner getPruner() {
+		return pruner;
+	}
+
+	/**
+	 * Return the number of matches after which the traversal can stop. When
+	 * sorting, that's never.
+	 */
+	int getResultLimit() {
+		return sortKey != NO_SORT ? NO_LIMIT : getOutputLimit();
+	}
+
+	/**
+	 * Return true if each match has to be passed on with its attributes, for
+	 * my printf format or my sort key. The native engine then has find print
+	 * them.
+	 */
+	boolean isFormattingMatches() {
+		return (stdOut && printf != null) || (sortKey != NO_SORT && ExternalSort.needsStat(sortKey)) || matchStats;
+	}
+
+	/**
+	 * Specify whether every match is passed on with its attributes, for an
+	 * output consumer that needs them, like a DuplicateFinder's.
+	 */
+	void setMatchStats(boolean b) {
+		matchStats = b;
+		nativeCommandTail = null; // It may not print them.
+	}
+
+	/**
+	 * Return how deep the given path is below the given starting point, by
+	 * counting separators.
+	 */
+	static int depthOf(String path, String startPoint) {
+		if (path.length() <= startPoint.length()) {
+			return 0;
+		}
+		int depth = startPoint.endsWith(File.separator) ? 1 : 0;
+		for (int i = path.indexOf(File.separatorChar, startPoint.length()); i != -1; i = path
+				.indexOf(File.separatorChar, i + 1)) {
+			depth++;
+		}
+		return depth;
+	}
+
+	/**
+	 * Return true if my searches are run by find(1) rather than in Java.
+	 */
+	boolean usesNativeEngine() {
+		boolean canOptimize = optimizeMode.equals("on")
+				|| (optimizeMode.equals("regex") && !pattern.equals(EVERYTHING_PATTERN));
+		return canOptimize && GnuNativeFind.canFunction();
+	}
+
+	/**
+	 * Return the native command line after the starting point, if it has been
+	 * worked out in advance, or null.
+	 */
+	String getNativeCommandTail() {
+		return nativeCommandTail;
+	}
+
+	/**
+	 * Work out my native command line in advance, so that each search only has
+	 * to put the starting point in front of it. This is done only for options
+	 * that don't change between searches: a checkpoint's time does.
+	 */
+	void prepareNativeCommand() {
+		if (checkpoint == null && usesNativeEngine()) {
+			try {
+				nativeCommandTail = new GnuNativeFind(this).buildCommandTail();
+			} catch (IOException e) {
+				nativeCommandTail = null; // Only reading a checkpoint can fail.
+			}
+		}
+	}
+
+	/**
+	 * Compile my pattern now, instead of at the first match.
+	 * 
+	 * @exception MalformedPerl5PatternException if it has a syntax error.
+	 */
+	void compilePattern() throws MalformedPerl5PatternException {
+		if (fileFilter instanceof RegexFilenameFilter) {
+			((RegexFilenameFilter) fileFilter).compile();
+		} else if (fileFilter instanceof NegatedRegexFilenameFilter) {
+			((NegatedRegexFilenameFilter) fileFilter).compile();
+		}
+	}
+
+	/**
+	 * Search all of the given starting points instead of my own path, on the
+	 * given pool. My path is only used to name the search.
+	 * 
+	 * @param distinct true if the same match can be found under more than one
+	 *                 starting point, and should be passed on only once.
+	 */
+	void setRoots(String[] paths, ForkJoinPool pool, boolean distinct) {
+		rootPaths = paths;
+		rootPool = pool;
+		distinctMatches = distinct;
+	}
+
+	/**
+	 * Send the matches to the given consumer, instead of collecting or printing
+	 * them.
+	 */
+	void setOutput(MatchConsumer consumer) {
+		output = consumer;
+		concurrentOutput = false;
+	}
+
+	/**
+	 * Send the matches to the given consumer, which can take them from several
+	 * threads at once. A search of several starting points then passes them on
+	 * straight from the threads that find them, unless they have to be sorted
+	 * or made distinct first.
+	 */
+	void setConcurrentOutput(MatchConsumer consumer) {
+		output = consumer;
+		concurrentOutput = true;
+	}
+
+	/**
+	 * Return a match's path the way the user gave its starting point, which
+	 * can differ from how it's searched, e.g. for a FindDaemon's client.
+	 */
+	String displayPathOf(String path) {
+		String realPrefix = getPath();
+		if (displayPath == null || !path.startsWith(realPrefix)) {
+			return path;
+		}
+		return displayPath + path.substring(realPrefix.length());
+	}
+
+	/**
+	 * Run a command on the matches, instead of collecting or printing them. The
+	 * search returns when the last command has finished; the action then has
+	 * their exit status. Like the CancellationToken, it isn't one of the
+	 * options a FindQuery copies. Default is null, for no command.
+	 *
+	 * @exception IOException from search(), if the command can't be started.
+	 */
+	public void setExec(ExecAction action) {
+		exec = action;
+	}
+
+	/**
+	 * Return the command run for each match, or null if there isn't one.
+	 */
+	public ExecAction getExec() {
+		return exec;
+	}
+
+	/**
+	 * Search the contents of the matching files, instead of collecting or
+	 * printing them. The search returns when the last file has been searched.
+	 * Like an ExecAction, it isn't one of the options a FindQuery copies.
+	 * Default is null, for no content search.
+	 */
+	public void setContentSearch(ContentSearch search) {
+		contentSearch = search;
+	}
+
+	/**
+	 * Return the search of my matches' contents, or null if there isn't one.
+	 */
+	public ContentSearch getContentSearch() {
+		return contentSearch;
+	}
+
+	/**
+	 * Print my matches to the given writer instead of standard output.
+	 */
+	void setWriter(LineWriter writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Print the matches with the given path in place of mine, e.g. the relative
+	 * path that a client of FindDaemon gave, when I have it resolved against
+	 * the client's working directory.
+	 */
+	void setDisplayPath(String path) {
+		displayPath = path;
+	}
+
+	/**
+	 * Return the starting point the given match was found under: my path,
+	 * unless I search several. Then it's the longest one the path begins with.
+	 */
+	String startPointOf(String path) {
+		if (rootPaths == null) {
+			return getPath();
+		}
+		String best = null;
+		for (int i = 0; i < rootPaths.length; i++) {
+			String root = rootPaths[i];
+			if (path.startsWith(root) && (path.length() == root.length() || root.endsWith(File.separator)
+					|| path.charAt(root.length()) == File.separatorChar)) {
+				if (best == null || root.length() > best.length()) {
+					best = root;
+				}
+			}
+		}
+		return best == null ? getPath() : best;
+	}
+
+	/**
+	 * Describe all of my options, except for the starting point and the
+	 * CancellationToken. Two Finds with the same description search the same
+	 * way.
+	 */
+	String describeOptions() {
+		File[] excludes = getDirectoriesToExclude();
+		String[] excludePaths = new String[excludes.length];
+		for (int i = 0; i < excludes.length; i++) {
+			excludePaths[i] = excludes[i].getPath();
+		}
+		Arrays.sort(excludePaths);
+
+		StringBuffer b = new StringBuffer();
+		b.append("pattern=").append(pattern);
+		b.append(" negated=").append(negated);
+		b.append(" optimize=").append(optimizeMode);
+		b.append(" follow=").append(follow);
+		b.append(" mindepth=").append(minDepth);
+		b.append(" maxdepth=").append(maxDepth);
+		b.append(" directories=").append(collectingDirectories);
+		b.append(" files=").append(collectingFiles);
+		b.append(" exclude=").append(Arrays.asList(excludePaths));
+		b.append(" modifiedSince=").append(modifiedSince);
+		b.append(" checkpoint=").append(checkpoint);
+		b.append(" expression=").append(expression);
+		b.append(" stdout=").append(stdOut);
+		b.append(" print0=").append(print0);
+		b.append(" printf=").append(printf);
+		b.append(" sort=").append(getSortBy());
+		b.append(" reverse=").append(sortReverse);
+		b.append(" sortMemory=").append(sortMemory);
+		b.append(" maxResults=").append(maxResults);
+		b.append(" firstMatch=").append(firstMatch);
+		b.append(" timeout=").append(timeout);
+		return b.toString();
+	}
+
+	/**
+	 * Return the token that is cancelled when the current search has to stop,
+	 * or null if no search is running.
+	 */
+	CancellationToken getStopToken() {
+		return stop;
+	}
+
+	/**
+	 * Return what the current search counts into, or null if it isn't
+	 * measured, or no search is running.
+	 */
+	FindMetrics getSearchMetrics() {
+		return searchMetrics;
+	}
+
+	/**
+	 * Return what the current search reports its progress through, or null if
+	 * it has no ProgressListener, or no search is running.
+	 */
+	ProgressSampler getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Return true if the current search has been asked to stop.
+	 */
+	boolean isStopped() {
+		return stop != null && stop.isCancelled();
+	}
+
+	/**
+	 * Return true if the given path passes my regex and file type options. This
+	 * lets the helper classes in this package filter their output the same way I
+	 * do.
+	 */
+	boolean accepts(String absolutePath, boolean isDirectory) {
+		if (isDirectory ? !collectingDirectories : !collectingFiles) {
+			return false;
+		}
+		return matchesPattern(absolutePath);
+	}
+
+	/**
+	 * Return true if the given file passes my modifiedSince option and my
+	 * expression, the tests that need a look at the file itself. Together with
+	 * accepts(), this is the whole of test().
+	 */
+	boolean passesTests(File file) {
+		FindEntry entry = newEntry(file);
+		return isModifiedSince(entry) && matchesExpression(entry);
+	}
+
+	/*
 	 * PRIVATE METHODS
 	 */
 
@@ -543,50 +1551,304 @@ public class Find extends File {
 	 * This method acts like a switch, either starting the recursive find, written
 	 * in Java, or delegating the task to the operating system.
 	 */
-	private List generateList() throws MalformedPerl5PatternException, IOException {
-		final List fileList = new LinkedList();
-		StdOutConsumer printer, saver, currentConsumer;
+	private FindResult generateList() throws MalformedPerl5PatternException, IOException {
+		final List<String> fileList = new LinkedList<String>();
+		long startNanos = System.nanoTime();
+		searchStarted = System.currentTimeMillis();
+		MatchConsumer printer, saver;
 
 		/*
 		 * 1. Prepare two types of consumers, that do different things w/ the output.
+		 * The printer writes through a big buffer, which is flushed at the end of the
+		 * search.
 		 */
-		printer = new StdOutConsumer() {
+		final LineWriter out = stdOut ? (writer != null ? writer : LineWriter.getStdOut()) : null;
+		printer = stdOut ? new Printer(this, out) : null; // I print everything to stdout!
+
+		saver = new MatchConsumer() {
 			public void receive(String s) {
-				System.out.println(s);
+				fileList.add(s);
 			}
-		}; // I print everything to stdout!
 
-		saver = new StdOutConsumer() {
-			public void receive(String s) {
+			public void receive(String s, int depth, FileStat stat) {
 				fileList.add(s);
 			}
 		}; // I save everything in a vector!
 
 		/*
-		 * 2. Decide which consumer will handle the output for this run.
+		 * 2. Decide which consumer will handle the output for this run. It's wrapped
+		 * in one that counts the matches, and stops the search at the limit.
 		 */
-		currentConsumer = stdOut ? printer : saver;
+		final CancellationToken searchStop = new CancellationToken();
+		stop = searchStop;
+		FindMetrics counts = FindMetrics.forSearch(metrics);
+		searchMetrics = counts;
+		MatchConsumer sink = stdOut ? printer : saver;
+		if (output != null) {
+			sink = output;
+		} else if (exec != null && displayPath != null) {
+			sink = new MatchConsumer() {
+				public void receive(String path) {
+					exec.receive(displayPathOf(path));
+				}
+
+				public void receive(String path, int depth, FileStat stat) {
+					exec.receive(displayPathOf(path));
+				}
+			}; // The commands run where the user is, and get the paths they gave.
+		} else if (exec != null) {
+			sink = exec;
+		} else if (contentSearch != null) {
+			sink = contentSearch;
+		}
+		final Limiter limiter = new Limiter(sink, getOutputLimit(), stop);
+		MatchConsumer currentConsumer = limiter;
+		ExternalSort sorter = null;
+		TopK top = null;
+		boolean keepStats = stdOut && printf != null && printf.needsStat();
+		if (sortKey != NO_SORT && TopK.canSelect(getOutputLimit())) {
+			top = new TopK(this, sortKey, sortReverse, getOutputLimit(), keepStats);
+			currentConsumer = top;
+		} else if (sortKey != NO_SORT) {
+			sorter = new ExternalSort(this, sortKey, sortReverse, sortMemory, keepStats);
+			currentConsumer = sorter;
+		} // I hold on to the matches, or the first ones, and pass them on in order at the end.
+		lockFreeConsumer = top != null || (concurrentOutput && sorter == null);
+		Runnable relay = new Runnable() {
+			public void run() {
+				searchStop.cancel();
+			}
+		}; // I pass the caller's cancel on to this search.
+		if (cancellationToken != null) {
+			cancellationToken.addListener(relay);
+		}
+		final boolean[] timedOut = { false };
+		TimerTask deadline = null;
+		if (timeout != NO_TIME) {
+			deadline = new TimerTask() {
+				public void run() {
+					timedOut[0] = true;
+					searchStop.cancel();
+				}
+			}; // I stop the search when its time is up.
+			getDeadlineTimer().schedule(deadline, Math.max(timeout, 0));
+		}
+		List<String> unvisitedList = Collections.synchronizedList(new ArrayList<String>());
+		unvisited = unvisitedList;
+		ProgressSampler sampler = null;
+		if (progressListener != null) {
+			sampler = new ProgressSampler(getPath(), progressListener, progressInterval) {
+				int getMatches() {
+					return limiter.getCount();
+				}
+			}; // I report how the search is getting on, from a timer thread.
+			progress = sampler;
+			sampler.start();
+		}
 
 		/*
 		 * 3. Start the find going, sending the output to the chosen consumer.
 		 */
-		boolean canOptimize = optimizeMode.equals("on")
-				|| (optimizeMode.equals("regex") && !pattern.equals(EVERYTHING_PATTERN));
+		try {
+			search(currentConsumer);
+			if (sorter != null) {
+				sorter.finish(limiter, limiter.limit);
+			} else if (top != null) {
+				top.finish(limiter);
+			}
+			if (exec != null) { // The last batch is run, unless the caller cancelled.
+				exec.finish(cancellationToken == null || !cancellationToken.isCancelled());
+			}
+		} finally {
+			if (sorter != null) { // Its temporary files go first, whatever happens after.
+				sorter.close();
+			}
+			if (contentSearch != null) { // Its last files may still be in the pool.
+				contentSearch.finish(cancellationToken != null && cancellationToken.isCancelled());
+			}
+			if (cancellationToken != null) {
+				cancellationToken.removeListener(relay);
+			}
+			if (deadline != null) {
+				deadline.cancel();
+			}
+			if (out != null) {
+				out.flush();
+			}
+			stop = null;
+			searchMetrics = null;
+			progress = null;
+			unvisited = null;
+			if (counts != null) {
+				counts.searchFinished(metrics, limiter.getCount());
+			}
+			if (sampler != null) {
+				sampler.finish();
+			}
+		}
 
-		if (canOptimize && GnuNativeFind.canFunction()) {
+		int reason;
+		if (cancellationToken != null && cancellationToken.isCancelled()) {
+			reason = FindResult.CANCELLED;
+		} else if (searchStop.isCancelled() && timedOut[0]) {
+			reason = FindResult.TIMED_OUT;
+		} else if (limiter.getCount() < limiter.limit) {
+			reason = FindResult.COMPLETE;
+		} else {
+			reason = firstMatch ? FindResult.FIRST_MATCH : FindResult.MAX_RESULTS;
+		}
+		if (reason == FindResult.COMPLETE) {
+			unvisitedList.clear();
+		}
+		return new FindResult(fileList, limiter.getCount(), reason, unvisitedList, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Run the search with one engine or the other.
+	 */
+	private void search(MatchConsumer consumer) throws MalformedPerl5PatternException, IOException {
+		if (rootPaths != null) {
+			searchRoots(consumer);
+		} else if (usesNativeEngine()) {
 			debug("Using GNU Native Find");
+			long started = System.currentTimeMillis();
 			GnuNativeFind nativeFind = new GnuNativeFind(this);
-			nativeFind.gnuFind(currentConsumer);
+			nativeFind.gnuFind(consumer);
+			if (isStopped()) {
+				unvisited.add(getPath());
+			} else if (checkpoint != null) {
+				Checkpoint.writeTime(this, checkpoint, started);
+			}
+		} else if (checkpoint != null) {
+			debug("Using Pure-Java Find against checkpoint " + checkpoint);
+			Checkpoint.findChanged(this, checkpoint, consumer);
+			if (isStopped()) {
+				unvisited.add(getPath());
+			}
 		} else {
 			debug("Using Pure-Java Find");
 			if (test(this))
-				currentConsumer.receive(this.toString());
-			if (maxDepth == 0)
-				return fileList;
-			listRecursively(currentConsumer, 1);
+				consumer.receive(this.toString());
+			if (maxDepth == 0 || !mayContainMatches(this))
+				return;
+			listRecursively(consumer, 1);
 		}
+	}
 
-		return fileList;
+	/**
+	 * Search each of my starting points, all at once, on my pool. Each one is
+	 * searched as if it were a Find of its own, but the Java engine searches
+	 * their directories in parallel, as separate tasks. The matches are passed
+	 * on one at a time.
+	 */
+	private void searchRoots(MatchConsumer consumer) throws IOException {
+		final MatchConsumer shared = lockFreeConsumer && !distinctMatches ? consumer
+				: new SynchronizedConsumer(consumer, distinctMatches);
+		RecursiveAction all = new RecursiveAction() {
+			protected void compute() {
+				List<RootTask> tasks = new ArrayList<RootTask>();
+				for (int i = 0; i < rootPaths.length; i++) {
+					Find root = new Find(rootPaths[i], Find.this);
+					root.searchStarted = searchStarted;
+					root.stop = stop;
+					root.searchMetrics = searchMetrics;
+					root.progress = progress;
+					root.profile = profile;
+					root.unvisited = unvisited;
+					root.parallel = true;
+					tasks.add(new RootTask(root, shared));
+				}
+				invokeAll(tasks);
+			}
+		};
+		try {
+			rootPool.invoke(all);
+		} catch (RuntimeException e) {
+			for (Throwable t = e; t != null; t = t.getCause()) {
+				if (t instanceof IOException) {
+					throw (IOException) t;
+				}
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Searches one starting point of a search of several.
+	 */
+	private static final class RootTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Find root;
+
+		private final MatchConsumer consumer;
+
+		RootTask(Find root, MatchConsumer consumer) {
+			this.root = root;
+			this.consumer = consumer;
+		}
+
+		protected void compute() {
+			try {
+				root.search(consumer);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Searches one directory, and forks a task for each of its subdirectories.
+	 */
+	private static final class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Find directory;
+
+		private final MatchConsumer consumer;
+
+		private final int depth;
+
+		DirectoryTask(Find directory, MatchConsumer consumer, int depth) {
+			this.directory = directory;
+			this.consumer = consumer;
+			this.depth = depth;
+		}
+
+		protected void compute() {
+			try {
+				directory.listRecursively(consumer, depth);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Passes matches from many threads on to a consumer, one at a time, and
+	 * optionally only the first time each path is found.
+	 */
+	private static final class SynchronizedConsumer implements MatchConsumer {
+		private final MatchConsumer consumer;
+
+		private final Set<String> seen;
+
+		SynchronizedConsumer(MatchConsumer consumer, boolean distinct) {
+			this.consumer = consumer;
+			seen = distinct ? new HashSet<String>() : null;
+		}
+
+		public synchronized void receive(String path) {
+			if (seen == null || seen.add(path)) {
+				consumer.receive(path);
+			}
+		}
+
+		public synchronized void receive(String path, int depth, FileStat stat) {
+			if (seen == null || seen.add(path)) {
+				consumer.receive(path, depth, stat);
+			}
+		}
 	}
 
 	/**
@@ -595,8 +1857,9 @@ public class Find extends File {
 	 * factor it out of filterFiles, too.
 	 */
 	private boolean test(Find file) {
-		if (fileFilter.accept(null, file.getAbsolutePath())) {
-			if (file.isDirectory()) {
+		FindEntry entry = newEntry(file);
+		if (matchesPattern(file.getAbsolutePath()) && isModifiedSince(entry) && matchesExpression(entry)) {
+			if (entry.isDirectory()) {
 				if (file.collectingDirectories) {
 					return true;
 				}
@@ -626,21 +1889,52 @@ public class Find extends File {
 	 *                 with it.
 	 * @param depth    the current depth we�re at.
 	 */
-	private void listRecursively(StdOutConsumer consumer, int depth) throws IOException {
-		String[] currentFiles = list();
+	private void listRecursively(MatchConsumer consumer, int depth) throws IOException {
+		if (stop.isCancelled()) {
+			unvisited.add(getPath());
+			return;
+		}
+		long listed = profile != null ? System.nanoTime() : 0;
+		String[] currentFiles = listEntries();
 		if (currentFiles == null) { // Empty directory?
 			return;
 		}
-		List descendList = new LinkedList();
-		Iterator files = filterFiles(currentFiles, descendList);
+		long filtered = profile != null ? System.nanoTime() : 0;
+		List<FindEntry> descendList = new LinkedList<FindEntry>();
+		Iterator<FindEntry> files = filterFiles(currentFiles, descendList);
+		long emitted = profile != null ? System.nanoTime() : 0;
+		long emitStats = 0;
+		if (stop.isCancelled()) { // Stopped in the middle of this directory?
+			unvisited.add(getPath());
+			return;
+		}
 
 		/*
 		 * Copy over the current directory's files. This is where we save the matches.
 		 * Do it only if we're up to the minDepth.
 		 */
 		if (depth >= minDepth) {
-			while (files.hasNext()) {
-				consumer.receive(parentPath + files.next());
+			boolean withStat = needsMatchStats();
+			while (files.hasNext() && !stop.isCancelled()) {
+				FindEntry entry = files.next();
+				FileStat stat = null;
+				if (withStat) {
+					long started = profile != null ? System.nanoTime() : 0;
+					try {
+						stat = entry.getStat();
+					} catch (IOException e) {
+						continue; // It has disappeared.
+					} finally {
+						if (profile != null) {
+							emitStats += System.nanoTime() - started;
+						}
+					}
+				}
+				consumer.receive(parentPath + entry.getName(), depth, stat);
+			}
+			if (files.hasNext()) {
+				unvisited.add(getPath());
+				return;
 			}
 		}
 
@@ -648,18 +1942,91 @@ public class Find extends File {
 		 * Iterate through the given list of subdirectories. Only go a level lower if we
 		 * haven't reached the maxDepth. This is the recursive step.
 		 */
+		long descending = profile != null ? System.nanoTime() : 0;
 		if (depth < maxDepth) {
-			Iterator subFinds = descendList.iterator();
+			List<DirectoryTask> tasks = parallel ? new ArrayList<DirectoryTask>() : null;
+			List<Find> timedLater = profile != null ? new ArrayList<Find>() : null;
+			Iterator<FindEntry> subFinds = descendList.iterator();
 			while (subFinds.hasNext()) {
-				Find find = (Find) subFinds.next();
+				FindEntry entry = subFinds.next();
+				Find find = (Find) entry.getFile();
 				// "If we're following, or it's not a symlink..."
-				if (follow || (!find.isSymLink())) {
-					find.listRecursively(consumer, depth + 1);
+				if ((follow || (!entry.isSymLink())) && mayContainMatches(find)) {
+					if (parallel) {
+						tasks.add(new DirectoryTask(find, consumer, depth + 1));
+					} else if (timedLater != null) { // After this one is timed.
+						timedLater.add(find);
+					} else {
+						find.listRecursively(consumer, depth + 1);
+					}
+				}
+			}
+			if (profile != null) {
+				recordProfile(depth - 1, currentFiles.length, listed, filtered, emitted, emitStats, descending);
+			}
+			if (parallel) {
+				ForkJoinTask.invokeAll(tasks);
+			} else if (timedLater != null) {
+				for (int i = 0; i < timedLater.size(); i++) {
+					timedLater.get(i).listRecursively(consumer, depth + 1);
 				}
 			}
+		} else if (profile != null) {
+			recordProfile(depth - 1, currentFiles.length, listed, filtered, emitted, emitStats, descending);
 		}
 	}
 
+	/**
+	 * Record the time this directory took in my profile, apart from its
+	 * subdirectories. The checks of the subdirectories count as filtering, and
+	 * so does fetching the matches' attributes.
+	 * 
+	 * @param listed     when the listing started.
+	 * @param filtered   when the filtering started.
+	 * @param emitted    when passing the matches on started.
+	 * @param emitStats  the part of that spent fetching attributes.
+	 * @param descending when checking the subdirectories started.
+	 */
+	private void recordProfile(int depth, int entries, long listed, long filtered, long emitted, long emitStats,
+			long descending) {
+		long now = System.nanoTime();
+		profile.directoryDone(getPath(), depth, entries, filtered - listed,
+				emitted - filtered + emitStats + now - descending, descending - emitted - emitStats);
+	}
+
+	/**
+	 * List my entries, counting and timing the listing if the search is being
+	 * measured or reports its progress, and recording it as a flight recorder
+	 * event if it's slow.
+	 */
+	private String[] listEntries() {
+		DirectoryListEvent event = FlightRecording.isRecording() ? new DirectoryListEvent() : null;
+		if (event != null) {
+			event.begin();
+		}
+		if (progress != null) {
+			progress.listing(this);
+		}
+		long started = searchMetrics != null ? System.nanoTime() : 0;
+		String[] entries = list();
+		int count = entries == null ? 0 : entries.length;
+		if (searchMetrics != null) {
+			searchMetrics.directoryListed(System.nanoTime() - started, count);
+		}
+		if (progress != null) {
+			progress.listed(count);
+		}
+		if (event != null) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.path = getAbsolutePath();
+				event.entries = count;
+				event.commit();
+			}
+		}
+		return entries;
+	}
+
 	/**
 	 * Given a filename filter and a list of files, create two subsets of the files:
 	 * 1) A list of matching filenames, and 2) A list of subdirectories to recurse
@@ -667,40 +2034,46 @@ public class Find extends File {
 	 * 
 	 * This method has been constructed so that calls to the File object, like
 	 * isDirectory() and isFile() are done at most once per file. And, calls like
-	 * getPath() are done at most once per directory.
+	 * getPath() are done at most once per directory. When there's an expression
+	 * that needs file attributes, they're fetched once, through a FindEntry, and
+	 * the type checks use them too.
 	 * 
-	 * @return a list of files that are matches.
+	 * @return the entries of the files that are matches.
 	 * @param listing     the list of files in the current directory
-	 * @param descendList another return value - this will contain the list of
-	 *                    directories to be descended into. (No, this isn't great
+	 * @param descendList another return value - this will contain the entries of
+	 *                    the directories to be descended into. (No, this isn't great
 	 *                    style. At this level, though, I want to avoid creating
 	 *                    another new object for containing the complex return value
 	 *                    of this function.)
 	 */
-	private Iterator filterFiles(String[] listing, List descendList) {
-		List filesToKeep = new LinkedList();
+	private Iterator<FindEntry> filterFiles(String[] listing, List<FindEntry> descendList) {
+		List<FindEntry> filesToKeep = new LinkedList<FindEntry>();
 
 		// Copy over only the desired files from the full listing.
 		String fileName;
 		Find tempFind;
-		for (int i = 0; i < listing.length; i++) {
+		FindEntry entry;
+		for (int i = 0; i < listing.length && !stop.isCancelled(); i++) {
 			fileName = listing[i];
 			tempFind = new Find(this, fileName);
+			entry = newEntry(tempFind);
 
-			if (tempFind.isDirectory()) {
+			if (entry.isDirectory()) {
 				/*
 				 * Once we know that this is a directory, we tell it to set up its parent path.
 				 */
 				tempFind.setParentPath();
 				if (!excludeList.containsKey(tempFind)) {
-					descendList.add(tempFind);
-					if (collectingDirectories && fileFilter.accept(null, tempFind.getAbsolutePath())) {
-						filesToKeep.add(fileName);
+					descendList.add(entry);
+					if (collectingDirectories && matchesPattern(tempFind.getAbsolutePath())
+							&& isModifiedSince(entry) && matchesExpression(entry)) {
+						filesToKeep.add(entry);
 					}
 				}
 			} else { // Is a plain file.
-				if (collectingFiles && fileFilter.accept(null, tempFind.getAbsolutePath())) {
-					filesToKeep.add(fileName);
+				if (collectingFiles && matchesPattern(tempFind.getAbsolutePath()) && isModifiedSince(entry)
+						&& matchesExpression(entry)) {
+					filesToKeep.add(entry);
 				}
 			}
 
@@ -708,6 +2081,73 @@ public class Find extends File {
 		return filesToKeep.iterator();
 	}
 
+	/**
+	 * Return true unless my pattern rules out every entry under the given
+	 * directory.
+	 */
+	private boolean mayContainMatches(Find dir) {
+		return pruner == null || pruner.mayContainMatches(dir.getAbsolutePath());
+	}
+
+	/**
+	 * Return a FindEntry for looking at the given file during this search.
+	 */
+	private FindEntry newEntry(File file) {
+		boolean preferStat = (expression != null && expression.needsStat()) || needsMatchStats();
+		return new FindEntry(file, follow, preferStat, searchStarted, searchMetrics);
+	}
+
+	/**
+	 * Return true if the given path matches my regex, timing it if the search
+	 * is being measured or profiled.
+	 */
+	private boolean matchesPattern(String absolutePath) {
+		if (searchMetrics == null && profile == null) {
+			return fileFilter.accept(null, absolutePath);
+		}
+		long started = System.nanoTime();
+		boolean matches = fileFilter.accept(null, absolutePath);
+		long nanos = System.nanoTime() - started;
+		if (searchMetrics != null) {
+			searchMetrics.regexEvaluated(nanos);
+		}
+		if (profile != null) {
+			profile.matched(nanos);
+		}
+		return matches;
+	}
+
+	/**
+	 * Return true if the matches' attributes are needed, for my output format
+	 * or to sort them.
+	 */
+	private boolean needsMatchStats() {
+		return (stdOut && printf != null && printf.needsStat())
+				|| (sortKey != NO_SORT && ExternalSort.needsStat(sortKey)) || matchStats;
+	}
+
+	/**
+	 * Return the most matches to pass on.
+	 */
+	private int getOutputLimit() {
+		return firstMatch ? 1 : maxResults;
+	}
+
+	/**
+	 * Return true if the given entry passes the modifiedSince option. The file
+	 * is only stat'ed if the option is set.
+	 */
+	private boolean isModifiedSince(FindEntry entry) {
+		return modifiedSince == NO_TIME || entry.lastModified() > modifiedSince;
+	}
+
+	/**
+	 * Return true if the given entry matches my expression, if I have one.
+	 */
+	private boolean matchesExpression(FindEntry entry) {
+		return expression == null || expression.matches(entry);
+	}
+
 	/**
 	 * Set up my parentPath variable correctly. This works, but I think that the
 	 * logic is redundant.
@@ -725,6 +2165,17 @@ public class Find extends File {
 		return getPath() + File.separator;
 	}
 
+	/**
+	 * Return the timer that runs search deadlines, creating it the first time.
+	 * Its thread is a daemon, so it doesn't keep the JVM alive.
+	 */
+	private static synchronized Timer getDeadlineTimer() {
+		if (deadlineTimer == null) {
+			deadlineTimer = new Timer("javafind-deadlines", true);
+		}
+		return deadlineTimer;
+	}
+
 	/**
 	 * Provide debugging output if the debug property has been set (to anything).
 	 */
@@ -733,36 +2184,369 @@ public class Find extends File {
 			System.out.println("debug in JavaFind: " + s);
 	}
 
+	/**
+	 * A consumer that passes on matches until the result limit is reached, and
+	 * then stops the search.
+	 */
+	private static final class Limiter implements MatchConsumer {
+		private final MatchConsumer consumer;
+
+		private final int limit;
+
+		private final CancellationToken stop;
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		Limiter(MatchConsumer consumer, int limit, CancellationToken stop) {
+			this.consumer = consumer;
+			this.limit = limit;
+			this.stop = stop;
+		}
+
+		public void receive(String s) {
+			int n = admit();
+			if (n != 0) {
+				consumer.receive(s);
+				checkLimit(n);
+			}
+		}
+
+		public void receive(String s, int depth, FileStat stat) {
+			int n = admit();
+			if (n != 0) {
+				consumer.receive(s, depth, stat);
+				checkLimit(n);
+			}
+		}
+
+		int getCount() {
+			return count.get();
+		}
+
+		/**
+		 * Count a match, and return its number, or 0 if it's over the limit. It
+		 * can be called from several threads at once.
+		 */
+		private int admit() {
+			while (true) {
+				int n = count.get();
+				if (n >= limit) {
+					return 0;
+				}
+				if (count.compareAndSet(n, n + 1)) {
+					return n + 1;
+				}
+			}
+		}
+
+		private void checkLimit(int n) {
+			if (n == limit) {
+				stop.cancel();
+			}
+		}
+	}
+
+	/**
+	 * A consumer that prints matches to standard output: just the names, or in
+	 * the printf format of the find it was made for. It reuses one record and
+	 * one buffer for all the matches.
+	 */
+	private static final class Printer implements MatchConsumer {
+		private final LineWriter out;
+
+		private final byte terminator;
+
+		private final PrintfFormat format;
+
+		private final boolean follow;
+
+		private final PrintfFormat.Record record = new PrintfFormat.Record();
+
+		private final PrintfFormat.Buffer buffer = new PrintfFormat.Buffer();
+
+		/*
+		 * Set if the search has several starting points, to tell which one a
+		 * match is under.
+		 */
+		private final Find multiRoot;
+
+		private final Find find;
+
+		Printer(Find find, LineWriter out) {
+			this.find = find;
+			this.out = out;
+			terminator = find.print0 ? 0 : (byte) '\n';
+			format = find.printf;
+			follow = find.follow;
+			multiRoot = find.rootPaths != null ? find : null;
+			record.startPoint = find.displayPathOf(find.getPath());
+		}
+
+		/**
+		 * Print a match whose attributes weren't passed along. They're fetched
+		 * here if the format needs them.
+		 */
+		public void receive(String path) {
+			if (format == null) {
+				out.write(find.displayPathOf(path), terminator);
+				return;
+			}
+			FileStat stat = null;
+			if (format.needsStat()) {
+				try {
+					stat = SystemPack.getOSInfo().stat(new File(path), follow);
+				} catch (IOException e) {
+					return; // It has disappeared.
+				}
+			}
+			String startPoint = multiRoot != null ? multiRoot.startPointOf(path) : record.startPoint;
+			receive(path, depthOf(find.displayPathOf(path), startPoint), stat);
+		}
+
+		public void receive(String path, int depth, FileStat stat) {
+			if (format == null) {
+				out.write(find.displayPathOf(path), terminator);
+				return;
+			}
+			if (multiRoot != null) {
+				record.startPoint = multiRoot.startPointOf(path);
+			}
+			record.file = path;
+			record.path = find.displayPathOf(path);
+			record.depth = depth;
+			record.stat = stat;
+			buffer.length = 0;
+			format.format(record, buffer);
+			out.write(buffer.bytes, 0, buffer.length);
+		}
+	}
+
 	/**
 	 * Handles execution when used from the command line. This is a wimpy main(),
 	 * and could be improved with a getargs type of package.
 	 */
 	public static void main(String[] args) throws IOException {
-		if (args.length > 2) {
-			System.out.println("Usage: Find [pathname [regex]]");
-			return;
+		int status = run(args, null, null, System.out, System.err, null, null);
+		if (status != 0) {
+			System.exit(status);
 		}
+	}
+
+	/**
+	 * Run a command line. This is main(), for callers that aren't in the
+	 * client's process, like FindDaemon.
+	 * 
+	 * @param directory   the client's working directory, which relative paths
+	 *                    are resolved against, or null for mine.
+	 * @param environment the client's environment, which -exec commands run
+	 *                    with, or null for mine.
+	 * @param writer      where to print the matches, or null for standard
+	 *                    output.
+	 * @param token       stops the search when cancelled. May be null.
+	 * @return the exit status: 0, or 1 if the command line had an error or a
+	 *         batch of -exec failed.
+	 */
+	static int run(String[] args, File directory, Map<String, String> environment, PrintStream out, PrintStream err,
+			LineWriter writer, CancellationToken token) throws IOException {
 		String path = ".";
-		if (args.length >= 1) { // Path specified?
-			path = args[0];
+		String regex = null;
+		int i = 0;
+		if (i < args.length && !isExpressionStart(args[i])) { // Path specified?
+			path = args[i++];
+		}
+		if (i < args.length && !isExpressionStart(args[i])) { // Pattern specified?
+			regex = args[i++];
+		}
+		Find find;
+		if (directory != null && !new File(path).isAbsolute()) {
+			find = new Find(new File(directory, path).getPath());
+			find.setDisplayPath(path);
+		} else {
+			find = new Find(path);
 		}
-		Find find = new Find(path);
 		find.setStdOut(true); // Give us output on stdout.
+		find.setWriter(writer);
+		find.setCancellationToken(token);
+		boolean explain = false;
+		FindProfile profile = null;
+
+		while (args.length > i) { // Actions at the end of the expression?
+			String action = args[args.length - 1];
+			int execStart = execStart(args, i);
+			if (execStart != -1) { // Run a command on the matches
+				boolean batch = action.equals("+");
+				String[] command = Arrays.copyOfRange(args, execStart + 1, args.length - 1);
+				try {
+					find.setExec(new ExecAction(command, batch));
+				} catch (IllegalArgumentException e) {
+					err.println("Error:  " + e.getMessage());
+					return 1;
+				}
+				if (directory != null) { // The commands are the client's, too.
+					find.getExec().setDirectory(directory);
+					find.getExec().setOutput(out, err);
+				}
+				if (environment != null) {
+					find.getExec().setEnvironment(environment);
+				}
+				args = Arrays.copyOf(args, execStart);
+				continue;
+			} else if (args.length - 2 >= i
+					&& (args[args.length - 2].equals("-grep") || args[args.length - 2].equals("-fgrep"))) { // Search contents
+				ContentSearch search;
+				try {
+					if (args[args.length - 2].equals("-fgrep")) {
+						search = ContentSearch.forString(action);
+					} else {
+						try {
+							search = ContentSearch.forRegex(action);
+						} catch (MalformedPerl5PatternException e) { // The slashes are optional, as for the pattern.
+							search = ContentSearch.forRegex("/" + action + "/");
+						}
+					}
+				} catch (MalformedPerl5PatternException e) {
+					err.print(BAD_PATTERN_MESSAGE);
+					return 1;
+				} catch (IllegalArgumentException e) {
+					err.println("Error:  " + e.getMessage());
+					return 1;
+				}
+				final Find grepping = find;
+				final LineWriter lines = writer != null ? writer : LineWriter.getStdOut();
+				search.setConsumer(new ContentConsumer() {
+					public void receive(String path, int line, long offset, String text) {
+						lines.receive(grepping.displayPathOf(path) + ":" + line + ":" + text);
+					}
+				}); // Like grep -n.
+				find.setContentSearch(search);
+				args = Arrays.copyOf(args, args.length - 1);
+			} else if (action.equals("-quit")) { // Stop at the first match
+				find.setFirstMatch(true);
+			} else if (args.length - 2 >= i && args[args.length - 2].equals("-top")) { // The first matches only
+				try {
+					find.setMaxResults(Integer.parseInt(action));
+				} catch (NumberFormatException e) {
+					err.println("Error:  -top needs a number");
+					return 1;
+				}
+				args = Arrays.copyOf(args, args.length - 1);
+			} else if (action.equals("-print0")) { // NUL-terminated output
+				find.setPrint0(true);
+			} else if (action.equals("-explain")) { // How it would be run, instead of running it
+				explain = true;
+			} else if (action.equals("-profile")) { // Where the time went, afterwards
+				profile = new FindProfile();
+				find.setProfile(profile);
+			} else if (args.length - 2 >= i && args[args.length - 2].equals("-printf")) { // Formatted output
+				try {
+					find.setPrintf(action);
+				} catch (IllegalArgumentException e) {
+					err.println("Error:  " + e.getMessage());
+					return 1;
+				}
+				args = Arrays.copyOf(args, args.length - 1);
+			} else if (args.length - 2 >= i
+					&& (args[args.length - 2].equals("-sort") || args[args.length - 2].equals("-rsort"))) { // Sorted output
+				try {
+					find.setSortBy(action);
+				} catch (IllegalArgumentException e) {
+					err.println("Error:  " + e.getMessage());
+					return 1;
+				}
+				find.setSortReverse(args[args.length - 2].equals("-rsort"));
+				args = Arrays.copyOf(args, args.length - 1);
+			} else {
+				break;
+			}
+			args = Arrays.copyOf(args, args.length - 1);
+		}
+		if (i < args.length) { // Expression specified?
+			String[] expression = new String[args.length - i];
+			System.arraycopy(args, i, expression, 0, expression.length);
+			if (directory != null) { // Reference files are the client's, too.
+				for (int j = 0; j < expression.length - 1; j++) {
+					if (expression[j].equals("-newer") && !new File(expression[j + 1]).isAbsolute()) {
+						expression[j + 1] = new File(directory, expression[j + 1]).getPath();
+					}
+				}
+			}
+			try {
+				find.setExpression(FindExpression.parse(expression));
+			} catch (IllegalArgumentException e) {
+				err.println("Error:  " + e.getMessage());
+				out.println(USAGE);
+				return 1;
+			}
+		}
 
-		if (args.length == 2) { // Pattern specified?
-			find.setPattern(args[1]);
+		if (regex != null) {
+			find.setPattern(regex);
+		}
+		if (explain) {
+			try {
+				try {
+					find.compilePattern();
+				} catch (MalformedPerl5PatternException e) {
+					find.setPattern("/" + regex + "/");
+					find.compilePattern();
+				}
+				out.print(find.explain());
+			} catch (MalformedPerl5PatternException e) {
+				err.print(BAD_PATTERN_MESSAGE);
+				return 1;
+			} catch (IOException e) {
+				err.println("Error:  " + e.getMessage());
+				return 1;
+			}
+			return 0;
 		}
 		try {
-			find.listRecursively();
-		} catch (MalformedPerl5PatternException e) {
 			try {
-				find.setPattern("/" + args[1] + "/");
-				find.listRecursively();
-			} catch (MalformedPerl5PatternException e2) {
-				System.err.print(BAD_PATTERN_MESSAGE);
-				return;
+				find.search();
+			} catch (MalformedPerl5PatternException e) {
+				find.setPattern("/" + regex + "/");
+				find.search();
 			}
+		} catch (MalformedPerl5PatternException e) {
+			err.print(BAD_PATTERN_MESSAGE);
+			return 1;
+		} catch (IOException e) {
+			err.println("Error:  " + e.getMessage());
+			return 1;
+		}
+		if (profile != null) {
+			err.print(profile.report(10));
+		}
+		ExecAction exec = find.getExec();
+		return exec != null && exec.isBatch() && exec.getFailures() > 0 ? 1 : 0;
+	}
+
+	/**
+	 * Return the index of the -exec that the command line ends with, as in
+	 * <code>-exec cmd {} ;</code> or <code>-exec cmd {} +</code>, or -1 if it
+	 * doesn't. Nothing before the given index is part of the expression.
+	 */
+	private static int execStart(String[] args, int expressionStart) {
+		String last = args[args.length - 1];
+		boolean batch = last.equals("+") && args.length - 2 >= expressionStart
+				&& args[args.length - 2].equals(ExecAction.PLACEHOLDER);
+		if (!last.equals(";") && !batch) {
+			return -1;
 		}
+		for (int j = args.length - 2; j >= expressionStart; j--) {
+			if (args[j].equals("-exec")) {
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return true if the given command line argument begins a GNU find style
+	 * expression rather than being a path or regex.
+	 */
+	private static boolean isExpressionStart(String arg) {
+		return (arg.startsWith("-") && arg.length() > 1) || arg.equals("(") || arg.equals("!");
 	}
 
 }
@@ -0,0 +1,118 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The javafind command line, run by FindDaemon if one is running. It takes the
+ * same arguments as Find, and prints the same output, but starts much faster:
+ * it only passes its arguments, working directory and environment to the
+ * daemon and copies back what the daemon sends, without loading the rest of
+ * javafind. The environment is the one that -exec commands run with.
+ * <p>
+ *
+ * If no daemon is listening, the search is run in this process, by Find.main().
+ * So it is if the socket belongs to someone else, since they'd see the
+ * arguments and working directory, and choose the output.
+ *
+ * @see FindDaemon
+ */
+public final class FindClient {
+
+	private FindClient() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		UnixDomainSocketAddress address = DaemonProtocol.getAddress();
+		SocketChannel daemon;
+		try {
+			if (!DaemonProtocol.isMine(address.getPath())) {
+				System.err.println("Warning:  " + address.getPath() + " belongs to someone else; not using it.");
+				Find.main(args);
+				return;
+			}
+			daemon = SocketChannel.open(StandardProtocolFamily.UNIX);
+			daemon.connect(address);
+		} catch (IOException e) {
+			Find.main(args);
+			return;
+		}
+
+		DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(daemon)));
+		try {
+			DaemonProtocol.writeRequest(request, System.getProperty("user.dir"), args, System.getenv());
+		} catch (IOException e) {
+			daemon.close();
+			Find.main(args);
+			return;
+		}
+		System.exit(copyReply(new DataInputStream(new BufferedInputStream(Channels.newInputStream(daemon)))));
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Copy the daemon's output to mine, and return the exit status.
+	 */
+	private static int copyReply(DataInputStream in) throws IOException {
+		OutputStream stdOut = new FileOutputStream(FileDescriptor.out);
+		OutputStream stdErr = new FileOutputStream(FileDescriptor.err);
+		byte[] buffer = new byte[64 * 1024];
+		try {
+			while (true) {
+				byte type = in.readByte();
+				int length = in.readInt();
+				if (length > buffer.length) {
+					buffer = new byte[length];
+				}
+				in.readFully(buffer, 0, length);
+				if (type == DaemonProtocol.STDOUT) {
+					stdOut.write(buffer, 0, length);
+				} else if (type == DaemonProtocol.STDERR) {
+					stdErr.write(buffer, 0, length);
+				} else if (type == DaemonProtocol.EXIT && length == 4) {
+					return ((buffer[0] & 0xff) << 24) | ((buffer[1] & 0xff) << 16) | ((buffer[2] & 0xff) << 8)
+							| (buffer[3] & 0xff);
+				}
+			}
+		} catch (EOFException e) {
+			stdErr.write("Error:  the javafind daemon closed the connection.\n".getBytes());
+			return 2;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.greenfabric.system.CancellationToken;
+import com.greenfabric.system.LineWriter;
+
+/**
+ * Runs javafind command lines for FindClient, in a JVM that stays up. Starting
+ * a JVM, loading the classes and compiling the hot code take much longer than
+ * most searches; a daemon pays for that once. Searches also get faster the
+ * longer it runs: the JIT has compiled the traversal, the regex cache has the
+ * usual patterns, and GnuLauncher has already found out what find(1) and
+ * perl can do.
+ * <p>
+ *
+ * The daemon listens on a Unix domain socket, given by the
+ * <b>javafind.socket</b> system property, or else <code>javafind.sock</code>
+ * in $XDG_RUNTIME_DIR, or in <code>javafind-</code><i>user</i> in the temp
+ * directory. The socket's directory must belong to the user and be usable
+ * only by them, mode 700; the default one in the temp directory is created
+ * that way. So only the user can connect to the socket. Each client gets its own thread, so
+ * searches run at the same time. A search sees the client's working directory,
+ * and the client prints the output and exits with the status, just as if it
+ * had run the search itself. If the client goes away, e.g. because it was
+ * interrupted, its search is cancelled.
+ *
+ * <pre>
+ * java com.greenfabric.find.FindDaemon &amp;
+ * java com.greenfabric.find.FindClient src /\.java$/
+ * </pre>
+ *
+ * @see FindClient
+ */
+public final class FindDaemon {
+
+	private final UnixDomainSocketAddress address;
+
+	private final ExecutorService connections = Executors.newCachedThreadPool(new ThreadFactory() {
+		private int count = 0;
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "javafind-daemon-" + (++count));
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/**
+	 * Constructs a new FindDaemon that will listen at the given address.
+	 */
+	public FindDaemon(UnixDomainSocketAddress address) {
+		this.address = address;
+	}
+
+	public static void main(String[] args) throws IOException {
+		new FindDaemon(DaemonProtocol.getAddress()).serve();
+	}
+
+	/**
+	 * Listen for clients until the JVM exits. The socket file is removed then.
+	 *
+	 * @exception IOException if the socket can't be made, e.g. because another
+	 *                        daemon is listening on it, or its directory can
+	 *                        be used by others.
+	 */
+	public void serve() throws IOException {
+		final Path path = address.getPath();
+		DaemonProtocol.makePrivateDirectory(path);
+		removeStaleSocket(path);
+		ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(address);
+		Runtime.getRuntime().addShutdownHook(new Thread("javafind-daemon-exit") {
+			public void run() {
+				try {
+					Files.deleteIfExists(path);
+				} catch (IOException e) {
+					// Nothing more to do.
+				}
+			}
+		});
+
+		while (true) {
+			final SocketChannel client = server.accept();
+			connections.execute(new Runnable() {
+				public void run() {
+					serve(client);
+				}
+			});
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Delete a socket file left behind by a daemon that didn't exit cleanly.
+	 * One that a daemon still answers on is left alone.
+	 */
+	private void removeStaleSocket(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		boolean answered;
+		try {
+			SocketChannel probe = SocketChannel.open(address);
+			probe.close();
+			answered = true;
+		} catch (IOException e) {
+			answered = false;
+		}
+		if (answered) {
+			throw new IOException("A daemon is already listening on " + path);
+		}
+		Files.delete(path);
+	}
+
+	/**
+	 * Run one client's request, and close the connection.
+	 */
+	private void serve(final SocketChannel client) {
+		final CancellationToken token = new CancellationToken();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+		try {
+			DaemonProtocol.Request request = DaemonProtocol.readRequest(
+					new DataInputStream(new BufferedInputStream(Channels.newInputStream(client))));
+
+			watchForHangup(client, token);
+			DaemonProtocol.FrameChannel stdOut = new DaemonProtocol.FrameChannel(out, DaemonProtocol.STDOUT, token);
+			PrintStream stdErr = new PrintStream(new DaemonProtocol.FrameChannel(out, DaemonProtocol.STDERR, token),
+					true);
+			LineWriter writer = new LineWriter(stdOut, LineWriter.DEFAULT_BUFFER_SIZE, Charset.defaultCharset());
+			PrintStream usage = new PrintStream(stdOut, true);
+			int status;
+			try {
+				status = Find.run(request.args, new File(request.directory), request.environment, usage, stdErr,
+						writer, token);
+			} catch (IOException e) {
+				stdErr.println("Error:  " + e.getMessage());
+				status = 2;
+			} catch (RuntimeException e) {
+				stdErr.println("Error:  " + e);
+				status = 2;
+			}
+			writer.flush();
+			DaemonProtocol.writeExit(out, status);
+		} catch (IOException e) {
+			// The client went away, or isn't a client.
+		} finally {
+			token.cancel();
+			try {
+				client.close();
+			} catch (IOException e) {
+				// Nothing more to do.
+			}
+		}
+	}
+
+	/**
+	 * Cancel the given token if the client closes its end of the connection.
+	 * It sends nothing after its request, so a read returns only then, or
+	 * when the connection is closed here.
+	 */
+	private void watchForHangup(final SocketChannel client, final CancellationToken token) {
+		connections.execute(new Runnable() {
+			public void run() {
+				try {
+					while (client.read(ByteBuffer.allocate(1)) >= 0 && !token.isCancelled()) {
+						// Ignore anything extra.
+					}
+				} catch (IOException e) {
+					// Closed here, or gone.
+				}
+				token.cancel();
+			}
+		});
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.greenfabric.system.FileStat;
+import com.greenfabric.system.SystemPack;
+
+/**
+ * A file being looked at during a search. Its purpose is to make sure that
+ * the OS is asked for a file's attributes at most once, no matter how many
+ * tests need them: the FileStat is fetched the first time it's needed and
+ * kept. It's meant to be used only from within this package.
+ * <p>
+ *
+ * When no test needs the full attributes, the type checks fall back to the
+ * cheaper java.io.File methods, so a plain name search costs no more than it
+ * used to.
+ */
+final class FindEntry {
+
+	private final File file;
+
+	private final boolean follow;
+
+	private final boolean preferStat;
+
+	private final long now;
+
+	private final FindMetrics metrics;
+
+	private FileStat stat;
+
+	private IOException statFailure;
+
+	/**
+	 * @param follow     whether to describe the target of a symbolic link
+	 *                   rather than the link.
+	 * @param preferStat if true, the full attributes are fetched even for the
+	 *                   type checks, because some test is going to need them
+	 *                   anyway.
+	 * @param now        the time the search started. Age tests like -mtime are
+	 *                   measured from here.
+	 * @param metrics    where the trips to the OS are counted, or null.
+	 */
+	FindEntry(File file, boolean follow, boolean preferStat, long now, FindMetrics metrics) {
+		this.file = file;
+		this.follow = follow;
+		this.preferStat = preferStat;
+		this.now = now;
+		this.metrics = metrics;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	String getName() {
+		return file.getName();
+	}
+
+	long getNow() {
+		return now;
+	}
+
+	/**
+	 * Return the attributes of the file, fetching them on the first call.
+	 *
+	 * @exception IOException if the file has disappeared or can't be stat'ed.
+	 *                        The failure is remembered too, so it's only tried
+	 *                        once.
+	 */
+	FileStat getStat() throws IOException {
+		if (stat == null) {
+			if (statFailure != null) {
+				throw statFailure;
+			}
+			countStat();
+			try {
+				stat = SystemPack.getOSInfo().stat(file, follow);
+			} catch (IOException e) {
+				statFailure = e;
+				throw e;
+			}
+		}
+		return stat;
+	}
+
+	/**
+	 * Return true if the file is a directory, following symbolic links like
+	 * java.io.File does.
+	 */
+	boolean isDirectory() {
+		if (preferStat || stat != null) {
+			try {
+				FileStat s = getStat();
+				if (!s.isSymLink()) {
+					return s.isDirectory();
+				}
+			} catch (IOException e) {
+				return false;
+			}
+		}
+		countStat();
+		return file.isDirectory();
+	}
+
+	/**
+	 * Return true if the file is a symbolic link. The attributes answer this
+	 * for free when they were fetched without following links; otherwise the
+	 * OS adapter has to check.
+	 */
+	boolean isSymLink() throws IOException {
+		if (!follow && (preferStat || stat != null)) {
+			return getStat().isSymLink();
+		}
+		countStat();
+		return SystemPack.getOSInfo().isSymLink(file);
+	}
+
+	/**
+	 * Return the modification time, from the attributes if they've been
+	 * fetched.
+	 */
+	long lastModified() {
+		if (preferStat || stat != null) {
+			try {
+				return getStat().getLastModified();
+			} catch (IOException e) {
+				return 0;
+			}
+		}
+		countStat();
+		return file.lastModified();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void countStat() {
+		if (metrics != null) {
+			metrics.statIssued();
+		}
+	}
+}
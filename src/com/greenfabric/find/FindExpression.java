@@ -0,0 +1,324 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.greenfabric.system.SystemPack;
+
+/**
+ * A GNU find style expression, for filtering on more than a Find's regex and
+ * file type options. The supported tests are:
+ *
+ * <pre>
+ *   -name GLOB     -iname GLOB     -type [bcdpfls]
+ *   -size [+-]N[cwbkMG]            -empty
+ *   -mtime [+-]N   -mmin [+-]N     -newer FILE
+ *   -perm [-/]MODE                 -user NAME|UID
+ * </pre>
+ *
+ * and they can be combined with <b>-and</b> (or <b>-a</b>, or nothing at
+ * all), <b>-or</b> (or <b>-o</b>), <b>-not</b> (or <b>!</b>) and parentheses,
+ * with the usual precedence. The tests mean what they mean to GNU find; for
+ * example, sizes are rounded up to whole units, and ages are measured in whole
+ * days or minutes back from the start of the search.
+ * <p>
+ *
+ * An expression is compiled once, into a tree of predicates. Within each -and
+ * and -or, the cheap tests on the name are evaluated before the tests that
+ * need the file's attributes, and the attributes are fetched at most once per
+ * file, however many tests use them. The same expression is translated into
+ * arguments for find(1) when the native engine is used.
+ *
+ * <pre>
+ * Find find = new Find(&quot;/var/log&quot;);
+ * find.setExpression(&quot;-name '*.log' -size +10M ( -mtime +7 -or -user root )&quot;);
+ * </pre>
+ *
+ * Expressions are immutable, so one can be shared by any number of Finds.
+ *
+ * @see Find#setExpression(String)
+ */
+public final class FindExpression {
+
+	private final Predicate root;
+
+	private final boolean needsStat;
+
+	private FindExpression(Predicate root) {
+		this.root = root.optimize();
+		this.needsStat = this.root.needsStat();
+	}
+
+	/**
+	 * Compile an expression given as a single string. Words are separated by
+	 * white space, and can be quoted with single or double quotes, e.g. to keep
+	 * a glob containing a space together.
+	 *
+	 * @exception IllegalArgumentException if the expression isn't valid.
+	 */
+	public static FindExpression parse(String expression) throws IllegalArgumentException {
+		return parse(split(expression));
+	}
+
+	/**
+	 * Compile an expression that has already been split into words, like the
+	 * arguments of a command line.
+	 *
+	 * @exception IllegalArgumentException if the expression isn't valid.
+	 */
+	public static FindExpression parse(String[] args) throws IllegalArgumentException {
+		if (args.length == 0) {
+			throw new IllegalArgumentException("Empty expression");
+		}
+		Parser parser = new Parser(args);
+		Predicate p = parser.parseOr();
+		if (parser.pos < args.length) {
+			throw new IllegalArgumentException("Unexpected '" + args[parser.pos] + "' in expression");
+		}
+		return new FindExpression(p);
+	}
+
+	/**
+	 * Return the expression as GNU find arguments, with the tests in the order
+	 * they'll be evaluated.
+	 */
+	public String[] toNativeArguments() {
+		List<String> args = new ArrayList<String>();
+		root.appendNative(args);
+		return args.toArray(new String[args.size()]);
+	}
+
+	public String toString() {
+		return root.toString();
+	}
+
+	/*
+	 * PACKAGE METHODS
+	 */
+
+	boolean matches(FindEntry entry) {
+		return root.test(entry);
+	}
+
+	/**
+	 * Return true if evaluating this expression will need the attributes of
+	 * (some) files. If so, the traversal fetches them up front and uses them for
+	 * its own type checks too.
+	 */
+	boolean needsStat() {
+		return needsStat;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Split a string into words, the way a shell would for simple cases.
+	 */
+	private static String[] split(String s) {
+		List<String> words = new ArrayList<String>();
+		StringBuffer word = null;
+		char quote = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				} else {
+					word.append(c);
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+				if (word == null)
+					word = new StringBuffer();
+			} else if (Character.isWhitespace(c)) {
+				if (word != null) {
+					words.add(word.toString());
+					word = null;
+				}
+			} else {
+				if (word == null)
+					word = new StringBuffer();
+				word.append(c);
+			}
+		}
+		if (quote != 0) {
+			throw new IllegalArgumentException("Unterminated quote in expression");
+		}
+		if (word != null) {
+			words.add(word.toString());
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	/**
+	 * A recursive descent parser. -or binds loosest, then -and (which is also
+	 * implied between two tests), then -not.
+	 */
+	private static final class Parser {
+		private final String[] args;
+
+		private int pos = 0;
+
+		Parser(String[] args) {
+			this.args = args;
+		}
+
+		Predicate parseOr() {
+			List<Predicate> operands = new ArrayList<Predicate>();
+			operands.add(parseAnd());
+			while (peekIs("-o") || peekIs("-or")) {
+				pos++;
+				operands.add(parseAnd());
+			}
+			if (operands.size() == 1)
+				return operands.get(0);
+			return new Predicate.Or(operands.toArray(new Predicate[operands.size()]));
+		}
+
+		Predicate parseAnd() {
+			List<Predicate> operands = new ArrayList<Predicate>();
+			operands.add(parseNot());
+			while (pos < args.length && !peekIs("-o") && !peekIs("-or") && !peekIs(")")) {
+				if (peekIs("-a") || peekIs("-and"))
+					pos++;
+				operands.add(parseNot());
+			}
+			if (operands.size() == 1)
+				return operands.get(0);
+			return new Predicate.And(operands.toArray(new Predicate[operands.size()]));
+		}
+
+		Predicate parseNot() {
+			if (peekIs("!") || peekIs("-not")) {
+				pos++;
+				return new Predicate.Not(parseNot());
+			}
+			if (peekIs("(")) {
+				pos++;
+				Predicate p = parseOr();
+				if (!peekIs(")"))
+					throw new IllegalArgumentException("Missing ')' in expression");
+				pos++;
+				return p;
+			}
+			return parseTest();
+		}
+
+		Predicate parseTest() {
+			if (pos >= args.length)
+				throw new IllegalArgumentException("Expected a test at the end of the expression");
+			String option = args[pos++];
+			if (option.equals("-empty"))
+				return new Predicate.Empty();
+
+			if (pos >= args.length)
+				throw new IllegalArgumentException("Missing argument to " + option);
+			String arg = args[pos++];
+			if (option.equals("-name"))
+				return new Predicate.Name(arg, false);
+			if (option.equals("-iname"))
+				return new Predicate.Name(arg, true);
+			if (option.equals("-type")) {
+				if (arg.length() != 1)
+					throw new IllegalArgumentException("Unknown argument to -type: " + arg);
+				return new Predicate.Type(arg.charAt(0));
+			}
+			if (option.equals("-size"))
+				return parseSize(arg);
+			if (option.equals("-mtime"))
+				return new Predicate.Age(option, comparison(option, arg), 24L * 60 * 60 * 1000);
+			if (option.equals("-mmin"))
+				return new Predicate.Age(option, comparison(option, arg), 60L * 1000);
+			if (option.equals("-newer"))
+				return new Predicate.Newer(referenceTime(arg));
+			if (option.equals("-perm"))
+				return new Predicate.Perm(arg);
+			if (option.equals("-user"))
+				return new Predicate.User(arg);
+			throw new IllegalArgumentException("Unknown test '" + option + "' in expression");
+		}
+
+		private Predicate parseSize(String arg) {
+			long unit = 512;
+			String number = arg;
+			char last = arg.length() == 0 ? ' ' : arg.charAt(arg.length() - 1);
+			if (!Character.isDigit(last)) {
+				number = arg.substring(0, arg.length() - 1);
+				switch (last) {
+				case 'c':
+					unit = 1;
+					break;
+				case 'w':
+					unit = 2;
+					break;
+				case 'b':
+					unit = 512;
+					break;
+				case 'k':
+					unit = 1024;
+					break;
+				case 'M':
+					unit = 1024 * 1024;
+					break;
+				case 'G':
+					unit = 1024 * 1024 * 1024;
+					break;
+				default:
+					throw new IllegalArgumentException("Invalid -size unit: " + arg);
+				}
+			}
+			Predicate.Comparison c = comparison("-size", number);
+			return new Predicate.Size(new Predicate.Comparison(arg, c.value), unit);
+		}
+
+		private Predicate.Comparison comparison(String option, String arg) {
+			String digits = arg.startsWith("+") || arg.startsWith("-") ? arg.substring(1) : arg;
+			try {
+				long value = Long.parseLong(digits);
+				if (value < 0)
+					throw new NumberFormatException();
+				return new Predicate.Comparison(arg, value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid argument to " + option + ": " + arg);
+			}
+		}
+
+		private long referenceTime(String reference) {
+			try {
+				return SystemPack.getOSInfo().stat(new File(reference), true).getLastModified();
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Can't stat the -newer reference file " + reference);
+			}
+		}
+
+		private boolean peekIs(String s) {
+			return pos < args.length && args[pos].equals(s);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what searches do: directories listed, entries seen, attributes
+ * fetched, regexes run, matches found, and find(1) processes run, with the
+ * time they took and the output read from them. How long directory listings
+ * and pattern matches take is kept in histograms.
+ * <p>
+ *
+ * A search is only measured if it's been given a FindMetrics to count into,
+ * with Find.setMetrics(), or metrics are enabled for all searches, by
+ * setEnabled() or the <b>javafind.metrics</b> system property. Each search
+ * counts into a FindMetrics of its own, which is added to the one it was
+ * given, and to the totals if metrics are enabled, when it's done. The
+ * totals, and the last search's counts, are registered as platform MXBeans,
+ * to be seen in e.g. JConsole. A search that isn't measured only checks for
+ * a null, once per directory and per match.
+ * <p>
+ *
+ * The counters are LongAdders, so that the threads of a parallel search
+ * don't contend for them.
+ *
+ * <pre>
+ * FindMetrics metrics = new FindMetrics();
+ * find.setMetrics(metrics);
+ * find.search();
+ * log(metrics.getDirectoriesListed(), metrics.getListLatency99thNanos());
+ * </pre>
+ *
+ * @see FindMetricsMXBean
+ */
+public final class FindMetrics implements FindMetricsMXBean {
+
+	private static volatile boolean enabled = Boolean.getBoolean("javafind.metrics");
+
+	private static boolean registered = false;
+
+	private static final FindMetrics total = new FindMetrics();
+
+	private static final FindMetrics lastSearch = new FindMetrics();
+
+	private final LongAdder searches = new LongAdder();
+
+	private final LongAdder directoriesListed = new LongAdder();
+
+	private final LongAdder entriesSeen = new LongAdder();
+
+	private final LongAdder stats = new LongAdder();
+
+	private final LongAdder regexEvaluations = new LongAdder();
+
+	private final LongAdder matches = new LongAdder();
+
+	private final LongAdder nativeProcesses = new LongAdder();
+
+	private final LongAdder nativeNanos = new LongAdder();
+
+	private final LongAdder pipeBytes = new LongAdder();
+
+	private final LatencyHistogram listLatency = new LatencyHistogram();
+
+	private final LatencyHistogram matchLatency = new LatencyHistogram();
+
+	/**
+	 * Specify whether all searches are measured, and their totals shown
+	 * through JMX. Searches that have started already aren't affected.
+	 */
+	public static void setEnabled(boolean b) {
+		enabled = b;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Return the totals of all the searches measured since metrics were
+	 * enabled.
+	 */
+	public static FindMetrics getTotal() {
+		return total;
+	}
+
+	/**
+	 * Return the counts of the last search that finished, while metrics were
+	 * enabled.
+	 */
+	public static FindMetrics getLastSearch() {
+		return lastSearch;
+	}
+
+	public long getSearches() {
+		return searches.sum();
+	}
+
+	public long getDirectoriesListed() {
+		return directoriesListed.sum();
+	}
+
+	public long getEntriesSeen() {
+		return entriesSeen.sum();
+	}
+
+	public long getStats() {
+		return stats.sum();
+	}
+
+	public long getRegexEvaluations() {
+		return regexEvaluations.sum();
+	}
+
+	public long getMatches() {
+		return matches.sum();
+	}
+
+	public long getNativeProcesses() {
+		return nativeProcesses.sum();
+	}
+
+	public long getNativeMillis() {
+		return nativeNanos.sum() / 1000000;
+	}
+
+	public long getPipeBytes() {
+		return pipeBytes.sum();
+	}
+
+	public long getListLatencyMedianNanos() {
+		return listLatency.getPercentile(0.5);
+	}
+
+	public long getListLatency99thNanos() {
+		return listLatency.getPercentile(0.99);
+	}
+
+	public long[] getListLatencyHistogram() {
+		return listLatency.getCounts();
+	}
+
+	public long getMatchLatencyMedianNanos() {
+		return matchLatency.getPercentile(0.5);
+	}
+
+	public long getMatchLatency99thNanos() {
+		return matchLatency.getPercentile(0.99);
+	}
+
+	public long[] getMatchLatencyHistogram() {
+		return matchLatency.getCounts();
+	}
+
+	public void reset() {
+		searches.reset();
+		directoriesListed.reset();
+		entriesSeen.reset();
+		stats.reset();
+		regexEvaluations.reset();
+		matches.reset();
+		nativeProcesses.reset();
+		nativeNanos.reset();
+		pipeBytes.reset();
+		listLatency.reset();
+		matchLatency.reset();
+	}
+
+	public String toString() {
+		return "FindMetrics[searches=" + getSearches() + " directories=" + getDirectoriesListed() + " entries="
+				+ getEntriesSeen() + " stats=" + getStats() + " regex=" + getRegexEvaluations() + " matches="
+				+ getMatches() + " native=" + getNativeProcesses() + "/" + getNativeMillis() + "ms]";
+	}
+
+	/*
+	 * Called by the searches, and their engines.
+	 */
+
+	/**
+	 * Return a FindMetrics for a search to count into, if it's been given one,
+	 * or all searches are measured, or else null.
+	 */
+	static FindMetrics forSearch(FindMetrics given) {
+		if (given == null && !enabled) {
+			return null;
+		}
+		if (enabled) {
+			register();
+		}
+		return new FindMetrics();
+	}
+
+	/**
+	 * Count a search that's done, and add it to the FindMetrics it was given,
+	 * if any, and to the totals if all searches are measured. Each search
+	 * counts into its own, so that one that's given to several searches, or
+	 * to a search that's run again, is only added to once.
+	 */
+	void searchFinished(FindMetrics given, long matchCount) {
+		searches.increment();
+		matches.add(matchCount);
+		if (given != null) {
+			given.addAll(this);
+		}
+		if (enabled) {
+			total.addAll(this);
+			synchronized (lastSearch) {
+				lastSearch.reset();
+				lastSearch.addAll(this);
+			}
+		}
+	}
+
+	void directoryListed(long nanos, int entries) {
+		directoriesListed.increment();
+		entriesSeen.add(entries);
+		listLatency.record(nanos);
+	}
+
+	void statIssued() {
+		stats.increment();
+	}
+
+	void regexEvaluated(long nanos) {
+		regexEvaluations.increment();
+		matchLatency.record(nanos);
+	}
+
+	void nativeProcessFinished(long nanos, long bytes) {
+		nativeProcesses.increment();
+		nativeNanos.add(nanos);
+		pipeBytes.add(bytes);
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void addAll(FindMetrics other) {
+		searches.add(other.searches.sum());
+		directoriesListed.add(other.directoriesListed.sum());
+		entriesSeen.add(other.entriesSeen.sum());
+		stats.add(other.stats.sum());
+		regexEvaluations.add(other.regexEvaluations.sum());
+		matches.add(other.matches.sum());
+		nativeProcesses.add(other.nativeProcesses.sum());
+		nativeNanos.add(other.nativeNanos.sum());
+		pipeBytes.add(other.pipeBytes.sum());
+		listLatency.addAll(other.listLatency);
+		matchLatency.addAll(other.matchLatency);
+	}
+
+	/**
+	 * Register the totals and the last search with the platform MBean
+	 * server, the first time metrics are used.
+	 */
+	private static synchronized void register() {
+		if (registered) {
+			return;
+		}
+		registered = true;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(total, new ObjectName("com.greenfabric.find:type=FindMetrics,name=total"));
+			server.registerMBean(lastSearch, new ObjectName("com.greenfabric.find:type=FindMetrics,name=lastSearch"));
+		} catch (JMException e) {
+			// Already there, e.g. from another class loader: the counts still work.
+		}
+	}
+}
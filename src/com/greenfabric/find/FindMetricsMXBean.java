@@ -0,0 +1,98 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+/**
+ * What FindMetrics show through JMX. Two of them are registered with the
+ * platform MBean server once metrics are enabled: the totals of all
+ * searches, as <code>com.greenfabric.find:type=FindMetrics,name=total</code>,
+ * and the last search that finished, as
+ * <code>com.greenfabric.find:type=FindMetrics,name=lastSearch</code>.
+ * <p>
+ *
+ * The latencies are kept in histograms with a bucket per power of two
+ * nanoseconds, so a percentile is the upper bound of its bucket: right to
+ * within a factor of two.
+ *
+ * @see FindMetrics
+ */
+public interface FindMetricsMXBean {
+
+	public long getSearches();
+
+	public long getDirectoriesListed();
+
+	/**
+	 * Return the number of entries in the directories listed by the Java
+	 * engine.
+	 */
+	public long getEntriesSeen();
+
+	/**
+	 * Return the number of times the Java engine fetched a file's
+	 * attributes, or checked its type.
+	 */
+	public long getStats();
+
+	public long getRegexEvaluations();
+
+	/**
+	 * Return the number of matches passed on, by either engine.
+	 */
+	public long getMatches();
+
+	public long getNativeProcesses();
+
+	/**
+	 * Return the time spent running find(1), from its start to the end of
+	 * its output, in milliseconds.
+	 */
+	public long getNativeMillis();
+
+	/**
+	 * Return the amount of find(1)'s output that was read, in characters,
+	 * which are bytes for ASCII pathnames.
+	 */
+	public long getPipeBytes();
+
+	public long getListLatencyMedianNanos();
+
+	public long getListLatency99thNanos();
+
+	/**
+	 * Return the number of directory listings that took from 2^i to 2^(i+1)
+	 * nanoseconds, for each i.
+	 */
+	public long[] getListLatencyHistogram();
+
+	public long getMatchLatencyMedianNanos();
+
+	public long getMatchLatency99thNanos();
+
+	public long[] getMatchLatencyHistogram();
+
+	/**
+	 * Set every count back to zero.
+	 */
+	public void reset();
+}
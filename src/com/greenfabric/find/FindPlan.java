@@ -0,0 +1,108 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.oro.text.perl.MalformedPerl5PatternException;
+
+import com.greenfabric.system.CancellationToken;
+
+/**
+ * A compiled FindQuery, ready to run. Everything that depends only on the
+ * query is done once, when the plan is made: the regex pattern is compiled,
+ * the subtree pruner and expression are built, and, if the native engine will
+ * be used, so is the find and perl command line, except for the starting
+ * point.
+ * <p>
+ *
+ * A plan is thread-safe. Each search gets its own Find, which shares the
+ * compiled parts, so any number of threads can run the same plan at once,
+ * against the same or different starting points, with no reparsing and no
+ * locking.
+ *
+ * @see FindQuery#compile()
+ */
+public final class FindPlan {
+
+	private final FindQuery query;
+
+	/*
+	 * The compiled options. Every search copies them; nothing changes them.
+	 */
+	private final Find template;
+
+	FindPlan(FindQuery query, Find options) throws MalformedPerl5PatternException {
+		this.query = query;
+		template = new Find(options.getPath(), options);
+		template.compilePattern();
+		template.prepareNativeCommand();
+	}
+
+	/**
+	 * Return the query I was compiled from.
+	 */
+	public FindQuery getQuery() {
+		return query;
+	}
+
+	/**
+	 * Return a new Find that starts at the given path and shares my compiled
+	 * options.
+	 */
+	Find newFind(String directoryName) {
+		return new Find(directoryName, template);
+	}
+
+	/**
+	 * Search the given directory.
+	 *
+	 * @see Find#search()
+	 */
+	public FindResult search(String directoryName) throws IOException {
+		return search(directoryName, null);
+	}
+
+	/**
+	 * Search the given directory, stopping early if the given token is
+	 * cancelled.
+	 *
+	 * @param token may be null.
+	 * @see Find#search()
+	 */
+	public FindResult search(String directoryName, CancellationToken token) throws IOException {
+		Find find = newFind(directoryName);
+		find.setCancellationToken(token);
+		return find.search();
+	}
+
+	/**
+	 * Search the given directory.
+	 *
+	 * @see Find#search()
+	 */
+	public FindResult search(File directory) throws IOException {
+		return search(directory.getPath(), null);
+	}
+}
@@ -0,0 +1,381 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where a slow search spends its time. Given to a Find with setProfile(), it
+ * records how long each directory took, and what for: listing it, checking
+ * its entries' types and attributes, matching their paths against the
+ * regex, and passing the matches on. Afterwards, it tells which subtrees
+ * were the slowest, so that one huge directory, a slow mount, an expensive
+ * regex and a slow consumer can be told apart.
+ * <p>
+ *
+ * The times are the Java engine's work on each directory, added up. In a
+ * parallel search, they add up to more than the time the search took. When
+ * find(1) runs the search, only the time spent in the process and the time
+ * spent passing its output on are known, and there are no subtrees. The
+ * first directories of the first search in a JVM also pay for loading
+ * classes and compiling the regex.
+ * <p>
+ *
+ * Several searches can be profiled together. Profiling costs two clock
+ * readings per directory phase, and two per regex test, so it's meant to be
+ * turned on to look into a slow search, not left on.
+ *
+ * <pre>
+ * FindProfile profile = new FindProfile();
+ * find.setProfile(profile);
+ * find.search();
+ * System.err.print(profile.report(10));
+ * </pre>
+ *
+ * @see Find#setProfile(FindProfile)
+ */
+public final class FindProfile {
+
+	private final LongAdder listNanos = new LongAdder();
+
+	private final LongAdder filterNanos = new LongAdder();
+
+	private final LongAdder matchNanos = new LongAdder();
+
+	private final LongAdder emitNanos = new LongAdder();
+
+	private final LongAdder nativeNanos = new LongAdder();
+
+	/*
+	 * The directories each thread has finished, as Subtrees with only their
+	 * own counts.
+	 */
+	private final List<List<Subtree>> tables = Collections.synchronizedList(new ArrayList<List<Subtree>>());
+
+	private final ThreadLocal<List<Subtree>> local = new ThreadLocal<List<Subtree>>() {
+		protected List<Subtree> initialValue() {
+			List<Subtree> table = new ArrayList<Subtree>();
+			tables.add(table);
+			return table;
+		}
+	};
+
+	/**
+	 * Return the time spent listing directories, in nanoseconds.
+	 */
+	public long getListNanos() {
+		return listNanos.sum();
+	}
+
+	/**
+	 * Return the time spent checking entries, apart from matching them against
+	 * the regex: their types, the attributes for the expression or the output,
+	 * and whether subdirectories are symbolic links, in nanoseconds.
+	 */
+	public long getStatNanos() {
+		return Math.max(0, filterNanos.sum() - matchNanos.sum());
+	}
+
+	/**
+	 * Return the time spent matching paths against the regex, in nanoseconds.
+	 */
+	public long getMatchNanos() {
+		return matchNanos.sum();
+	}
+
+	/**
+	 * Return the time spent passing matches on: printing, collecting or
+	 * sorting them, in nanoseconds.
+	 */
+	public long getEmitNanos() {
+		return emitNanos.sum();
+	}
+
+	/**
+	 * Return the time find(1) took, apart from passing its output on, in
+	 * nanoseconds.
+	 */
+	public long getNativeNanos() {
+		return nativeNanos.sum();
+	}
+
+	/**
+	 * Return the subtrees that took the longest, the slowest first, down to the
+	 * given depth below the starting point.
+	 *
+	 * @return a List of Subtrees.
+	 */
+	public List<Subtree> getHotSubtrees(int n, int maxDepth) {
+		List<Subtree> all = subtrees();
+		List<Subtree> result = new ArrayList<Subtree>();
+		Iterator<Subtree> i = all.iterator();
+		while (i.hasNext()) {
+			Subtree subtree = i.next();
+			if (subtree.depth <= maxDepth) {
+				result.add(subtree);
+			}
+		}
+		Collections.sort(result, new Comparator<Subtree>() {
+			public int compare(Subtree x, Subtree y) {
+				return x.nanos != y.nanos ? (x.nanos > y.nanos ? -1 : 1) : x.path.compareTo(y.path);
+			}
+		});
+		return new ArrayList<Subtree>(result.subList(0, Math.min(n, result.size())));
+	}
+
+	/**
+	 * Return the directories that took the longest on their own, not counting
+	 * their subdirectories, the slowest first.
+	 *
+	 * @return a List of Subtrees.
+	 */
+	public List<Subtree> getSlowDirectories(int n) {
+		List<Subtree> result = subtrees();
+		Collections.sort(result, new Comparator<Subtree>() {
+			public int compare(Subtree x, Subtree y) {
+				return x.ownNanos != y.ownNanos ? (x.ownNanos > y.ownNanos ? -1 : 1) : x.path.compareTo(y.path);
+			}
+		});
+		return new ArrayList<Subtree>(result.subList(0, Math.min(n, result.size())));
+	}
+
+	/**
+	 * Return a report of the phases, and the given number of hot subtrees,
+	 * down to three levels below the starting point, and slow directories.
+	 */
+	public String report(int n) {
+		StringBuffer b = new StringBuffer();
+		b.append("Time by phase (ms):\n");
+		b.append("  list\t").append(millis(getListNanos())).append('\n');
+		b.append("  stat\t").append(millis(getStatNanos())).append('\n');
+		b.append("  match\t").append(millis(getMatchNanos())).append('\n');
+		b.append("  emit\t").append(millis(getEmitNanos())).append('\n');
+		if (getNativeNanos() > 0) {
+			b.append("  find(1)\t").append(millis(getNativeNanos())).append('\n');
+		}
+		List<Subtree> hot = getHotSubtrees(n, 3);
+		if (!hot.isEmpty()) {
+			b.append("Hot subtrees (ms, entries):\n");
+			Iterator<Subtree> i = hot.iterator();
+			while (i.hasNext()) {
+				b.append("  ").append(i.next()).append('\n');
+			}
+			b.append("Slow directories (own ms, own entries):\n");
+			i = getSlowDirectories(n).iterator();
+			while (i.hasNext()) {
+				Subtree slow = i.next();
+				b.append("  ").append(millis(slow.ownNanos)).append('\t').append(slow.ownEntries).append('\t')
+						.append(slow.path).append('\n');
+			}
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Forget everything recorded so far.
+	 */
+	public void reset() {
+		listNanos.reset();
+		filterNanos.reset();
+		matchNanos.reset();
+		emitNanos.reset();
+		nativeNanos.reset();
+		synchronized (tables) {
+			Iterator<List<Subtree>> i = tables.iterator();
+			while (i.hasNext()) {
+				List<Subtree> table = i.next();
+				synchronized (table) {
+					table.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The time a directory took, and its number of entries, on its own and
+	 * with everything under it.
+	 */
+	public static final class Subtree {
+		private final String path;
+
+		private final int depth;
+
+		private long nanos;
+
+		private long entries;
+
+		private long ownNanos;
+
+		private long ownEntries;
+
+		Subtree(String path, int depth, long ownNanos, long ownEntries) {
+			this.path = path;
+			this.depth = depth;
+			this.ownNanos = ownNanos;
+			this.ownEntries = ownEntries;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Return how far the directory is below the starting point.
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 * Return the time the directory's whole subtree took, in nanoseconds.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Return the number of entries in the directory's whole subtree.
+		 */
+		public long getEntries() {
+			return entries;
+		}
+
+		/**
+		 * Return the time the directory took on its own, in nanoseconds.
+		 */
+		public long getOwnNanos() {
+			return ownNanos;
+		}
+
+		/**
+		 * Return the number of entries right in the directory.
+		 */
+		public long getOwnEntries() {
+			return ownEntries;
+		}
+
+		/**
+		 * Return the time in milliseconds, the entries and the path, tab
+		 * separated, for the whole subtree.
+		 */
+		public String toString() {
+			return millis(nanos) + "\t" + entries + "\t" + path;
+		}
+	}
+
+	/*
+	 * Called by the engines.
+	 */
+
+	/**
+	 * Record a directory the Java engine is done with, apart from its
+	 * subdirectories.
+	 *
+	 * @param depth  how far the directory is below the starting point.
+	 * @param filter the time spent checking the entries, including matching
+	 *               them.
+	 */
+	void directoryDone(String path, int depth, int entries, long list, long filter, long emit) {
+		listNanos.add(list);
+		filterNanos.add(filter);
+		emitNanos.add(emit);
+		List<Subtree> table = local.get();
+		synchronized (table) {
+			table.add(new Subtree(path, depth, list + filter + emit, entries));
+		}
+	}
+
+	void matched(long nanos) {
+		matchNanos.add(nanos);
+	}
+
+	/**
+	 * Record a find(1) process, and the part of its time spent passing its
+	 * output on.
+	 */
+	void nativeDone(long nanos, long emit) {
+		nativeNanos.add(Math.max(0, nanos - emit));
+		emitNanos.add(emit);
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Return the directories recorded, one Subtree each, with the times and
+	 * entries of their subdirectories added in.
+	 */
+	private List<Subtree> subtrees() {
+		Map<String, Subtree> byPath = new HashMap<String, Subtree>();
+		synchronized (tables) {
+			Iterator<List<Subtree>> t = tables.iterator();
+			while (t.hasNext()) {
+				List<Subtree> table = t.next();
+				synchronized (table) {
+					for (int i = 0; i < table.size(); i++) {
+						Subtree own = table.get(i);
+						Subtree subtree = byPath.get(own.path);
+						if (subtree == null) {
+							byPath.put(own.path, new Subtree(own.path, own.depth, own.ownNanos, own.ownEntries));
+						} else { // Seen by an earlier search.
+							subtree.ownNanos += own.ownNanos;
+							subtree.ownEntries += own.ownEntries;
+						}
+					}
+				}
+			}
+		}
+		List<Subtree> all = new ArrayList<Subtree>(byPath.values());
+		Collections.sort(all, new Comparator<Subtree>() {
+			public int compare(Subtree a, Subtree b) {
+				return b.depth - a.depth;
+			}
+		}); // The deepest first, so each is complete before it's added to its parent.
+		Iterator<Subtree> i = all.iterator();
+		while (i.hasNext()) {
+			Subtree subtree = i.next();
+			subtree.nanos += subtree.ownNanos;
+			subtree.entries += subtree.ownEntries;
+			int slash = subtree.path.lastIndexOf(File.separatorChar);
+			Subtree parent = slash > 0 ? byPath.get(subtree.path.substring(0, slash)) : null;
+			if (parent != null) {
+				parent.nanos += subtree.nanos;
+				parent.entries += subtree.entries;
+			}
+		}
+		return all;
+	}
+
+	private static String millis(long nanos) {
+		return Long.toString(nanos / 1000000);
+	}
+}
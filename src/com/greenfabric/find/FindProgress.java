@@ -0,0 +1,143 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+/**
+ * A report on a running search, passed to a ProgressListener: how far it's
+ * got, how fast it's going, and where it is. The counts are read while the
+ * search goes on, so they're each up to date, but not necessarily taken at
+ * the same instant.
+ * <p>
+ *
+ * The Java engine counts the directories it lists and the entries in them.
+ * With find(1), only the lines it outputs are seen, so the entries are those
+ * lines, and the directory count is -1. A sorted search passes its matches
+ * on at the end, so until then its match count is 0.
+ *
+ * @see ProgressListener
+ */
+public final class FindProgress {
+
+	private final String root;
+
+	private final long elapsedMillis;
+
+	private final long directories;
+
+	private final long entries;
+
+	private final int matches;
+
+	private final long entriesPerSecond;
+
+	private final String currentPath;
+
+	private final long currentPathMillis;
+
+	private final boolean finished;
+
+	FindProgress(String root, long elapsedMillis, long directories, long entries, int matches,
+			long entriesPerSecond, String currentPath, long currentPathMillis, boolean finished) {
+		this.root = root;
+		this.elapsedMillis = elapsedMillis;
+		this.directories = directories;
+		this.entries = entries;
+		this.matches = matches;
+		this.entriesPerSecond = entriesPerSecond;
+		this.currentPath = currentPath;
+		this.currentPathMillis = currentPathMillis;
+		this.finished = finished;
+	}
+
+	/**
+	 * Return the starting point of the search.
+	 */
+	public String getRoot() {
+		return root;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * Return the number of directories listed so far, or -1 if the engine
+	 * doesn't say.
+	 */
+	public long getDirectories() {
+		return directories;
+	}
+
+	/**
+	 * Return the number of entries seen so far.
+	 */
+	public long getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Return the number of matches passed on so far.
+	 */
+	public int getMatches() {
+		return matches;
+	}
+
+	/**
+	 * Return the number of entries seen per second since the last report, or
+	 * since the start for the first one.
+	 */
+	public long getEntriesPerSecond() {
+		return entriesPerSecond;
+	}
+
+	/**
+	 * Return the directory the search was last seen in, or for find(1), the
+	 * last path it output, or null if it hasn't got anywhere yet. When the
+	 * search is stuck, e.g. on a slow mount, this is where.
+	 */
+	public String getCurrentPath() {
+		return currentPath;
+	}
+
+	/**
+	 * Return about how long the search has been in the current path, going by
+	 * the reports: 0 if it's moved on since the last one. A search that's
+	 * been in one place for several reports is a slow one there.
+	 */
+	public long getCurrentPathMillis() {
+		return currentPathMillis;
+	}
+
+	/**
+	 * Return true if this is the last report, made after the search ended.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	public String toString() {
+		return (finished ? "finished " : "") + root + ": " + elapsedMillis + " ms, " + directories + " directories, "
+				+ entries + " entries, " + matches + " matches, " + entriesPerSecond + " entries/s, at "
+				+ currentPath + (currentPathMillis > 0 ? " for " + currentPathMillis + " ms" : "");
+	}
+}
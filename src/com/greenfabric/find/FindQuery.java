@@ -0,0 +1,165 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+
+import org.apache.oro.text.perl.MalformedPerl5PatternException;
+
+/**
+ * The options of a search, without the place to search. A FindQuery can't be
+ * changed once it's made, so it can be shared freely between threads, kept as
+ * a constant, or used as a map key.
+ * <p>
+ *
+ * A Find is configured with its setters, and is used by one thread at a time;
+ * it also recompiles its pattern and rebuilds its native command line for
+ * every search. A query is made from a configured Find, and compiled once into
+ * a FindPlan, which any number of threads can then run against any number of
+ * starting points at the same time.
+ *
+ * <pre>
+ * Find template = new Find(&quot;.&quot;);
+ * template.setPattern(&quot;/\\.log$/&quot;);
+ * template.setFindDirectories(false);
+ * FindPlan logs = new FindQuery(template).compile();
+ * ... // Then, in any thread:
+ * FindResult r = logs.search(&quot;/var/log/httpd&quot;);
+ * </pre>
+ *
+ * @see FindPlan
+ */
+public final class FindQuery {
+
+	/*
+	 * A private copy of the options. It's never searched or changed.
+	 */
+	private final Find options;
+
+	private final String description;
+
+	private FindPlan plan;
+
+	/**
+	 * Constructs a new FindQuery with the options the given Find has now. Its
+	 * path and CancellationToken aren't part of the query, and later changes to
+	 * the Find don't affect it.
+	 */
+	public FindQuery(Find template) {
+		options = new Find(template.getPath(), template);
+		description = options.describeOptions();
+	}
+
+	/**
+	 * Return a plan for running this query. The pattern is compiled, and the
+	 * native command line built, only the first time this is called.
+	 *
+	 * @exception MalformedPerl5PatternException if the regex pattern has a syntax
+	 *                                           error.
+	 */
+	public synchronized FindPlan compile() throws MalformedPerl5PatternException {
+		if (plan == null) {
+			plan = new FindPlan(this, options);
+		}
+		return plan;
+	}
+
+	/**
+	 * Return a new Find that starts at the given path and has these options. It
+	 * can be changed without affecting this query, e.g. to make a similar one.
+	 */
+	public Find newFind(String directoryName) {
+		return new Find(directoryName, options);
+	}
+
+	/*
+	 * The options, read-only.
+	 */
+
+	public String getPattern() {
+		return options.getPattern();
+	}
+
+	public boolean getNegated() {
+		return options.getNegated();
+	}
+
+	public FindExpression getExpression() {
+		return options.getExpression();
+	}
+
+	public boolean getFollow() {
+		return options.getFollow();
+	}
+
+	public int getMinDepth() {
+		return options.getMinDepth();
+	}
+
+	public int getMaxDepth() {
+		return options.getMaxDepth();
+	}
+
+	public boolean getFindDirectories() {
+		return options.getFindDirectories();
+	}
+
+	public boolean getFindFiles() {
+		return options.getFindFiles();
+	}
+
+	public File[] getDirectoriesToExclude() {
+		return options.getDirectoriesToExclude();
+	}
+
+	public int getMaxResults() {
+		return options.getMaxResults();
+	}
+
+	public boolean getFirstMatch() {
+		return options.getFirstMatch();
+	}
+
+	public long getTimeout() {
+		return options.getTimeout();
+	}
+
+	public boolean getStdOut() {
+		return options.getStdOut();
+	}
+
+	/**
+	 * Two queries are equal if all of their options are.
+	 */
+	public boolean equals(Object o) {
+		return o instanceof FindQuery && ((FindQuery) o).description.equals(description);
+	}
+
+	public int hashCode() {
+		return description.hashCode();
+	}
+
+	public String toString() {
+		return "FindQuery[" + description + "]";
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a search: the matches, and whether the search ran to the end.
+ * A search that was stopped early, because it reached its result limit, ran
+ * out of time or was cancelled, returns a <i>partial</i> result. Its matches
+ * are all genuine, but there may be more that weren't found, in the
+ * directories listed by getUnvisitedDirectories().
+ *
+ * <pre>
+ * Find find = new Find(&quot;/srv&quot;);
+ * find.setPattern(&quot;/\\.core$/&quot;);
+ * find.setFirstMatch(true);
+ * boolean anyCores = find.search().getCount() &gt; 0;
+ * </pre>
+ *
+ * @see Find#search()
+ */
+public final class FindResult {
+
+	/**
+	 * The search visited everything it was supposed to.
+	 */
+	public static final int COMPLETE = 0;
+
+	/**
+	 * The search stopped after finding as many matches as Find.setMaxResults()
+	 * allows.
+	 */
+	public static final int MAX_RESULTS = 1;
+
+	/**
+	 * The search stopped at the first match, as asked by Find.setFirstMatch().
+	 */
+	public static final int FIRST_MATCH = 2;
+
+	/**
+	 * The search was stopped through its CancellationToken.
+	 */
+	public static final int CANCELLED = 3;
+
+	/**
+	 * The search was still running when its time was up. See Find.setTimeout().
+	 */
+	public static final int TIMED_OUT = 4;
+
+	private static final String[] REASON_NAMES = { "complete", "max results", "first match", "cancelled",
+			"timed out" };
+
+	private final List<String> paths;
+
+	private final List<String> unvisited;
+
+	private final int count;
+
+	private final int stopReason;
+
+	private final long elapsedNanos;
+
+	private final long queuedNanos;
+
+	FindResult(List<String> paths, int count, int stopReason, List<String> unvisited, long elapsedNanos) {
+		this(Collections.unmodifiableList(paths), count, stopReason, Collections.unmodifiableList(unvisited),
+				elapsedNanos, 0);
+	}
+
+	private FindResult(List<String> paths, int count, int stopReason, List<String> unvisited, long elapsedNanos,
+			long queuedNanos) {
+		this.paths = paths;
+		this.unvisited = unvisited;
+		this.count = count;
+		this.stopReason = stopReason;
+		this.elapsedNanos = elapsedNanos;
+		this.queuedNanos = queuedNanos;
+	}
+
+	/**
+	 * Return a copy of me that also records how long the search waited to
+	 * start.
+	 */
+	FindResult withQueueTime(long nanos) {
+		return new FindResult(paths, count, stopReason, unvisited, elapsedNanos, nanos);
+	}
+
+	/**
+	 * Return the matching pathnames, as Strings. This is empty when the Find
+	 * printed its matches to standard output instead of collecting them.
+	 */
+	public List<String> getPaths() {
+		return paths;
+	}
+
+	/**
+	 * Return the matches as File objects.
+	 */
+	public File[] getFiles() {
+		File[] array = new File[paths.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = new File(paths.get(i));
+		}
+		return array;
+	}
+
+	/**
+	 * Return the number of matches, whether they were collected or printed.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Return true if the search stopped before visiting everything, so there
+	 * may be matches that aren't in this result.
+	 */
+	public boolean isPartial() {
+		return stopReason != COMPLETE;
+	}
+
+	/**
+	 * Return why the search stopped: COMPLETE, MAX_RESULTS, FIRST_MATCH,
+	 * CANCELLED or TIMED_OUT.
+	 */
+	public int getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * Return the pathnames of the directories that the search didn't finish
+	 * with, as Strings. Everything under them that isn't in this result is
+	 * unknown. This is empty for a complete result.
+	 * <p>
+	 * 
+	 * The pure-Java engine reports each directory that it didn't get to, or
+	 * stopped in the middle of; the list may also include symbolic links to
+	 * directories that wouldn't have been followed anyway. The native engine
+	 * can't tell how far find(1) got, so it reports the starting directory.
+	 */
+	public List<String> getUnvisitedDirectories() {
+		return unvisited;
+	}
+
+	/**
+	 * Return how long the search ran, in nanoseconds, including writing its
+	 * output.
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Return how long the search waited in a SearchExecutor's queue before it
+	 * started, in nanoseconds. This is 0 for a search that was run directly.
+	 */
+	public long getQueuedNanos() {
+		return queuedNanos;
+	}
+
+	public String toString() {
+		return count + " matches (" + REASON_NAMES[stopReason] + ")";
+	}
+}
@@ -51,6 +51,15 @@ class GnuNativeFind {
                           perlLocation = null,
 			  bashLocation = null;
     private static QuoteTool qtool = new QuoteTool(QuoteTool.REGEX);
+    private static QuoteTool shellQuote = new QuoteTool(QuoteTool.SHELL);
+
+    /**
+     * The attributes find prints for each match when the output is
+     * formatted in Java.  The path comes first, and ends with a NUL, so
+     * perl can still match the pattern against it.
+     **/
+    private static final String STAT_FORMAT =
+	"%p\\0%s %T@ %A@ %C@ %i %D %m %y %U %G %n %d\\n";
 
     private Find myFind;
 
@@ -89,17 +98,21 @@ class GnuNativeFind {
      * allow Find to use the Java-only implementation if this one has a problem
      * executing.
      **/
-    static boolean canFunction() {
+    static synchronized boolean canFunction() {
 	// Have we already tested yet?
 	if (canFunction == null) {
-	    findLocation = GnuInfo.findExecutable("find");
-	    perlLocation = GnuInfo.findExecutable("perl");
-	    bashLocation = GnuInfo.findExecutable("bash");
-	    boolean b = (findLocation != null) &&
-		        (perlLocation != null) &&
-			(bashLocation != null) &&
-			GnuInfo.isGnu();
-	    canFunction = new Boolean(b);
+	    // The OS name costs nothing to check, so it goes first; the
+	    // programs are only looked for on a GNU system.
+	    boolean b = GnuInfo.isGnu();
+	    if (b) {
+		findLocation = GnuInfo.findExecutable("find");
+		perlLocation = GnuInfo.findExecutable("perl");
+		bashLocation = GnuInfo.findExecutable("bash");
+		b = (findLocation != null) &&
+		    (perlLocation != null) &&
+		    (bashLocation != null);
+	    }
+	    canFunction = Boolean.valueOf(b);
 	}
 
 	return canFunction.booleanValue();
@@ -109,10 +122,104 @@ class GnuNativeFind {
     /**
      * Fill the given Vector with filenames, using the GNU utilities.
      *
+     * The command line is the starting point followed by everything
+     * that comes from the options, which a FindPlan may have built
+     * already.
+     **/
+    void gnuFind(final MatchConsumer consumer) throws IOException {
+	String command = buildCommand();
+
+	/*
+	 * A printf format is applied in Java, to the attributes that find
+	 * prints after each path.  Sorting by size or time uses them too.
+	 * Then the output consumer gets parsed records instead of lines.
+	 */
+	StdOutConsumer lineConsumer = consumer;
+	if (myFind.isFormattingMatches()) {
+	    lineConsumer = new StdOutConsumer() { public void receive(String s) {
+		    receiveStats(consumer, s);
+		}};
+	}
+
+	/*
+	 * A profiled search times how long passing the output on takes,
+	 * to tell it apart from the time find itself takes.
+	 */
+	final FindProfile profile = myFind.getProfile();
+	final long[] emitNanos = { 0 };
+	if (profile != null) {
+	    final StdOutConsumer timed = lineConsumer;
+	    lineConsumer = new StdOutConsumer() { public void receive(String s) {
+		    long started = System.nanoTime();
+		    timed.receive(s);
+		    emitNanos[0] += System.nanoTime() - started;
+		}};
+	}
+
+	/*
+	 * When the search is being measured, the output is counted on
+	 * its way through, and the process is timed.
+	 */
+	FindMetrics metrics = myFind.getSearchMetrics();
+	final long[] pipeChars = { 0 };
+	if (metrics != null) {
+	    final StdOutConsumer counted = lineConsumer;
+	    lineConsumer = new StdOutConsumer() { public void receive(String s) {
+		    pipeChars[0] += s.length() + 1;
+		    counted.receive(s);
+		}};
+	}
+
+	/*
+	 * A search that reports its progress sees each line go by.
+	 */
+	final ProgressSampler progress = myFind.getProgress();
+	if (progress != null) {
+	    progress.nativeStarted();
+	    final StdOutConsumer reported = lineConsumer;
+	    lineConsumer = new StdOutConsumer() { public void receive(String s) {
+		    progress.nativeLine(s);
+		    reported.receive(s);
+		}};
+	}
+
+	/*
+	 * The command line is completed, so we'll now execute it
+	 */
+	debug("Executing: "+command);
+	long started = System.nanoTime();
+	try {
+	    GnuLauncher.exec( lineConsumer, command, myFind.getStopToken() );
+	} finally {
+	    if (metrics != null)
+		metrics.nativeProcessFinished(System.nanoTime() - started, pipeChars[0]);
+	    if (profile != null)
+		profile.nativeDone(System.nanoTime() - started, emitNanos[0]);
+	}
+    }
+
+
+    /**
+     * Return the whole command line for a search of my Find's starting
+     * point.
+     **/
+    String buildCommand() throws IOException {
+	String tail = myFind.getNativeCommandTail();
+	if (tail == null)
+	    tail = buildCommandTail();
+	return findLocation + " " + shellQuote.quote(myFind.getPath()) + tail;
+    }
+
+
+    /**
+     * Build the part of the find and perl command line that comes after
+     * the starting point.  It depends only on the Find's options, so it
+     * can be reused for other starting points.
+     *
      * This method does all the work of building the find and perl
      * command line.  It's the messiest part of this package.
      **/
-    void gnuFind(StdOutConsumer consumer) throws IOException {
+    String buildCommandTail() throws IOException {
 	/*
 	 * Through options to find, we handle the Find class's
 	 * max/min depth, follow, and find files/directories.
@@ -125,22 +232,88 @@ class GnuNativeFind {
 	if (myFind.getFollow())
 	    findOptions.append("-follow ");
 
-	boolean dirFlag = false;
+	/*
+	 * If the pattern is anchored to a path prefix, directories that
+	 * can't lead to a match are pruned, and the rest of the tests go
+	 * after an -o.  Pruned directories never match the pattern, so the
+	 * perl filter drops them even though find prints them.
+	 */
+	SubtreePruner pruner = myFind.getPruner();
+	if (pruner != null) {
+	    String[] args = pruner.toNativeArguments();
+	    for (int i=0; i<args.length; i++)
+		findOptions.append(shellQuote.quote(args[i]) + " ");
+	    findOptions.append("-o ");
+	}
+
+	/*
+	 * The type tests are or'ed together, so they're grouped in
+	 * parentheses for the tests that follow them to apply to all.
+	 */
+	StringBuffer typeTests = new StringBuffer();
 	if (myFind.getFindDirectories()) {
-	    findOptions.append("-type d ");
-	    dirFlag = true;
+	    typeTests.append("-type d ");
 	}
 	if (myFind.getFindFiles()) {
-	    if (dirFlag)
-		findOptions.append("-o ");
-	    findOptions.append("-type b -o -type c -o -type p -o -type f -o -type l -o -type s");
+	    if (typeTests.length() != 0)
+		typeTests.append("-o ");
+	    typeTests.append("-type b -o -type c -o -type p -o -type f -o -type l -o -type s ");
+	}
+	if (typeTests.length() != 0)
+	    findOptions.append("\\( " + typeTests + "\\) ");
+
+	/*
+	 * Time tests, for the modifiedSince option and the checkpoint mode.
+	 * A checkpoint also catches entries whose status changed after it,
+	 * which includes files moved into the tree with an old mtime.
+	 */
+	if (myFind.getModifiedSince() != Find.NO_TIME)
+	    findOptions.append("-newermt " +
+			       epochDate(myFind.getModifiedSince()) + " ");
+	if (myFind.getCheckpoint() != null) {
+	    long since = Checkpoint.floorSeconds(
+				Checkpoint.getTime(myFind.getCheckpoint()));
+	    if (since != Find.NO_TIME) {
+		String date = epochDate(since);
+		findOptions.append("\\( -newermt " + date +
+				   " -o -newerct " + date + " \\) ");
+	    }
 	}
-	findOptions.append(" ");
 	
+	/*
+	 * A FindExpression translates itself into find tests.
+	 */
+	FindExpression expression = myFind.getExpression();
+	if (expression != null) {
+	    String[] args = expression.toNativeArguments();
+	    for (int i=0; i<args.length; i++)
+		findOptions.append(shellQuote.quote(args[i]) + " ");
+	}
+
+	/*
+	 * With attributes, find prints them after each path, and perl
+	 * matches the pattern against the path alone.
+	 */
+	String path = "";
+	if (myFind.isFormattingMatches()) {
+	    findOptions.append("-printf " + shellQuote.quote(STAT_FORMAT) + " ");
+	    path = "(split /\\0/)[0] =~ ";
+	}
+
 	/*
 	 * Through options to perl, we handle the Find class's
-	 * negated and directories to exclude properties.
+	 * negated and directories to exclude properties.  With a
+	 * result limit, the last perl in the pipeline exits once it
+	 * has printed enough, and find dies of SIGPIPE.  Output is
+	 * unbuffered then, so the first matches arrive right away.
 	 */
+	String autoflush = "";
+	String print = "print";
+	if (myFind.getResultLimit() != Find.NO_LIMIT) {
+	    autoflush = "BEGIN { $| = 1 } ";
+	    print = "print and ++$n >= " + myFind.getResultLimit() + " and exit";
+	}
+
 	String not;
 	if (myFind.getNegated())
 	    not =" ! ";
@@ -151,7 +324,8 @@ class GnuNativeFind {
 	File[] array = myFind.getDirectoriesToExclude();
 	if (array.length != 0) {
 	    directoryFilter = new StringBuffer(" | "+perlLocation+
-		                               " -ne 'print if ! /");
+		                               " -ne '"+autoflush+print+
+					       " if ! /");
 	    for (int i=0; i<array.length; i++) {
 		if (i != 0)
 		    directoryFilter.append("|");
@@ -166,22 +340,82 @@ class GnuNativeFind {
 	/*
 	 * Put the command together
 	 */
-	String command = findLocation + " " + myFind + " " + findOptions +
-			 " | " +
-			 perlLocation + " " +
-			 "-ne 'print if " + not + myFind.getPattern() + "'"+
-			 directoryFilter;
+	return " " + findOptions +
+	       " | " +
+	       perlLocation + " " +
+	       "-ne '" + autoflush +
+	       (array.length == 0 ? print : "print") +
+	       " if " + not + path + myFind.getPattern() + "'"+
+	       directoryFilter;
+    }
 
-	/*
-	 * The command line is completed, so we'll now execute it
-	 */
-	debug("Executing: "+command);
-	GnuLauncher.exec( consumer, command );
+
+    /**
+     * Parse a line of output in STAT_FORMAT, and pass the match on along
+     * with its attributes.
+     **/
+    private static void receiveStats(MatchConsumer consumer, String line) {
+	int nul = line.indexOf('\0');
+	if (nul == -1) {
+	    consumer.receive(line);
+	    return;
+	}
+	String[] f = line.substring(nul + 1).split(" ");
+	int mode = Integer.parseInt(f[6], 8) | typeBits(f[7].charAt(0));
+	FileStat stat = new FileStat(Long.parseLong(f[0]), epochMillis(f[1]),
+				     epochMillis(f[2]), epochMillis(f[3]),
+				     Long.parseLong(f[4]), Long.parseLong(f[5]),
+				     mode, Integer.parseInt(f[8]),
+				     Integer.parseInt(f[9]), Integer.parseInt(f[10]));
+	consumer.receive(line.substring(0, nul), Integer.parseInt(f[11]), stat);
+    }
+
+
+    /**
+     * Parse a time printed by find's %T@, like 1697040000.1234567890,
+     * into milliseconds.
+     **/
+    private static long epochMillis(String s) {
+	int dot = s.indexOf('.');
+	if (dot == -1)
+	    return Long.parseLong(s) * 1000L;
+	String fraction = (s.substring(dot + 1) + "000").substring(0, 3);
+	long seconds = Long.parseLong(s.substring(0, dot));
+	long millis = Long.parseLong(fraction);
+	return s.startsWith("-") ? seconds * 1000L - millis : seconds * 1000L + millis;
+    }
+
+
+    /**
+     * Return the file type bits of the unix mode for a type letter of
+     * find's %y.
+     **/
+    private static int typeBits(char type) {
+	switch (type) {
+	case 'd': return 0040000;
+	case 'l': return 0120000;
+	case 'b': return 0060000;
+	case 'c': return 0020000;
+	case 'p': return 0010000;
+	case 's': return 0140000;
+	default:  return 0100000;
+	}
     }
 
 
 
 
+    /**
+     * Format a time for find's -newerXt options, which accept "@" followed
+     * by seconds since the epoch.
+     **/
+    static String epochDate(long millis) {
+	long seconds = Math.floorDiv(millis, 1000L);
+	long fraction = Math.floorMod(millis, 1000L);
+	return "@" + seconds + "." + (fraction + 1000L + "").substring(1);
+    }
+
+
     /**
       * Simple debugging output is provided if the javafind.debug
       * property has been set to any value.
@@ -0,0 +1,94 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in buckets, one per power of two nanoseconds, so that
+ * recording one costs a bit count and an add. It's meant to be used only from
+ * within this package, by FindMetrics. Many threads can record at once.
+ */
+final class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+	LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	void record(long nanos) {
+		buckets[63 - Long.numberOfLeadingZeros(nanos | 1)].increment();
+	}
+
+	/**
+	 * Return the count in each bucket.
+	 */
+	long[] getCounts() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+		}
+		return counts;
+	}
+
+	/**
+	 * Return the upper bound of the bucket the given fraction of the
+	 * durations fall in or below, e.g. 0.99, or 0 if there are none.
+	 */
+	long getPercentile(double fraction) {
+		long[] counts = getCounts();
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long wanted = (long) Math.ceil(total * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS - 1; i++) {
+			seen += counts[i];
+			if (seen >= wanted) {
+				return 1L << (i + 1);
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	void addAll(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i].add(other.buckets[i].sum());
+		}
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i].reset();
+		}
+	}
+}
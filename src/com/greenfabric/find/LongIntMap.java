@@ -0,0 +1,144 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+/**
+ * A hash map from long keys to int values, kept in two arrays, with no objects
+ * per entry. It's meant to be used only from within this package, to index
+ * large numbers of matches, e.g. by size or by inode, where a HashMap would
+ * box every key and allocate an entry for it. It's not synchronized.
+ */
+final class LongIntMap {
+
+	/**
+	 * What get() returns for a key that isn't there.
+	 */
+	static final int MISSING = -1;
+
+	private long[] keys;
+
+	private int[] values;
+
+	private boolean[] used;
+
+	private int size = 0;
+
+	/**
+	 * Constructs a new LongIntMap with room for about the given number of
+	 * entries before it grows.
+	 */
+	LongIntMap(int expected) {
+		int capacity = 16;
+		while (capacity < expected * 2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * Return the value for the given key, or MISSING.
+	 */
+	int get(long key) {
+		int mask = keys.length - 1;
+		for (int i = slot(key, mask); used[i]; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+		}
+		return MISSING;
+	}
+
+	void put(long key, int value) {
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+		}
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		while (used[i]) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		used[i] = true;
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Return the number of slots. Slots from 0 up to this that are in use hold
+	 * the entries, in no particular order.
+	 */
+	int capacity() {
+		return keys.length;
+	}
+
+	boolean isUsed(int slot) {
+		return used[slot];
+	}
+
+	long keyAt(int slot) {
+		return keys[slot];
+	}
+
+	int valueAt(int slot) {
+		return values[slot];
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Spread the key's bits, since sizes and inodes are far from random.
+	 */
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(oldKeys.length * 2);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+}
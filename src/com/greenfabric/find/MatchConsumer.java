@@ -0,0 +1,47 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import com.greenfabric.system.FileStat;
+import com.greenfabric.system.StdOutConsumer;
+
+/**
+ * A consumer of matches that can take a match's attributes along with its
+ * path, when they're already known. The engines pass them on this way so that
+ * output formats like -printf don't have to stat the file a second time. It's
+ * meant to be used only from within this package.
+ * <p>
+ *
+ * The inherited receive(String) is for matches that come without attributes.
+ */
+interface MatchConsumer extends StdOutConsumer {
+
+	/**
+	 * Take a match.
+	 *
+	 * @param path  the path of the match.
+	 * @param depth how far below the starting point it is.
+	 * @param stat  its attributes, or null if nobody asked for them.
+	 */
+	public void receive(String path, int depth, FileStat stat);
+}
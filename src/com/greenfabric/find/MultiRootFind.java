@@ -0,0 +1,222 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.oro.text.perl.MalformedPerl5PatternException;
+
+import com.greenfabric.system.CancellationToken;
+import com.greenfabric.system.FileStat;
+
+/**
+ * Searches several starting points with one set of options, as one search. A
+ * Find searches a single directory, the one it is as a File; a MultiRootFind
+ * takes any number of them, e.g. one per volume.
+ * <p>
+ *
+ * The directories of all the starting points are searched in parallel, on one
+ * shared ForkJoinPool: each subdirectory is a task, so a big tree doesn't hold
+ * up a small one, and idle threads take work from busy ones. (With the native
+ * engine, each starting point is one find(1) run on the pool.) The matches are
+ * merged into one stream, each tagged with its starting point, and the options
+ * apply to the whole of it: a result limit or timeout counts all matches, and a
+ * sort orders all of them.
+ * <p>
+ *
+ * Nothing is searched twice. Starting points are compared by their canonical
+ * paths, so the same directory named two ways, or through a symbolic link, is
+ * searched once, under the name given first. A starting point inside another
+ * one is dropped, since its matches are all found under the outer one.
+ * (That's not so with a maximum depth, because the outer search stops
+ * higher up. Then both are searched, and a match found by both is reported
+ * once.)
+ *
+ * <pre>
+ * Find options = new Find(&quot;.&quot;);
+ * options.setPattern(&quot;/\\.core$/&quot;);
+ * MultiRootFind cores = new MultiRootFind(new FindQuery(options), volumes);
+ * cores.search(new RootedConsumer() {
+ * 	public void receive(String root, String path) {
+ * 		report(root, path);
+ * 	}
+ * }, null);
+ * </pre>
+ */
+public final class MultiRootFind {
+
+	private static ForkJoinPool defaultPool;
+
+	private final FindPlan plan;
+
+	private final String[] roots;
+
+	private final boolean nestedRootsSearched;
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructs a new MultiRootFind.
+	 *
+	 * @param query the options, which can't include a checkpoint.
+	 * @param roots the starting points.
+	 * @exception IllegalArgumentException       if there are no starting points,
+	 *                                           or the query has a checkpoint.
+	 * @exception MalformedPerl5PatternException if the query's regex pattern has
+	 *                                           a syntax error.
+	 */
+	public MultiRootFind(FindQuery query, String[] roots)
+			throws IllegalArgumentException, MalformedPerl5PatternException {
+		if (roots.length == 0) {
+			throw new IllegalArgumentException("No directories to search.");
+		}
+		plan = query.compile();
+		Find options = plan.newFind(roots[0]);
+		if (options.getCheckpoint() != null) {
+			throw new IllegalArgumentException("A checkpoint can't be shared by several directories.");
+		}
+		nestedRootsSearched = options.getMaxDepth() != Find.DEFAULT_MAX_DEPTH;
+		this.roots = distinctRoots(roots, !nestedRootsSearched);
+	}
+
+	/**
+	 * Return the starting points that are searched: the ones given, without
+	 * duplicates and, unless there's a maximum depth, without the ones inside
+	 * others.
+	 */
+	public String[] getRoots() {
+		return roots.clone();
+	}
+
+	/**
+	 * Specify the pool to search on. Default is a pool shared by all
+	 * MultiRootFinds, with a thread per processor, or as many as the
+	 * <b>javafind.threads</b> system property says.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Return the pool that MultiRootFinds search on unless told otherwise.
+	 */
+	public static synchronized ForkJoinPool getDefaultPool() {
+		if (defaultPool == null) {
+			defaultPool = new ForkJoinPool(
+					Integer.getInteger("javafind.threads", Runtime.getRuntime().availableProcessors()).intValue());
+		}
+		return defaultPool;
+	}
+
+	/**
+	 * Search, and return all of the matches, or print them if the query says
+	 * so.
+	 */
+	public FindResult search() throws IOException {
+		return search(null, null);
+	}
+
+	/**
+	 * Search, passing each match on to the given consumer along with its
+	 * starting point. The result then holds no paths, only the count.
+	 *
+	 * @param consumer may be null, to collect or print the matches.
+	 * @param token    may be null.
+	 */
+	public FindResult search(final RootedConsumer consumer, CancellationToken token) throws IOException {
+		final Find find = plan.newFind(roots[0]);
+		find.setCancellationToken(token);
+		find.setRoots(roots, pool != null ? pool : getDefaultPool(), nestedRootsSearched);
+		MatchConsumer output = null;
+		if (consumer != null) {
+			output = new MatchConsumer() {
+				public void receive(String path) {
+					consumer.receive(find.startPointOf(path), path);
+				}
+
+				public void receive(String path, int depth, FileStat stat) {
+					consumer.receive(find.startPointOf(path), path);
+				}
+			};
+		}
+		find.setOutput(output);
+		return find.search();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Return the given roots without the ones that name the same directory as
+	 * an earlier one, and, if asked to, without the ones inside another.
+	 */
+	private static String[] distinctRoots(String[] roots, boolean dropNested) {
+		String[] canonical = new String[roots.length];
+		for (int i = 0; i < roots.length; i++) {
+			canonical[i] = canonicalPath(roots[i]);
+		}
+		List<String> kept = new ArrayList<String>();
+		for (int i = 0; i < roots.length; i++) {
+			boolean covered = false;
+			for (int j = 0; j < roots.length && !covered; j++) {
+				if (i == j) {
+					continue;
+				}
+				if (canonical[i].equals(canonical[j])) {
+					covered = j < i; // The first one named is kept.
+				} else if (dropNested) {
+					covered = isInside(canonical[i], canonical[j]);
+				}
+			}
+			if (!covered) {
+				kept.add(roots[i]);
+			}
+		}
+		return kept.toArray(new String[kept.size()]);
+	}
+
+	private static String canonicalPath(String path) {
+		File file = new File(path);
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+
+	/**
+	 * Return true if the first path is below the second.
+	 */
+	private static boolean isInside(String path, String directory) {
+		if (directory.endsWith(File.separator)) {
+			return path.startsWith(directory) && path.length() > directory.length();
+		}
+		return path.startsWith(directory) && path.length() > directory.length()
+				&& path.charAt(directory.length()) == File.separatorChar;
+	}
+}
@@ -0,0 +1,731 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import com.greenfabric.system.FileStat;
+
+/**
+ * A node in the compiled tree of a FindExpression. Each GNU find test is a
+ * subclass, and so are the -and, -or and -not operators.
+ * <p>
+ *
+ * Every predicate knows roughly what it costs to evaluate. A test on the name
+ * is nearly free; anything that needs the file's attributes costs a stat; and
+ * a few tests cost more than that. The operators use this to evaluate their
+ * cheapest operands first, so that a name test can decide an entry before its
+ * attributes are fetched at all. Since no test has side effects, the order
+ * doesn't change the result.
+ * <p>
+ *
+ * Each predicate can also write itself out as arguments for GNU find, which is
+ * how expressions are handed to the native engine.
+ */
+abstract class Predicate {
+
+	/*
+	 * Relative costs
+	 */
+	static final int COST_NAME = 1;
+
+	static final int COST_STAT = 10;
+
+	static final int COST_OWNER = 20;
+
+	static final int COST_LIST = 40;
+
+	/**
+	 * Return true if the entry passes this test.
+	 */
+	abstract boolean test(FindEntry entry);
+
+	/**
+	 * Return the relative cost of evaluating this test.
+	 */
+	abstract int cost();
+
+	/**
+	 * Return true if this test needs the file's attributes.
+	 */
+	boolean needsStat() {
+		return cost() >= COST_STAT;
+	}
+
+	/**
+	 * Add the GNU find arguments for this test to the list. The arguments are
+	 * not quoted for the shell.
+	 */
+	abstract void appendNative(List<String> args);
+
+	/**
+	 * Return an equivalent predicate whose operands are in the cheapest
+	 * evaluation order.
+	 */
+	Predicate optimize() {
+		return this;
+	}
+
+	public String toString() {
+		List<String> args = new ArrayList<String>();
+		appendNative(args);
+		StringBuffer b = new StringBuffer();
+		for (int i = 0; i < args.size(); i++) {
+			if (i != 0)
+				b.append(' ');
+			b.append(args.get(i));
+		}
+		return b.toString();
+	}
+
+	private static final Comparator<Predicate> BY_COST = new Comparator<Predicate>() {
+		public int compare(Predicate a, Predicate b) {
+			return a.cost() - b.cost();
+		}
+	};
+
+	private static final LinkOption[][] LINK_THEN_TARGET = { { LinkOption.NOFOLLOW_LINKS }, {} };
+
+	/**
+	 * Return the name of the user or group with the given id, looked up
+	 * through a file that has it, and remember it in the given cache. The
+	 * name is read together with the id, from the same stat, so that they're
+	 * sure to belong together: the id may be that of a symbolic link or of
+	 * its target, so the link is tried first, then the target.
+	 *
+	 * @param idAttribute   "uid" or "gid".
+	 * @param nameAttribute "owner" or "group", to go with it.
+	 * @return the id as a string, if neither has it anymore, or names can't be
+	 *         read on this platform.
+	 * @exception IOException if the file can't be read.
+	 */
+	static String principalName(File file, int id, String idAttribute, String nameAttribute,
+			Map<Integer, String> cache) throws IOException {
+		Integer key = Integer.valueOf(id);
+		String name = cache.get(key);
+		if (name != null) {
+			return name;
+		}
+		Path path = file.toPath();
+		for (int i = 0; i < LINK_THEN_TARGET.length; i++) {
+			Map<String, Object> attributes;
+			try {
+				attributes = Files.readAttributes(path, "unix:" + idAttribute + "," + nameAttribute,
+						LINK_THEN_TARGET[i]);
+			} catch (UnsupportedOperationException e) {
+				return String.valueOf(id); // No unix view.
+			}
+			if (((Integer) attributes.get(idAttribute)).intValue() == id) {
+				name = ((Principal) attributes.get(nameAttribute)).getName();
+				cache.put(key, name);
+				return name;
+			}
+		}
+		return String.valueOf(id);
+	}
+
+	/*
+	 * OPERATORS
+	 */
+
+	/**
+	 * The base of -and and -or: a list of operands.
+	 */
+	abstract static class Operator extends Predicate {
+		final Predicate[] operands;
+
+		Operator(Predicate[] operands) {
+			this.operands = operands;
+		}
+
+		int cost() {
+			int sum = 0;
+			for (int i = 0; i < operands.length; i++) {
+				sum += operands[i].cost();
+			}
+			return sum;
+		}
+
+		boolean needsStat() {
+			for (int i = 0; i < operands.length; i++) {
+				if (operands[i].needsStat())
+					return true;
+			}
+			return false;
+		}
+
+		abstract String operatorName();
+
+		abstract Predicate create(Predicate[] operands);
+
+		/**
+		 * Flatten nested operators of the same kind, and sort the operands by cost.
+		 * The sort is stable, so equal-cost tests keep the order they were given in.
+		 */
+		Predicate optimize() {
+			List<Predicate> flat = new ArrayList<Predicate>();
+			for (int i = 0; i < operands.length; i++) {
+				Predicate p = operands[i].optimize();
+				if (p.getClass() == getClass()) {
+					Collections.addAll(flat, ((Operator) p).operands);
+				} else {
+					flat.add(p);
+				}
+			}
+			Collections.sort(flat, BY_COST);
+			return create(flat.toArray(new Predicate[flat.size()]));
+		}
+
+		void appendNative(List<String> args) {
+			args.add("(");
+			for (int i = 0; i < operands.length; i++) {
+				if (i != 0)
+					args.add(operatorName());
+				operands[i].appendNative(args);
+			}
+			args.add(")");
+		}
+	}
+
+	static final class And extends Operator {
+		And(Predicate[] operands) {
+			super(operands);
+		}
+
+		boolean test(FindEntry entry) {
+			for (int i = 0; i < operands.length; i++) {
+				if (!operands[i].test(entry))
+					return false;
+			}
+			return true;
+		}
+
+		String operatorName() {
+			return "-a";
+		}
+
+		Predicate create(Predicate[] operands) {
+			return new And(operands);
+		}
+	}
+
+	static final class Or extends Operator {
+		Or(Predicate[] operands) {
+			super(operands);
+		}
+
+		boolean test(FindEntry entry) {
+			for (int i = 0; i < operands.length; i++) {
+				if (operands[i].test(entry))
+					return true;
+			}
+			return false;
+		}
+
+		String operatorName() {
+			return "-o";
+		}
+
+		Predicate create(Predicate[] operands) {
+			return new Or(operands);
+		}
+	}
+
+	static final class Not extends Predicate {
+		private final Predicate operand;
+
+		Not(Predicate operand) {
+			this.operand = operand;
+		}
+
+		boolean test(FindEntry entry) {
+			return !operand.test(entry);
+		}
+
+		int cost() {
+			return operand.cost();
+		}
+
+		boolean needsStat() {
+			return operand.needsStat();
+		}
+
+		Predicate optimize() {
+			Predicate p = operand.optimize();
+			if (p instanceof Not) {
+				return ((Not) p).operand;
+			}
+			return new Not(p);
+		}
+
+		void appendNative(List<String> args) {
+			args.add("!");
+			operand.appendNative(args);
+		}
+	}
+
+	/*
+	 * TESTS
+	 */
+
+	/**
+	 * -name and -iname: shell glob matching on the last part of the path.
+	 */
+	static final class Name extends Predicate {
+		private final String glob;
+
+		private final boolean ignoreCase;
+
+		private final String match;
+
+		Name(String glob, boolean ignoreCase) {
+			this.glob = glob;
+			this.ignoreCase = ignoreCase;
+			this.match = ignoreCase ? glob.toLowerCase() : glob;
+		}
+
+		boolean test(FindEntry entry) {
+			String name = entry.getName();
+			return globMatches(match, ignoreCase ? name.toLowerCase() : name);
+		}
+
+		int cost() {
+			return COST_NAME;
+		}
+
+		void appendNative(List<String> args) {
+			args.add(ignoreCase ? "-iname" : "-name");
+			args.add(glob);
+		}
+	}
+
+	/**
+	 * -type: the kind of file, given as one of GNU find's letters.
+	 */
+	static final class Type extends Predicate {
+		private final char type;
+
+		private final int bits;
+
+		Type(char type) {
+			this.type = type;
+			switch (type) {
+			case 'b':
+				bits = 0060000;
+				break;
+			case 'c':
+				bits = 0020000;
+				break;
+			case 'd':
+				bits = 0040000;
+				break;
+			case 'p':
+				bits = 0010000;
+				break;
+			case 'f':
+				bits = 0100000;
+				break;
+			case 'l':
+				bits = 0120000;
+				break;
+			case 's':
+				bits = 0140000;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown argument to -type: " + type);
+			}
+		}
+
+		boolean test(FindEntry entry) {
+			try {
+				return (entry.getStat().getMode() & 0170000) == bits;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		int cost() {
+			return COST_STAT;
+		}
+
+		void appendNative(List<String> args) {
+			args.add("-type");
+			args.add(String.valueOf(type));
+		}
+	}
+
+	/**
+	 * The comparison used by the numeric tests: "+n" means more than n, "-n"
+	 * means less than n, and "n" means exactly n.
+	 */
+	static final class Comparison {
+		final int sign;
+
+		final long value;
+
+		final String text;
+
+		Comparison(String text, long value) {
+			this.text = text;
+			this.sign = text.startsWith("+") ? 1 : text.startsWith("-") ? -1 : 0;
+			this.value = value;
+		}
+
+		boolean matches(long n) {
+			if (sign > 0)
+				return n > value;
+			if (sign < 0)
+				return n < value;
+			return n == value;
+		}
+	}
+
+	/**
+	 * -size: the size in units, rounded up, like GNU find.
+	 */
+	static final class Size extends Predicate {
+		private final Comparison comparison;
+
+		private final long unit;
+
+		Size(Comparison comparison, long unit) {
+			this.comparison = comparison;
+			this.unit = unit;
+		}
+
+		boolean test(FindEntry entry) {
+			try {
+				long size = entry.getStat().getSize();
+				return comparison.matches((size + unit - 1) / unit);
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		int cost() {
+			return COST_STAT;
+		}
+
+		void appendNative(List<String> args) {
+			args.add("-size");
+			args.add(comparison.text);
+		}
+	}
+
+	/**
+	 * -mtime and -mmin: the age in whole days or minutes, measured from the
+	 * start of the search.
+	 */
+	static final class Age extends Predicate {
+		private final String option;
+
+		private final Comparison comparison;
+
+		private final long unit;
+
+		Age(String option, Comparison comparison, long unit) {
+			this.option = option;
+			this.comparison = comparison;
+			this.unit = unit;
+		}
+
+		boolean test(FindEntry entry) {
+			try {
+				long age = entry.getNow() - entry.getStat().getLastModified();
+				return comparison.matches(Math.floorDiv(age, unit));
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		int cost() {
+			return COST_STAT;
+		}
+
+		void appendNative(List<String> args) {
+			args.add(option);
+			args.add(comparison.text);
+		}
+	}
+
+	/**
+	 * -newer: modified more recently than a reference file. The reference is
+	 * stat'ed once, when the expression is compiled, and find(1) is given the
+	 * time it had then, not the file, so that both engines compare against
+	 * the same time however often the expression is reused.
+	 */
+	static final class Newer extends Predicate {
+		private final long time;
+
+		Newer(long time) {
+			this.time = time;
+		}
+
+		boolean test(FindEntry entry) {
+			try {
+				return entry.getStat().getLastModified() > time;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		int cost() {
+			return COST_STAT;
+		}
+
+		void appendNative(List<String> args) {
+			// Later than the last nanosecond of the millisecond, as in test().
+			args.add("-newermt");
+			args.add(GnuNativeFind.epochDate(time) + "999999");
+		}
+	}
+
+	/**
+	 * -perm: "mode" means exactly these permissions, "-mode" means at least
+	 * these, and "/mode" means any of these.
+	 */
+	static final class Perm extends Predicate {
+		private final String text;
+
+		private final char kind;
+
+		private final int mode;
+
+		Perm(String text) {
+			this.text = text;
+			String octal = text;
+			if (text.startsWith("-") || text.startsWith("/")) {
+				kind = text.charAt(0);
+				octal = text.substring(1);
+			} else {
+				kind = '=';
+			}
+			try {
+				mode = Integer.parseInt(octal, 8);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Only octal modes are supported by -perm: " + text);
+			}
+		}
+
+		boolean test(FindEntry entry) {
+			int perm;
+			try {
+				perm = entry.getStat().getPermissions();
+			} catch (IOException e) {
+				return false;
+			}
+			switch (kind) {
+			case '-':
+				return (perm & mode) == mode;
+			case '/':
+				return mode == 0 || (perm & mode) != 0;
+			default:
+				return perm == mode;
+			}
+		}
+
+		int cost() {
+			return COST_STAT;
+		}
+
+		void appendNative(List<String> args) {
+			args.add("-perm");
+			args.add(text);
+		}
+	}
+
+	/**
+	 * -user: owned by the given user name or numeric id. Translating a uid to
+	 * a name is a lookup in the user database, so it's done once per uid and
+	 * remembered, for every search in the JVM.
+	 */
+	static final class User extends Predicate {
+		private static final Map<Integer, String> names = new Hashtable<Integer, String>();
+
+		private final String user;
+
+		private final int uid;
+
+		User(String user) {
+			this.user = user;
+			int id = -1;
+			try {
+				id = Integer.parseInt(user);
+			} catch (NumberFormatException e) {
+				// A name, not a number.
+			}
+			uid = id;
+		}
+
+		boolean test(FindEntry entry) {
+			try {
+				int owner = entry.getStat().getUid();
+				if (uid != -1) {
+					return owner == uid;
+				}
+				return user.equals(ownerName(entry.getFile(), owner));
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Return the name of the given uid, which the given file, or its target
+		 * if it's a symbolic link, has.
+		 */
+		static String ownerName(File file, int owner) throws IOException {
+			return principalName(file, owner, "uid", "owner", names);
+		}
+
+		int cost() {
+			return uid == -1 ? COST_OWNER : COST_STAT;
+		}
+
+		void appendNative(List<String> args) {
+			args.add("-user");
+			args.add(user);
+		}
+	}
+
+	/**
+	 * -empty: an empty regular file, or a directory with nothing in it.
+	 */
+	static final class Empty extends Predicate {
+		boolean test(FindEntry entry) {
+			try {
+				FileStat stat = entry.getStat();
+				if (stat.isFile()) {
+					return stat.getSize() == 0;
+				}
+				if (stat.isDirectory()) {
+					String[] contents = entry.getFile().list();
+					return contents != null && contents.length == 0;
+				}
+				return false;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		int cost() {
+			return COST_LIST;
+		}
+
+		void appendNative(List<String> args) {
+			args.add("-empty");
+		}
+	}
+
+	/*
+	 * GLOB MATCHING
+	 */
+
+	/**
+	 * Match a name against a shell glob, supporting *, ?, [...] character
+	 * classes (with ranges, and ! or ^ for negation) and backslash escapes.
+	 * This is done by hand instead of translating the glob into a regex, because
+	 * it's simple, it needs no compiled state, and it's safe to use from any
+	 * number of threads.
+	 */
+	static boolean globMatches(String glob, String name) {
+		int g = 0, n = 0;
+		int starG = -1, starN = -1;
+		while (n < name.length()) {
+			if (g < glob.length()) {
+				char c = glob.charAt(g);
+				if (c == '*') {
+					starG = g++;
+					starN = n;
+					continue;
+				}
+				int next = matchOne(glob, g, name.charAt(n));
+				if (next != -1) {
+					g = next;
+					n++;
+					continue;
+				}
+			}
+			if (starG == -1) {
+				return false;
+			}
+			// Let the last star swallow one more character, and try again.
+			g = starG + 1;
+			n = ++starN;
+		}
+		while (g < glob.length() && glob.charAt(g) == '*') {
+			g++;
+		}
+		return g == glob.length();
+	}
+
+	/**
+	 * Match one character against the glob element at position g. Returns the
+	 * position of the next glob element, or -1 if it doesn't match.
+	 */
+	private static int matchOne(String glob, int g, char c) {
+		char p = glob.charAt(g);
+		if (p == '?') {
+			return g + 1;
+		}
+		if (p == '\\' && g + 1 < glob.length()) {
+			return glob.charAt(g + 1) == c ? g + 2 : -1;
+		}
+		if (p == '[') {
+			int i = g + 1;
+			boolean negate = i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^');
+			if (negate)
+				i++;
+			boolean found = false;
+			boolean first = true;
+			while (i < glob.length() && (first || glob.charAt(i) != ']')) {
+				first = false;
+				char lo = glob.charAt(i);
+				char hi = lo;
+				if (i + 2 < glob.length() && glob.charAt(i + 1) == '-' && glob.charAt(i + 2) != ']') {
+					hi = glob.charAt(i + 2);
+					i += 2;
+				}
+				if (c >= lo && c <= hi)
+					found = true;
+				i++;
+			}
+			if (i >= glob.length()) {
+				// No closing bracket: treat the '[' literally.
+				return c == '[' ? g + 1 : -1;
+			}
+			return found != negate ? i + 1 : -1;
+		}
+		return p == c ? g + 1 : -1;
+	}
+}
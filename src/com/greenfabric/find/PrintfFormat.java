@@ -0,0 +1,759 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.InvalidPathException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import com.greenfabric.system.FileStat;
+
+/**
+ * An output format in the style of the -printf action of GNU find. Instead of
+ * just the name, each match is printed with whatever attributes the format
+ * asks for, e.g.
+ *
+ * <pre>
+ * find.setPrintf(&quot;%s\t%T@\t%m\t%u\t%p\n&quot;);
+ * </pre>
+ *
+ * The supported directives are:
+ *
+ * <pre>
+ *   %p path         %f name         %h leading directories
+ *   %P path below the starting point                %H starting point
+ *   %s size         %i inode        %D device       %n link count
+ *   %m permissions in octal         %M permissions like ls -l
+ *   %u user         %U uid          %g group        %G gid
+ *   %y type         %d depth        %%  a percent sign
+ *   %T@ %A@ %C@     modification, access, status change time in epoch seconds
+ *   %Tk %Ak %Ck     the same times in local time, with k one of
+ *                   Y m d H M S (year ... second), F (Y-m-d), T (H:M:S), + (F+T)
+ * </pre>
+ *
+ * A directive can have a field width, like <code>%10s</code>, and a '-' flag
+ * to left-align it, like <code>%-10u</code>. The escapes \n, \t, \r, \0, \a,
+ * \b, \f, \v, \\ and octal \NNN work as in GNU find. Like there, nothing is
+ * added at the end of a record: a format normally ends with \n.
+ * <p>
+ *
+ * A format is compiled once, into a list of field writers. Each one appends
+ * its field to a reusable byte buffer, numbers digit by digit, so printing a
+ * match doesn't build any Strings. The attributes come from the stat made
+ * during the traversal itself, or, for the native engine, from the same find
+ * process, through its own -printf. Times have millisecond precision, so their
+ * fractional digits end in zeros.
+ * <p>
+ *
+ * Formats are immutable, so one can be shared by any number of Finds.
+ *
+ * @see Find#setPrintf(String)
+ */
+public final class PrintfFormat {
+
+	/*
+	 * Field kinds. The time fields are followed by the letter of the time format.
+	 */
+	private static final int LITERAL = 0;
+
+	private static final int PATH = 1;
+
+	private static final int NAME = 2;
+
+	private static final int LEADING_DIRS = 3;
+
+	private static final int RELATIVE_PATH = 4;
+
+	private static final int START_POINT = 5;
+
+	private static final int SIZE = 6;
+
+	private static final int INODE = 7;
+
+	private static final int DEVICE = 8;
+
+	private static final int LINKS = 9;
+
+	private static final int PERM_OCTAL = 10;
+
+	private static final int PERM_SYMBOLIC = 11;
+
+	private static final int USER = 12;
+
+	private static final int UID = 13;
+
+	private static final int GROUP = 14;
+
+	private static final int GID = 15;
+
+	private static final int TYPE = 16;
+
+	private static final int DEPTH = 17;
+
+	private static final int MODIFIED = 18;
+
+	private static final int ACCESSED = 19;
+
+	private static final int CHANGED = 20;
+
+	private static final String TIME_FORMATS = "@YmdHMSFT+";
+
+	private static final Map<Integer, String> groupNames = new Hashtable<Integer, String>();
+
+	private final String format;
+
+	private final Field[] fields;
+
+	private final boolean needsStat;
+
+	private PrintfFormat(String format, Field[] fields) {
+		this.format = format;
+		this.fields = fields;
+		boolean stat = false;
+		for (int i = 0; i < fields.length; i++) {
+			stat |= fields[i].kind >= SIZE && fields[i].kind != DEPTH;
+		}
+		needsStat = stat;
+	}
+
+	/**
+	 * Compile a format.
+	 *
+	 * @exception IllegalArgumentException if the format has a directive that
+	 *                                     isn't supported.
+	 */
+	public static PrintfFormat compile(String format) throws IllegalArgumentException {
+		List<Field> fields = new ArrayList<Field>();
+		Buffer literal = new Buffer();
+		int i = 0;
+		while (i < format.length()) {
+			char c = format.charAt(i++);
+			if (c == '\\') {
+				i = unescape(format, i, literal);
+			} else if (c != '%') {
+				literal.append(String.valueOf(c));
+			} else if (i < format.length() && format.charAt(i) == '%') {
+				literal.append((byte) '%');
+				i++;
+			} else {
+				if (literal.length > 0) {
+					fields.add(new Field(LITERAL, (char) 0, literal.toByteArray(), 0, false));
+					literal.length = 0;
+				}
+
+				boolean left = false;
+				if (i < format.length() && format.charAt(i) == '-') {
+					left = true;
+					i++;
+				}
+				int width = 0;
+				while (i < format.length() && Character.isDigit(format.charAt(i))) {
+					width = width * 10 + (format.charAt(i++) - '0');
+				}
+				if (i >= format.length()) {
+					throw new IllegalArgumentException("Incomplete directive at the end of the format");
+				}
+				char directive = format.charAt(i++);
+				char time = 0;
+				if (directive == 'T' || directive == 'A' || directive == 'C') {
+					if (i >= format.length() || TIME_FORMATS.indexOf(format.charAt(i)) == -1) {
+						throw new IllegalArgumentException("Unsupported time format %" + directive
+								+ (i < format.length() ? String.valueOf(format.charAt(i)) : ""));
+					}
+					time = format.charAt(i++);
+				}
+				fields.add(new Field(kind(directive), time, null, width, left));
+			}
+		}
+		if (literal.length > 0) {
+			fields.add(new Field(LITERAL, (char) 0, literal.toByteArray(), 0, false));
+		}
+		return new PrintfFormat(format, fields.toArray(new Field[fields.size()]));
+	}
+
+	public String toString() {
+		return format;
+	}
+
+	/*
+	 * PACKAGE METHODS
+	 */
+
+	/**
+	 * Return true if printing needs the attributes of the file, not just its
+	 * path.
+	 */
+	boolean needsStat() {
+		return needsStat;
+	}
+
+	/**
+	 * Append one record to the buffer.
+	 */
+	void format(Record record, Buffer out) {
+		for (int i = 0; i < fields.length; i++) {
+			Field field = fields[i];
+			int start = out.length;
+			field.append(record, out);
+			if (out.length - start < field.width) {
+				out.pad(start, field.width, field.left);
+			}
+		}
+	}
+
+	/**
+	 * What's printed about one match. A printer keeps one of these and refills
+	 * it for every match, so that nothing is allocated per match.
+	 */
+	static final class Record {
+		String path;
+
+		/*
+		 * Where the file really is, for looking up its owner's names. It's the
+		 * same as path unless the path is shown differently.
+		 */
+		String file;
+
+		String startPoint;
+
+		int depth;
+
+		FileStat stat;
+
+		/*
+		 * The last names looked up; consecutive files mostly have the same owner.
+		 */
+		private int lastUid = -1;
+
+		private String lastUser;
+
+		private int lastGid = -1;
+
+		private String lastGroup;
+
+		String userName() {
+			int uid = stat.getUid();
+			if (uid != lastUid || lastUser == null) {
+				try {
+					lastUser = Predicate.User.ownerName(new File(file), uid);
+				} catch (IOException e) {
+					lastUser = String.valueOf(uid);
+				} catch (InvalidPathException e) {
+					lastUser = String.valueOf(uid);
+				}
+				lastUid = uid;
+			}
+			return lastUser;
+		}
+
+		String groupName() {
+			int gid = stat.getGid();
+			if (gid != lastGid || lastGroup == null) {
+				lastGroup = lookupGroup(file, gid);
+				lastGid = gid;
+			}
+			return lastGroup;
+		}
+	}
+
+	/**
+	 * A growable byte buffer that a record is formatted into. Strings are
+	 * encoded with the default charset, like standard output.
+	 */
+	static final class Buffer {
+		private static final Charset charset = Charset.defaultCharset();
+
+		byte[] bytes = new byte[256];
+
+		int length = 0;
+
+		void append(byte b) {
+			ensure(1);
+			bytes[length++] = b;
+		}
+
+		void append(String s) {
+			int n = s.length();
+			ensure(n);
+			for (int i = 0; i < n; i++) {
+				char c = s.charAt(i);
+				if (c >= 0x80) {
+					byte[] encoded = s.substring(i).getBytes(charset);
+					ensure(encoded.length);
+					System.arraycopy(encoded, 0, bytes, length, encoded.length);
+					length += encoded.length;
+					return;
+				}
+				bytes[length++] = (byte) c;
+			}
+		}
+
+		void append(String s, int from, int to) {
+			ensure(to - from);
+			for (int i = from; i < to; i++) {
+				char c = s.charAt(i);
+				if (c >= 0x80) {
+					append(s.substring(i, to));
+					return;
+				}
+				bytes[length++] = (byte) c;
+			}
+		}
+
+		/**
+		 * Append a number in decimal, with at least the given number of digits.
+		 */
+		void appendDecimal(long value, int digits) {
+			if (value < 0) {
+				append((byte) '-');
+				if (value == Long.MIN_VALUE) {
+					append("9223372036854775808");
+					return;
+				}
+				value = -value;
+			}
+			int n = 1;
+			for (long v = value / 10; v != 0; v /= 10) {
+				n++;
+			}
+			n = Math.max(n, digits);
+			ensure(n);
+			for (int i = length + n - 1; i >= length; i--) {
+				bytes[i] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+			length += n;
+		}
+
+		void appendOctal(long value) {
+			int n = 1;
+			for (long v = value >>> 3; v != 0; v >>>= 3) {
+				n++;
+			}
+			ensure(n);
+			for (int i = length + n - 1; i >= length; i--) {
+				bytes[i] = (byte) ('0' + (value & 7));
+				value >>>= 3;
+			}
+			length += n;
+		}
+
+		/**
+		 * Pad what was appended since the given position with spaces, to the given
+		 * width.
+		 */
+		void pad(int start, int width, boolean left) {
+			int padding = width - (length - start);
+			ensure(padding);
+			if (!left) {
+				System.arraycopy(bytes, start, bytes, start + padding, length - start);
+				for (int i = 0; i < padding; i++) {
+					bytes[start + i] = ' ';
+				}
+			} else {
+				for (int i = 0; i < padding; i++) {
+					bytes[length + i] = ' ';
+				}
+			}
+			length += padding;
+		}
+
+		byte[] toByteArray() {
+			byte[] copy = new byte[length];
+			System.arraycopy(bytes, 0, copy, 0, length);
+			return copy;
+		}
+
+		private void ensure(int more) {
+			if (length + more > bytes.length) {
+				byte[] bigger = new byte[Math.max(bytes.length * 2, length + more)];
+				System.arraycopy(bytes, 0, bigger, 0, length);
+				bytes = bigger;
+			}
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * One field of the format: either literal text, or a directive.
+	 */
+	private static final class Field {
+		final int kind;
+
+		final char time;
+
+		final byte[] literal;
+
+		final int width;
+
+		final boolean left;
+
+		Field(int kind, char time, byte[] literal, int width, boolean left) {
+			this.kind = kind;
+			this.time = time;
+			this.literal = literal;
+			this.width = width;
+			this.left = left;
+		}
+
+		void append(Record r, Buffer out) {
+			FileStat stat = r.stat;
+			switch (kind) {
+			case LITERAL:
+				out.ensure(literal.length);
+				System.arraycopy(literal, 0, out.bytes, out.length, literal.length);
+				out.length += literal.length;
+				break;
+			case PATH:
+				out.append(r.path);
+				break;
+			case NAME: {
+				int slash = r.path.lastIndexOf(File.separatorChar);
+				if (slash == -1 || r.path.length() == 1) {
+					out.append(r.path);
+				} else {
+					out.append(r.path, slash + 1, r.path.length());
+				}
+				break;
+			}
+			case LEADING_DIRS: {
+				int slash = r.path.lastIndexOf(File.separatorChar);
+				if (slash == -1) {
+					out.append((byte) '.');
+				} else {
+					out.append(r.path, 0, slash);
+				}
+				break;
+			}
+			case RELATIVE_PATH: {
+				int start = 0;
+				if (r.path.startsWith(r.startPoint)) {
+					start = r.startPoint.length();
+					if (start < r.path.length() && r.path.charAt(start) == File.separatorChar) {
+						start++;
+					}
+				}
+				out.append(r.path, start, r.path.length());
+				break;
+			}
+			case START_POINT:
+				out.append(r.startPoint);
+				break;
+			case SIZE:
+				out.appendDecimal(stat.getSize(), 1);
+				break;
+			case INODE:
+				out.appendDecimal(stat.getInode(), 1);
+				break;
+			case DEVICE:
+				out.appendDecimal(stat.getDevice(), 1);
+				break;
+			case LINKS:
+				out.appendDecimal(stat.getLinks(), 1);
+				break;
+			case PERM_OCTAL:
+				out.appendOctal(stat.getPermissions());
+				break;
+			case PERM_SYMBOLIC:
+				appendSymbolic(stat.getMode(), out);
+				break;
+			case USER:
+				out.append(r.userName());
+				break;
+			case UID:
+				out.appendDecimal(stat.getUid(), 1);
+				break;
+			case GROUP:
+				out.append(r.groupName());
+				break;
+			case GID:
+				out.appendDecimal(stat.getGid(), 1);
+				break;
+			case TYPE:
+				out.append((byte) typeChar(stat.getMode()));
+				break;
+			case DEPTH:
+				out.appendDecimal(r.depth, 1);
+				break;
+			case MODIFIED:
+				appendTime(stat.getLastModified(), time, out);
+				break;
+			case ACCESSED:
+				appendTime(stat.getLastAccessed(), time, out);
+				break;
+			case CHANGED:
+				appendTime(stat.getLastChanged(), time, out);
+				break;
+			}
+		}
+	}
+
+	private static int kind(char directive) {
+		switch (directive) {
+		case 'p':
+			return PATH;
+		case 'f':
+			return NAME;
+		case 'h':
+			return LEADING_DIRS;
+		case 'P':
+			return RELATIVE_PATH;
+		case 'H':
+			return START_POINT;
+		case 's':
+			return SIZE;
+		case 'i':
+			return INODE;
+		case 'D':
+			return DEVICE;
+		case 'n':
+			return LINKS;
+		case 'm':
+			return PERM_OCTAL;
+		case 'M':
+			return PERM_SYMBOLIC;
+		case 'u':
+			return USER;
+		case 'U':
+			return UID;
+		case 'g':
+			return GROUP;
+		case 'G':
+			return GID;
+		case 'y':
+			return TYPE;
+		case 'd':
+			return DEPTH;
+		case 'T':
+			return MODIFIED;
+		case 'A':
+			return ACCESSED;
+		case 'C':
+			return CHANGED;
+		default:
+			throw new IllegalArgumentException("Unsupported directive %" + directive);
+		}
+	}
+
+	/**
+	 * Append the escaped character that starts at the given index, and return
+	 * the index after it.
+	 */
+	private static int unescape(String format, int i, Buffer out) {
+		if (i >= format.length()) {
+			out.append((byte) '\\');
+			return i;
+		}
+		char c = format.charAt(i++);
+		switch (c) {
+		case 'n':
+			out.append((byte) '\n');
+			break;
+		case 't':
+			out.append((byte) '\t');
+			break;
+		case 'r':
+			out.append((byte) '\r');
+			break;
+		case 'a':
+			out.append((byte) 7);
+			break;
+		case 'b':
+			out.append((byte) '\b');
+			break;
+		case 'f':
+			out.append((byte) '\f');
+			break;
+		case 'v':
+			out.append((byte) 11);
+			break;
+		case '\\':
+			out.append((byte) '\\');
+			break;
+		default:
+			if (c >= '0' && c <= '7') {
+				int value = c - '0';
+				for (int n = 1; n < 3 && i < format.length() && format.charAt(i) >= '0' && format.charAt(i) <= '7'; n++) {
+					value = value * 8 + (format.charAt(i++) - '0');
+				}
+				out.append((byte) value);
+			} else { // Not an escape after all.
+				out.append((byte) '\\');
+				out.append(String.valueOf(c));
+			}
+		}
+		return i;
+	}
+
+	private static char typeChar(int mode) {
+		switch (mode & 0170000) {
+		case 0040000:
+			return 'd';
+		case 0120000:
+			return 'l';
+		case 0060000:
+			return 'b';
+		case 0020000:
+			return 'c';
+		case 0010000:
+			return 'p';
+		case 0140000:
+			return 's';
+		default:
+			return 'f';
+		}
+	}
+
+	/**
+	 * Append permissions the way ls -l shows them, e.g. -rwxr-xr-x.
+	 */
+	private static void appendSymbolic(int mode, Buffer out) {
+		char type = typeChar(mode);
+		out.append((byte) (type == 'f' ? '-' : type));
+		appendTriplet(mode >> 6, (mode & 04000) != 0, 's', out);
+		appendTriplet(mode >> 3, (mode & 02000) != 0, 's', out);
+		appendTriplet(mode, (mode & 01000) != 0, 't', out);
+	}
+
+	private static void appendTriplet(int bits, boolean special, char specialChar, Buffer out) {
+		out.append((byte) ((bits & 4) != 0 ? 'r' : '-'));
+		out.append((byte) ((bits & 2) != 0 ? 'w' : '-'));
+		if (special) {
+			out.append((byte) ((bits & 1) != 0 ? specialChar : Character.toUpperCase(specialChar)));
+		} else {
+			out.append((byte) ((bits & 1) != 0 ? 'x' : '-'));
+		}
+	}
+
+	/**
+	 * Append a time, given in milliseconds since the epoch, in one of the
+	 * formats of %T.
+	 */
+	private static void appendTime(long millis, char format, Buffer out) {
+		long fraction = Math.floorMod(millis, 1000L);
+		if (format == '@') {
+			out.appendDecimal(Math.floorDiv(millis, 1000L), 1);
+			appendFraction(fraction, out);
+			return;
+		}
+
+		long local = millis + TimeZone.getDefault().getOffset(millis);
+		long days = Math.floorDiv(local, 86400000L);
+		long secondOfDay = Math.floorMod(local, 86400000L) / 1000;
+
+		/*
+		 * The civil date of a day number, by the algorithm of Howard Hinnant.
+		 */
+		long z = days + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		long month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		switch (format) {
+		case 'Y':
+			out.appendDecimal(year, 4);
+			break;
+		case 'm':
+			out.appendDecimal(month, 2);
+			break;
+		case 'd':
+			out.appendDecimal(day, 2);
+			break;
+		case 'H':
+			out.appendDecimal(secondOfDay / 3600, 2);
+			break;
+		case 'M':
+			out.appendDecimal(secondOfDay / 60 % 60, 2);
+			break;
+		case 'S':
+			out.appendDecimal(secondOfDay % 60, 2);
+			appendFraction(fraction, out);
+			break;
+		case 'F':
+			appendDate(year, month, day, out);
+			break;
+		case 'T':
+			appendClock(secondOfDay, fraction, out);
+			break;
+		case '+':
+			appendDate(year, month, day, out);
+			out.append((byte) '+');
+			appendClock(secondOfDay, fraction, out);
+			break;
+		}
+	}
+
+	private static void appendDate(long year, long month, long day, Buffer out) {
+		out.appendDecimal(year, 4);
+		out.append((byte) '-');
+		out.appendDecimal(month, 2);
+		out.append((byte) '-');
+		out.appendDecimal(day, 2);
+	}
+
+	private static void appendClock(long secondOfDay, long fraction, Buffer out) {
+		out.appendDecimal(secondOfDay / 3600, 2);
+		out.append((byte) ':');
+		out.appendDecimal(secondOfDay / 60 % 60, 2);
+		out.append((byte) ':');
+		out.appendDecimal(secondOfDay % 60, 2);
+		appendFraction(fraction, out);
+	}
+
+	/**
+	 * Append milliseconds as the ten digit fraction GNU find prints.
+	 */
+	private static void appendFraction(long millis, Buffer out) {
+		out.append((byte) '.');
+		out.appendDecimal(millis, 3);
+		out.appendDecimal(0, 7);
+	}
+
+	/**
+	 * Return the name of the given gid, which the given file, or its target
+	 * if it's a symbolic link, has.
+	 */
+	private static String lookupGroup(String path, int gid) {
+		try {
+			return Predicate.principalName(new File(path), gid, "gid", "group", groupNames);
+		} catch (IOException e) {
+			return String.valueOf(gid);
+		} catch (InvalidPathException e) {
+			return String.valueOf(gid);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+/**
+ * Classes that want to hear how a long search is getting on implement this
+ * interface. The listener is called from a timer thread of the search's own,
+ * every so often while the search runs, and once more when it's done, never
+ * from the threads doing the searching, so it can't slow them down, and it
+ * doesn't need to be quick itself. Calls for one search come one at a time,
+ * and the last one may come just after search() has returned. An exception
+ * thrown by the listener goes to the thread's uncaught exception handler,
+ * and the reports go on.
+ *
+ * <pre>
+ * find.setProgressListener(new ProgressListener() {
+ * 	public void progress(FindProgress p) {
+ * 		status.setText(p.getEntries() + &quot; entries, &quot; + p.getEntriesPerSecond() + &quot;/s, in &quot; + p.getCurrentPath());
+ * 	}
+ * }, 500);
+ * </pre>
+ *
+ * @see Find#setProgressListener(ProgressListener, long)
+ */
+public interface ProgressListener {
+
+	/**
+	 * Take a report on the search.
+	 *
+	 * @param progress what the search has done so far; the last report has
+	 *                 isFinished() true.
+	 */
+	public void progress(FindProgress progress);
+}
@@ -0,0 +1,173 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the counts of a search that has a ProgressListener, and reports them
+ * to it from a timer thread. The search only adds to counters and sets the
+ * current path, once per directory, or per line of find(1)'s output; the
+ * timer thread does the rest, the last report included. Each search has a
+ * timer of its own, so that a slow listener only holds up its own reports,
+ * and one that throws doesn't stop anyone's. It's meant to be used only from
+ * within this package.
+ */
+abstract class ProgressSampler extends TimerTask {
+
+	private final Timer timer = new Timer("javafind-progress", true);
+
+	private final String root;
+
+	private final ProgressListener listener;
+
+	private final long interval;
+
+	private final long started = System.currentTimeMillis();
+
+	private final LongAdder directories = new LongAdder();
+
+	private final LongAdder entries = new LongAdder();
+
+	private volatile Object current;
+
+	private volatile boolean nativeEngine = false;
+
+	/*
+	 * Only touched by the timer thread, or under my lock at the end.
+	 */
+	private long lastTime = started;
+
+	private long lastEntries = 0;
+
+	private Object lastCurrent;
+
+	private long currentSince;
+
+	private boolean finished = false;
+
+	/**
+	 * @param interval the time between reports, in milliseconds.
+	 */
+	ProgressSampler(String root, ProgressListener listener, long interval) {
+		this.root = root;
+		this.listener = listener;
+		this.interval = interval;
+	}
+
+	/**
+	 * Return the number of matches passed on so far.
+	 */
+	abstract int getMatches();
+
+	void start() {
+		timer.schedule(this, interval, interval);
+	}
+
+	/**
+	 * Count a directory about to be listed by the Java engine.
+	 */
+	void listing(Find directory) {
+		current = directory;
+	}
+
+	/**
+	 * Count the entries of the directory just listed.
+	 */
+	void listed(int count) {
+		directories.increment();
+		entries.add(count);
+	}
+
+	/**
+	 * Note that find(1) is being run, so that the directories aren't counted.
+	 */
+	void nativeStarted() {
+		nativeEngine = true;
+	}
+
+	/**
+	 * Count a line of find(1)'s output.
+	 */
+	void nativeLine(String line) {
+		entries.increment();
+		current = line;
+	}
+
+	public void run() {
+		report(false);
+	}
+
+	/**
+	 * Stop the reports, and have the timer thread make the last one. Then the
+	 * timer's thread ends.
+	 */
+	void finish() {
+		cancel();
+		timer.schedule(new TimerTask() {
+			public void run() {
+				try {
+					report(true);
+				} finally {
+					timer.cancel();
+				}
+			}
+		}, 0);
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private synchronized void report(boolean last) {
+		if (finished) {
+			return;
+		}
+		finished = last;
+		long now = System.currentTimeMillis();
+		long seen = entries.sum();
+		long rate = now > lastTime ? (seen - lastEntries) * 1000 / (now - lastTime) : 0;
+		Object here = current;
+		if (here != lastCurrent) {
+			lastCurrent = here;
+			currentSince = now;
+		}
+		String where = here == null ? null : here.toString();
+		if (where != null && where.indexOf('\0') != -1) { // A line with attributes after the path.
+			where = where.substring(0, where.indexOf('\0'));
+		}
+		long listed = directories.sum();
+		FindProgress progress = new FindProgress(root, now - started, nativeEngine && listed == 0 ? -1 : listed, seen,
+				getMatches(), rate, where, here == null ? 0 : now - currentSince, last);
+		lastTime = now;
+		lastEntries = seen;
+		try {
+			listener.progress(progress);
+		} catch (RuntimeException e) { // Reported like an uncaught one, but the timer goes on.
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+}
@@ -36,8 +36,8 @@ import org.apache.oro.text.perl.*;
  **/
 public final class RegexFilenameFilter implements FilenameFilter {
   
-	private static Perl5Util regex = new Perl5Util();
 	private String	pattern;
+	private volatile CompiledRegex regex;	// Compiled when first needed
 
 	/**
 	 * Constructs a new RegexFilenameFilter that uses the given
@@ -61,6 +61,23 @@ public final class RegexFilenameFilter implements FilenameFilter {
 	 **/
 	public boolean accept(File dir, String name) 
 			    throws MalformedPerl5PatternException {
-	    return regex.match(pattern, name);
+	    return compile().matches(name);
+	}
+
+
+	/**
+	 * Compile the pattern, if that hasn't been done yet.  Once it is,
+	 * I can be used by many threads at once.
+	 *
+	 * @exception	MalformedPerl5PatternException	if the pattern was
+	 *							not valid.
+	 **/
+	CompiledRegex compile() throws MalformedPerl5PatternException {
+	    CompiledRegex r = regex;
+	    if (r == null) {
+		r = CompiledRegex.compile(pattern);
+		regex = r;
+	    }
+	    return r;
 	}
 }
@@ -0,0 +1,43 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+/**
+ * Classes that handle the output of a search of several starting points
+ * implement this interface. Each match comes with the starting point it was
+ * found under. Matches are passed on one at a time, so an implementation
+ * doesn't have to be thread-safe, but they come from different threads, in no
+ * particular order unless the search is sorted.
+ *
+ * @see MultiRootFind
+ */
+public interface RootedConsumer {
+
+	/**
+	 * Take a match.
+	 *
+	 * @param root the starting point, as given to the MultiRootFind.
+	 * @param path the match's pathname, which begins with the root.
+	 */
+	public void receive(String root, String path);
+}
@@ -0,0 +1,295 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.greenfabric.system.CancellationToken;
+
+/**
+ * Runs searches in the background, on a fixed number of threads, so that
+ * callers like request threads in a server don't block on them. Each search
+ * returns a CompletableFuture right away.
+ * <p>
+ *
+ * The number of threads bounds how many searches, and so how many native find
+ * processes, run at once; the rest wait in a queue. The queue is bounded too.
+ * When it's full, the executor's rejection policy decides what happens to a
+ * new search: it fails (REJECT), runs in the submitting thread, which slows
+ * the submitter down (CALLER_RUNS), or takes the place of the search that has
+ * waited longest, which fails instead (DISCARD_OLDEST). A search that fails
+ * this way completes with a RejectedExecutionException.
+ * <p>
+ *
+ * Cancelling a future stops its search: a waiting search never starts, and a
+ * running one stops as if its CancellationToken had been cancelled, killing
+ * the native processes if there are any. The FindResult tells how long the
+ * search waited and how long it ran.
+ * <p>
+ *
+ * All Finds share one default executor unless told otherwise. Its size can be
+ * set with the system properties <b>javafind.threads</b> (default: the number
+ * of processors) and <b>javafind.queue</b> (default: 1024).
+ *
+ * <pre>
+ * Find find = new Find(&quot;/home/shared&quot;);
+ * find.setPattern(&quot;/\\.pdf$/&quot;);
+ * find.setTimeout(5000);
+ * find.searchAsync().thenAccept(result -&gt; respond(result.getPaths()));
+ * </pre>
+ *
+ * @see Find#searchAsync()
+ */
+public final class SearchExecutor {
+
+	/**
+	 * When the queue is full, fail the new search.
+	 */
+	public static final int REJECT = 0;
+
+	/**
+	 * When the queue is full, run the new search in the thread that submits
+	 * it.
+	 */
+	public static final int CALLER_RUNS = 1;
+
+	/**
+	 * When the queue is full, fail the search that has waited longest, and
+	 * queue the new one.
+	 */
+	public static final int DISCARD_OLDEST = 2;
+
+	/**
+	 * The default number of searches that can wait.
+	 */
+	public static final int DEFAULT_QUEUE_LIMIT = 1024;
+
+	private static SearchExecutor defaultExecutor;
+
+	private final ThreadPoolExecutor pool;
+
+	private final int rejectionPolicy;
+
+	/**
+	 * Constructs a new SearchExecutor. Its threads are daemon threads, so they
+	 * don't keep the JVM running.
+	 *
+	 * @param threads         how many searches can run at once.
+	 * @param queueLimit      how many more can wait.
+	 * @param rejectionPolicy REJECT, CALLER_RUNS or DISCARD_OLDEST.
+	 * @exception IllegalArgumentException if a number isn't positive, or the
+	 *                                      policy isn't one of these.
+	 */
+	public SearchExecutor(int threads, int queueLimit, int rejectionPolicy) throws IllegalArgumentException {
+		if (threads < 1 || queueLimit < 1) {
+			throw new IllegalArgumentException("threads and queueLimit must be at least 1");
+		}
+		if (rejectionPolicy < REJECT || rejectionPolicy > DISCARD_OLDEST) {
+			throw new IllegalArgumentException("Unknown rejection policy: " + rejectionPolicy);
+		}
+		this.rejectionPolicy = rejectionPolicy;
+		pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueLimit),
+				new ThreadFactory() {
+					private int count = 0;
+
+					public synchronized Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "javafind-search-" + (++count));
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Return the executor that Find.searchAsync() uses. It's created when
+	 * first needed, and rejects searches when its queue is full.
+	 */
+	public static synchronized SearchExecutor getDefault() {
+		if (defaultExecutor == null) {
+			int threads = Integer.getInteger("javafind.threads", Runtime.getRuntime().availableProcessors())
+					.intValue();
+			int queueLimit = Integer.getInteger("javafind.queue", DEFAULT_QUEUE_LIMIT).intValue();
+			defaultExecutor = new SearchExecutor(threads, queueLimit, REJECT);
+		}
+		return defaultExecutor;
+	}
+
+	/**
+	 * Replace the default executor. The old one isn't shut down: searches
+	 * already given to it still run.
+	 */
+	public static synchronized void setDefault(SearchExecutor executor) {
+		defaultExecutor = executor;
+	}
+
+	/**
+	 * Start a search with the given Find's current options. The options are
+	 * copied, so the Find can be changed or reused right away. Its exec action,
+	 * content search, metrics, progress listener and profile are used by the
+	 * search, as they would be by Find.search(). If the Find has a
+	 * CancellationToken, cancelling it stops the search, too.
+	 */
+	public CompletableFuture<FindResult> submit(Find find) {
+		return submit(find.copyForSearch(), find.getCancellationToken());
+	}
+
+	/**
+	 * Start running the given plan against the given directory.
+	 *
+	 * @param token may be null.
+	 */
+	public CompletableFuture<FindResult> submit(FindPlan plan, String directoryName, CancellationToken token) {
+		return submit(plan.newFind(directoryName), token);
+	}
+
+	/**
+	 * Return the number of searches waiting to start.
+	 */
+	public int getQueueSize() {
+		return pool.getQueue().size();
+	}
+
+	/**
+	 * Return the number of searches running now.
+	 */
+	public int getActiveCount() {
+		return pool.getActiveCount();
+	}
+
+	/**
+	 * Stop accepting new searches. The ones already submitted still run.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Start the given Find, which is mine alone, searching.
+	 */
+	private CompletableFuture<FindResult> submit(Find find, CancellationToken token) {
+		final Task task = new Task(find, token);
+		task.future.whenComplete(new BiConsumer<FindResult, Throwable>() {
+			public void accept(FindResult result, Throwable failure) {
+				if (task.future.isCancelled()) {
+					task.stop.cancel();
+					pool.remove(task);
+				}
+			}
+		}); // A cancelled future stops the search, or takes it out of the queue.
+
+		try {
+			pool.execute(task);
+		} catch (RejectedExecutionException e) {
+			reject(task);
+		}
+		return task.future;
+	}
+
+	/**
+	 * Apply the rejection policy to a search that the pool didn't take.
+	 */
+	private void reject(Task task) {
+		if (pool.isShutdown()) {
+			task.fail("The search executor has been shut down.");
+		} else if (rejectionPolicy == CALLER_RUNS) {
+			task.run();
+		} else if (rejectionPolicy == DISCARD_OLDEST) {
+			Task oldest = (Task) pool.getQueue().poll();
+			if (oldest != null) {
+				oldest.fail("Discarded for a newer search: the search queue is full.");
+			}
+			try {
+				pool.execute(task);
+			} catch (RejectedExecutionException e) {
+				task.fail("The search queue is full.");
+			}
+		} else {
+			task.fail("The search queue is full.");
+		}
+	}
+
+	/**
+	 * One search, and the future it completes.
+	 */
+	private static final class Task implements Runnable {
+		final Find find;
+
+		final CompletableFuture<FindResult> future = new CompletableFuture<FindResult>();
+
+		/*
+		 * Cancelled by the future's cancel(), or by the caller's token.
+		 */
+		final CancellationToken stop = new CancellationToken();
+
+		final CancellationToken callerToken;
+
+		final long submitted = System.nanoTime();
+
+		Task(Find find, CancellationToken callerToken) {
+			this.find = find;
+			this.callerToken = callerToken;
+		}
+
+		public void run() {
+			if (future.isDone()) {
+				return; // Cancelled while it waited.
+			}
+			long queued = System.nanoTime() - submitted;
+			Runnable relay = new Runnable() {
+				public void run() {
+					stop.cancel();
+				}
+			};
+			if (callerToken != null) {
+				callerToken.addListener(relay);
+			}
+			try {
+				find.setCancellationToken(stop);
+				future.complete(find.search().withQueueTime(queued));
+			} catch (Exception e) {
+				future.completeExceptionally(e);
+			} catch (Error e) {
+				future.completeExceptionally(e);
+				throw e;
+			} finally {
+				if (callerToken != null) {
+					callerToken.removeListener(relay);
+				}
+			}
+		}
+
+		void fail(String message) {
+			future.completeExceptionally(new RejectedExecutionException(message));
+		}
+	}
+}
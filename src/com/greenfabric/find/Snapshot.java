@@ -0,0 +1,491 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.greenfabric.system.FileStat;
+import com.greenfabric.system.SystemPack;
+
+/**
+ * Records what a directory tree looks like, and reports what changed since.
+ * A snapshot is a file holding the path, size, modification time and inode of
+ * every entry under a root, sorted by path. Two snapshots are compared with a
+ * streaming merge, so neither has to fit in memory.
+ * <p>
+ *
+ * The more useful case is to diff a snapshot against the live file system. A
+ * directory's modification time changes whenever an entry is added to it or
+ * removed from it, so when a directory's time is the same as in the snapshot,
+ * its listing is taken from the snapshot instead of being read again. The
+ * entries themselves still get stat'ed, because changing a file's contents
+ * doesn't touch its directory.
+ * <p>
+ *
+ * Snapshots are normally made and diffed through a Find, which supplies the
+ * root, the directories to exclude, the maximum depth and whether to follow
+ * symbolic links. The regex and file type options don't affect what is
+ * recorded; they only filter the changes reported by a live diff.
+ *
+ * <pre>
+ * Find find = new Find(&quot;/srv/data&quot;);
+ * find.writeSnapshot(new File(&quot;data.snap&quot;));
+ * ...
+ * find.diffSnapshot(new File(&quot;data.snap&quot;), myChangeConsumer);
+ * </pre>
+ *
+ * @see Find#writeSnapshot(File)
+ * @see Find#diffSnapshot(File, ChangeConsumer)
+ */
+public final class Snapshot {
+
+	private final boolean follow;
+
+	private final int maxDepth;
+
+	private final Set<File> excludes = new HashSet<File>();
+
+	/**
+	 * The find whose regex and file type options filter the reported changes.
+	 */
+	private final Find filter;
+
+	private SnapshotWriter writer;
+
+	private SnapshotReader reader;
+
+	private ChangeConsumer consumer;
+
+	/**
+	 * Directories last modified before this time can have their listing taken
+	 * from the snapshot.
+	 */
+	private long trustedBefore;
+
+	private Snapshot(Find find) {
+		follow = find.getFollow();
+		maxDepth = find.getMaxDepth();
+		excludes.addAll(Arrays.asList(find.getDirectoriesToExclude()));
+		filter = find;
+	}
+
+	/*
+	 * PUBLIC SERVICES
+	 */
+
+	/**
+	 * Compare two snapshot files, sending every difference to the consumer.
+	 *
+	 * @param older the snapshot to compare from.
+	 * @param newer the snapshot to compare to.
+	 * @exception IOException if either file can't be read, or isn't a snapshot.
+	 */
+	public static void diff(File older, File newer, ChangeConsumer consumer) throws IOException {
+		SnapshotReader before = new SnapshotReader(older);
+		try {
+			SnapshotReader after = new SnapshotReader(newer);
+			try {
+				SnapshotEntry a = before.next();
+				SnapshotEntry b = after.next();
+				while (a != null || b != null) {
+					int c;
+					if (a == null) {
+						c = 1;
+					} else if (b == null) {
+						c = -1;
+					} else {
+						c = comparePaths(a.getPath(), b.getPath());
+					}
+
+					if (c < 0) {
+						consumer.removed(a);
+						a = before.next();
+					} else if (c > 0) {
+						consumer.added(b);
+						b = after.next();
+					} else {
+						if (a.differsFrom(b)) {
+							consumer.modified(a, b);
+						}
+						a = before.next();
+						b = after.next();
+					}
+				}
+			} finally {
+				after.close();
+			}
+		} finally {
+			before.close();
+		}
+	}
+
+	/**
+	 * Compare two relative paths in snapshot order. This is the order a
+	 * depth-first traversal produces when each directory listing is sorted: the
+	 * path separator sorts before every other character, so that a directory's
+	 * contents come right after it, and before its next sibling.
+	 */
+	public static int comparePaths(String a, String b) {
+		int n = Math.min(a.length(), b.length());
+		for (int i = 0; i < n; i++) {
+			char ca = a.charAt(i);
+			char cb = b.charAt(i);
+			if (ca != cb) {
+				if (ca == File.separatorChar)
+					return -1;
+				if (cb == File.separatorChar)
+					return 1;
+				return ca - cb;
+			}
+		}
+		return a.length() - b.length();
+	}
+
+	/*
+	 * PACKAGE SERVICES, called by Find.
+	 */
+
+	/**
+	 * Walk the tree under the given find, writing every entry to a new snapshot
+	 * file.
+	 */
+	static void record(Find find, File snapshotFile) throws IOException {
+		Snapshot snapshot = new Snapshot(find);
+		SnapshotEntry root = snapshot.entry(find, "");
+		if (root == null) {
+			throw new IOException(find + " does not exist");
+		}
+
+		snapshot.writer = new SnapshotWriter(snapshotFile, find.getPath(), System.currentTimeMillis());
+		try {
+			snapshot.writer.write(root);
+			if (snapshot.isDescendable(root, 0)) {
+				snapshot.walkAdded(find, "", 1);
+			}
+			snapshot.writer.commit();
+		} catch (IOException e) {
+			snapshot.writer.abort();
+			throw e;
+		}
+	}
+
+	/**
+	 * Diff the live tree under the given find against a snapshot. The reader is
+	 * closed when the diff is done.
+	 *
+	 * @param newSnapshotFile if not null, a new snapshot of the live tree is
+	 *                        written here during the same traversal.
+	 */
+	static void diff(Find find, SnapshotReader reader, ChangeConsumer consumer, File newSnapshotFile)
+			throws IOException {
+		Snapshot snapshot = new Snapshot(find);
+		snapshot.consumer = consumer;
+		long started = System.currentTimeMillis();
+		snapshot.reader = reader;
+
+		/*
+		 * A directory modified in the same clock tick that the snapshot's traversal
+		 * began might have changed again after it was listed, without its time
+		 * changing. File systems with one-second timestamps make that tick a whole
+		 * second long, so only times in earlier seconds are trusted.
+		 */
+		snapshot.trustedBefore = Checkpoint.floorSeconds(reader.getCreated());
+		try {
+			if (newSnapshotFile != null) {
+				snapshot.writer = new SnapshotWriter(newSnapshotFile, find.getPath(), started);
+			}
+			snapshot.diffRoot(find);
+
+			/*
+			 * Close before committing, in case the new snapshot replaces the old one. A
+			 * search that was stopped early has an incomplete snapshot, which must not
+			 * replace anything.
+			 */
+			snapshot.reader.close();
+			if (snapshot.writer != null) {
+				if (find.isStopped()) {
+					snapshot.writer.abort();
+				} else {
+					snapshot.writer.commit();
+				}
+			}
+		} catch (IOException e) {
+			if (snapshot.writer != null) {
+				snapshot.writer.abort();
+			}
+			throw e;
+		} finally {
+			snapshot.reader.close();
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void diffRoot(File root) throws IOException {
+		SnapshotEntry before = reader.peek();
+		if (before != null && before.getPath().length() == 0) {
+			reader.next();
+		} else {
+			before = null;
+		}
+
+		SnapshotEntry now = entry(root, "");
+		if (now == null) {
+			if (before != null) {
+				removed(before);
+			} else {
+				skipDescendants("");
+			}
+			return;
+		}
+		compare(before, now);
+		visit(root, before, now, 0);
+		skipDescendants("");
+	}
+
+	/**
+	 * Diff the children of a directory that exists both now and in the snapshot.
+	 * When this is called, the reader is positioned at the directory's first
+	 * descendant, if it has any. When it returns, all of them have been consumed.
+	 */
+	private void diffChildren(File dir, SnapshotEntry before, SnapshotEntry now, int depth) throws IOException {
+		String prefix = childPrefix(now.getPath());
+
+		if (before.getLastModified() == now.getLastModified() && before.getInode() == now.getInode()
+				&& before.getLastModified() < trustedBefore) {
+			/*
+			 * Nothing was added or removed, so the old listing is still right.
+			 */
+			SnapshotEntry old;
+			while (!filter.isStopped() && (old = nextChild(prefix)) != null) {
+				File file = new File(dir, old.getPath().substring(prefix.length()));
+				SnapshotEntry current = excludes.contains(file) ? null : entry(file, old.getPath());
+				if (current == null) {
+					removed(old);
+				} else {
+					compare(old, current);
+					visit(file, old, current, depth);
+				}
+			}
+			return;
+		}
+
+		String[] names = dir.list();
+		if (names == null) {
+			names = new String[0];
+		}
+		Arrays.sort(names);
+		int i = 0;
+		while (!filter.isStopped()) {
+			SnapshotEntry old = peekChild(prefix);
+			String name = i < names.length ? names[i] : null;
+			if (old == null && name == null) {
+				break;
+			}
+
+			int c;
+			if (old == null) {
+				c = -1;
+			} else if (name == null) {
+				c = 1;
+			} else {
+				c = name.compareTo(old.getPath().substring(prefix.length()));
+			}
+
+			if (c > 0) { // Only in the snapshot
+				reader.next();
+				removed(old);
+				continue;
+			}
+
+			i++;
+			if (c == 0) {
+				reader.next();
+			} else {
+				old = null;
+			}
+			File file = new File(dir, name);
+			SnapshotEntry current = excludes.contains(file) ? null : entry(file, prefix + name);
+			if (current == null) { // Excluded, or vanished since it was listed.
+				if (old != null) {
+					removed(old);
+				}
+				continue;
+			}
+			compare(old, current);
+			visit(file, old, current, depth);
+		}
+	}
+
+	/**
+	 * Take care of the descendants of an entry that has just been compared.
+	 */
+	private void visit(File file, SnapshotEntry before, SnapshotEntry now, int depth) throws IOException {
+		if (!isDescendable(now, depth)) {
+			if (before != null) {
+				skipDescendants(before.getPath());
+			}
+		} else if (before != null && before.isDirectory()) {
+			diffChildren(file, before, now, depth + 1);
+		} else {
+			walkAdded(file, now.getPath(), depth + 1);
+		}
+	}
+
+	/**
+	 * Walk a part of the tree that has no counterpart in the old snapshot (or,
+	 * when recording, that there's no old snapshot for at all).
+	 */
+	private void walkAdded(File dir, String path, int depth) throws IOException {
+		String[] names = dir.list();
+		if (names == null) {
+			return;
+		}
+		Arrays.sort(names);
+		String prefix = childPrefix(path);
+		for (int i = 0; i < names.length && !filter.isStopped(); i++) {
+			File file = new File(dir, names[i]);
+			if (excludes.contains(file)) {
+				continue;
+			}
+			SnapshotEntry entry = entry(file, prefix + names[i]);
+			if (entry == null) {
+				continue;
+			}
+			if (consumer != null && accepts(entry)) {
+				consumer.added(entry);
+			}
+			if (writer != null) {
+				writer.write(entry);
+			}
+			if (isDescendable(entry, depth)) {
+				walkAdded(file, entry.getPath(), depth + 1);
+			}
+		}
+	}
+
+	/**
+	 * Report the differences between two versions of an entry, and record the
+	 * new one. Before is null if the entry is new.
+	 */
+	private void compare(SnapshotEntry before, SnapshotEntry now) throws IOException {
+		if (accepts(now)) {
+			if (before == null) {
+				consumer.added(now);
+			} else if (before.differsFrom(now)) {
+				consumer.modified(before, now);
+			}
+		}
+		if (writer != null) {
+			writer.write(now);
+		}
+	}
+
+	/**
+	 * Report an entry that is in the snapshot but no longer in the tree, along
+	 * with everything that was under it.
+	 */
+	private void removed(SnapshotEntry old) throws IOException {
+		if (accepts(old)) {
+			consumer.removed(old);
+		}
+		skipDescendants(old.getPath());
+	}
+
+	/**
+	 * Consume everything in the snapshot under the given path, reporting it all
+	 * as removed.
+	 */
+	private void skipDescendants(String path) throws IOException {
+		String prefix = childPrefix(path);
+		SnapshotEntry old;
+		while ((old = reader.peek()) != null && old.getPath().startsWith(prefix)
+				&& (prefix.length() > 0 || old.getPath().length() > 0)) {
+			reader.next();
+			if (accepts(old)) {
+				consumer.removed(old);
+			}
+		}
+	}
+
+	/**
+	 * Return the next snapshot entry if it's a direct child of the directory with
+	 * the given child prefix, or null.
+	 */
+	private SnapshotEntry peekChild(String prefix) throws IOException {
+		SnapshotEntry old = reader.peek();
+		if (old == null || !old.getPath().startsWith(prefix)
+				|| old.getPath().indexOf(File.separatorChar, prefix.length()) != -1) {
+			return null;
+		}
+		return old;
+	}
+
+	private SnapshotEntry nextChild(String prefix) throws IOException {
+		SnapshotEntry old = peekChild(prefix);
+		if (old != null) {
+			reader.next();
+		}
+		return old;
+	}
+
+	private boolean isDescendable(SnapshotEntry entry, int depth) {
+		return entry.isDirectory() && depth < maxDepth;
+	}
+
+	/**
+	 * Return true if the change to this entry is of interest, according to the
+	 * find's regex and file type options. Removed entries can't be looked at, so
+	 * the tests that need the file, like the expression, are left to the
+	 * consumer: Checkpoint applies them to what's added or modified.
+	 */
+	private boolean accepts(SnapshotEntry entry) {
+		String path = entry.getPath().length() == 0 ? filter.getAbsolutePath()
+				: new File(filter, entry.getPath()).getAbsolutePath();
+		return filter.accepts(path, entry.isDirectory());
+	}
+
+	/**
+	 * Stat a live file. Returns null if it has disappeared since its directory
+	 * was listed.
+	 */
+	private SnapshotEntry entry(File file, String path) {
+		try {
+			FileStat stat = SystemPack.getOSInfo().stat(file, follow);
+			return new SnapshotEntry(path, stat.isDirectory(), stat.getSize(), stat.getLastModified(),
+					stat.getInode());
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static String childPrefix(String path) {
+		return path.length() == 0 ? "" : path + File.separator;
+	}
+}
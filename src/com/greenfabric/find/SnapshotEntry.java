@@ -0,0 +1,104 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+/**
+ * One file or directory recorded in a snapshot. The path is relative to the
+ * root of the snapshot, and the root itself has the empty path.
+ *
+ * @see Snapshot
+ */
+public final class SnapshotEntry {
+
+	private final String path;
+
+	private final boolean directory;
+
+	private final long size;
+
+	private final long lastModified;
+
+	private final long inode;
+
+	SnapshotEntry(String path, boolean directory, long size, long lastModified, long inode) {
+		this.path = path;
+		this.directory = directory;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.inode = inode;
+	}
+
+	/**
+	 * Return my path, relative to the root of the snapshot.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Return true if I was a directory when the snapshot was taken.
+	 */
+	public boolean isDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Return the size in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Return the modification time, in milliseconds since the epoch.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Return the inode number, or 0 if the OS doesn't have inodes.
+	 */
+	public long getInode() {
+		return inode;
+	}
+
+	/**
+	 * Return true if the given entry, which has the same path as me, describes
+	 * different file contents. For plain files, a change of size, modification
+	 * time or inode counts. Directories change their modification time whenever
+	 * an entry is added or removed, and those changes are already reported for
+	 * the entries themselves, so for directories only a change of inode or type
+	 * counts.
+	 */
+	boolean differsFrom(SnapshotEntry other) {
+		if (directory != other.directory || inode != other.inode) {
+			return true;
+		}
+		return !directory && (size != other.size || lastModified != other.lastModified);
+	}
+
+	public String toString() {
+		return path;
+	}
+}
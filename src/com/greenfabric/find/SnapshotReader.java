@@ -0,0 +1,167 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a snapshot file written by SnapshotWriter, one entry at a time. Only
+ * the current entry is held in memory, so snapshots of any size can be diffed.
+ */
+final class SnapshotReader {
+
+	private final DataInputStream in;
+
+	private final String root;
+
+	private final long created;
+
+	private byte[] previous = new byte[256];
+
+	private SnapshotEntry next;
+
+	private boolean finished = false;
+
+	/**
+	 * Constructs a reader of an empty snapshot, for diffing against when there
+	 * is no snapshot yet.
+	 */
+	private SnapshotReader(String root, long created) {
+		in = null;
+		this.root = root;
+		this.created = created;
+		finished = true;
+	}
+
+	SnapshotReader(File snapshotFile) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 64 * 1024));
+		try {
+			if (in.readInt() != SnapshotWriter.MAGIC) {
+				throw new IOException(snapshotFile + " is not a snapshot file");
+			}
+			int version = in.readUnsignedByte();
+			if (version != SnapshotWriter.VERSION) {
+				throw new IOException(snapshotFile + " has unsupported snapshot version " + version);
+			}
+			root = in.readUTF();
+			created = in.readLong();
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Return a reader with no entries at all. Diffing against it reports
+	 * everything as added.
+	 */
+	static SnapshotReader empty(String root) {
+		return new SnapshotReader(root, Long.MIN_VALUE);
+	}
+
+	/**
+	 * Return the root directory the snapshot was taken of.
+	 */
+	String getRoot() {
+		return root;
+	}
+
+	/**
+	 * Return the time the snapshot's traversal started.
+	 */
+	long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Return the next entry without consuming it, or null at the end.
+	 */
+	SnapshotEntry peek() throws IOException {
+		if (next == null && !finished) {
+			next = read();
+		}
+		return next;
+	}
+
+	/**
+	 * Return and consume the next entry, or null at the end.
+	 */
+	SnapshotEntry next() throws IOException {
+		SnapshotEntry entry = peek();
+		next = null;
+		return entry;
+	}
+
+	void close() throws IOException {
+		if (in != null) {
+			in.close();
+		}
+	}
+
+	private SnapshotEntry read() throws IOException {
+		int flags;
+		try {
+			flags = in.readUnsignedByte();
+		} catch (EOFException e) {
+			throw new IOException("Snapshot is truncated");
+		}
+		if (flags == SnapshotWriter.END) {
+			finished = true;
+			return null;
+		}
+
+		int shared = (int) readVarLong();
+		int suffix = (int) readVarLong();
+		int length = shared + suffix;
+		if (length > previous.length) {
+			byte[] bigger = new byte[Math.max(length, previous.length * 2)];
+			System.arraycopy(previous, 0, bigger, 0, shared);
+			previous = bigger;
+		}
+		in.readFully(previous, shared, suffix);
+		String path = new String(previous, 0, length, StandardCharsets.UTF_8);
+
+		long size = readVarLong();
+		long lastModified = readVarLong();
+		long inode = readVarLong();
+		return new SnapshotEntry(path, (flags & SnapshotWriter.FLAG_DIRECTORY) != 0, size, lastModified, inode);
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes a snapshot file. Entries must be written in the order defined by
+ * Snapshot.comparePaths(), which is the order that a depth-first walk with
+ * sorted directory listings produces.
+ * <p>
+ *
+ * The format is kept compact, because a snapshot of a big tree has millions of
+ * entries:
+ *
+ * <pre>
+ *   header:  int magic, byte version, UTF root, long creation time
+ *   entry:   byte flags, varint shared prefix length, varint suffix length,
+ *            suffix bytes (UTF-8), varlong size, varlong mtime, varlong inode
+ *   end:     byte END
+ * </pre>
+ *
+ * Each path is stored as the number of bytes it shares with the previous path
+ * plus the remaining bytes. Since the entries are sorted, neighbours usually
+ * share their whole directory part.
+ * <p>
+ *
+ * The file is written under a temporary name and renamed into place by
+ * commit(), so a crash never leaves a truncated snapshot behind. The committed
+ * file's modification time is set to the creation time, so that native tools
+ * can compare other files' times against the snapshot itself.
+ */
+final class SnapshotWriter {
+
+	static final int MAGIC = 0x4A46534E; // "JFSN"
+
+	static final int VERSION = 1;
+
+	static final int FLAG_DIRECTORY = 1;
+
+	static final int END = 0xFF;
+
+	private final File target;
+
+	private final File temp;
+
+	private final DataOutputStream out;
+
+	private final long created;
+
+	private byte[] previous = new byte[0];
+
+	/**
+	 * Start writing a new snapshot.
+	 *
+	 * @param root    the root the entry paths are relative to.
+	 * @param created the time the traversal started. Directories modified after
+	 *                this time can't be trusted by a later diff.
+	 */
+	SnapshotWriter(File target, String root, long created) throws IOException {
+		this.target = target;
+		this.temp = new File(target.getPath() + ".tmp");
+		this.created = created;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeUTF(root);
+		out.writeLong(created);
+	}
+
+	void write(SnapshotEntry entry) throws IOException {
+		byte[] path = entry.getPath().getBytes(StandardCharsets.UTF_8);
+		int shared = 0;
+		int max = Math.min(path.length, previous.length);
+		while (shared < max && path[shared] == previous[shared]) {
+			shared++;
+		}
+
+		out.writeByte(entry.isDirectory() ? FLAG_DIRECTORY : 0);
+		writeVarLong(shared);
+		writeVarLong(path.length - shared);
+		out.write(path, shared, path.length - shared);
+		writeVarLong(entry.getSize());
+		writeVarLong(entry.getLastModified());
+		writeVarLong(entry.getInode());
+		previous = path;
+	}
+
+	/**
+	 * Finish the snapshot and move it into place, replacing any older snapshot
+	 * with the same name.
+	 */
+	void commit() throws IOException {
+		out.writeByte(END);
+		out.close();
+		temp.setLastModified(Math.max(created, 0));
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Throw away a snapshot that couldn't be completed. Any older snapshot with
+	 * the same name is left alone.
+	 */
+	void abort() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			// We're discarding it anyway.
+		}
+		temp.delete();
+	}
+
+	/**
+	 * Write a non-negative long in 7-bit groups, low bits first. Sizes, times and
+	 * inodes are all non-negative, and most of them fit in a few bytes.
+	 */
+	private void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which directories can't possibly contain a match, so that the
+ * search doesn't descend into them. It's meant to be used only from within
+ * this package.
+ * <p>
+ *
+ * This works for regexes that are anchored to a path prefix, like
+ * <code>/^\/srv\/data\/2024\//</code>. The literal part at the start of such a
+ * pattern (here <code>/srv/data/2024/</code>) is something every matching path
+ * begins with. A directory can only contain matches if it lies inside that
+ * prefix, or on the way to it. Everything else is pruned, which turns a walk of
+ * the whole tree into a walk of just the region the pattern can match.
+ * <p>
+ *
+ * The analysis is deliberately conservative: patterns that aren't anchored,
+ * that have an alternation anywhere outside of a group, or that use the
+ * extended (x) flag yield no pruner at all.
+ */
+final class SubtreePruner {
+
+	private static final String METACHARACTERS = ".[](){}*+?|^$";
+
+	private final String prefix;
+
+	private final boolean ignoreCase;
+
+	private SubtreePruner(String prefix, boolean ignoreCase) {
+		this.prefix = prefix;
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * Return a pruner for the given Perl 5 pattern, or null if the pattern
+	 * doesn't restrict matches to a path prefix.
+	 */
+	static SubtreePruner forPattern(String pattern) {
+		String body;
+		String flags;
+		int start;
+		if (pattern.startsWith("/")) {
+			start = 1;
+		} else if (pattern.startsWith("m") && pattern.length() > 1 && !Character.isLetterOrDigit(pattern.charAt(1))) {
+			start = 2;
+		} else {
+			return null;
+		}
+		char delimiter = pattern.charAt(start - 1);
+		int end = pattern.lastIndexOf(delimiter);
+		if (end < start) {
+			return null;
+		}
+		body = pattern.substring(start, end);
+		flags = pattern.substring(end + 1);
+		if (flags.indexOf('x') != -1 || hasTopLevelAlternation(body)) {
+			return null;
+		}
+
+		String prefix = literalPrefix(body);
+		if (prefix == null || prefix.length() == 0) {
+			return null;
+		}
+		return new SubtreePruner(prefix, flags.indexOf('i') != -1);
+	}
+
+	/**
+	 * Return true if the directory with the given path might contain an entry
+	 * that matches. The path must be in the same form as the paths the pattern
+	 * is matched against.
+	 */
+	boolean mayContainMatches(String directory) {
+		String dir = directory.endsWith(File.separator) ? directory : directory + File.separator;
+		if (dir.length() >= prefix.length()) {
+			return dir.regionMatches(ignoreCase, 0, prefix, 0, prefix.length());
+		}
+		return prefix.regionMatches(ignoreCase, 0, dir, 0, dir.length());
+	}
+
+	/**
+	 * Return the GNU find arguments that prune every directory which can't
+	 * contain a match. They form a clause meant to be followed by -o and the
+	 * rest of the expression:
+	 *
+	 * <pre>
+	 *   ( -type d ! ( -path /srv -o -path /srv/data -o -path '/srv/data/2024/*' ) -prune )
+	 * </pre>
+	 *
+	 * The arguments are not quoted for the shell.
+	 */
+	String[] toNativeArguments() {
+		String test = ignoreCase ? "-ipath" : "-path";
+		List<String> args = new ArrayList<String>();
+		args.add("(");
+		args.add("-type");
+		args.add("d");
+		args.add("!");
+		args.add("(");
+
+		/*
+		 * The directories on the way to the prefix...
+		 */
+		for (int i = prefix.indexOf(File.separatorChar); i != -1; i = prefix.indexOf(File.separatorChar, i + 1)) {
+			args.add(test);
+			args.add(escapeGlob(i == 0 ? File.separator : prefix.substring(0, i)));
+			args.add("-o");
+		}
+
+		/*
+		 * ... and everything inside it.
+		 */
+		args.add(test);
+		args.add(escapeGlob(prefix) + "*");
+		args.add(")");
+		args.add("-prune");
+		args.add(")");
+		return args.toArray(new String[args.size()]);
+	}
+
+	/**
+	 * Return true if the regex has a | that isn't inside a group or character
+	 * class. Such a pattern is anchored only in some of its alternatives.
+	 */
+	private static boolean hasTopLevelAlternation(String body) {
+		int depth = 0;
+		boolean inClass = false;
+		for (int i = 0; i < body.length(); i++) {
+			char c = body.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (inClass) {
+				if (c == ']')
+					inClass = false;
+			} else if (c == '[') {
+				inClass = true;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '|' && depth == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Return the literal text that every match of an anchored regex must begin
+	 * with, or null if the regex isn't anchored.
+	 */
+	private static String literalPrefix(String body) {
+		int i;
+		if (body.startsWith("^")) {
+			i = 1;
+		} else if (body.startsWith("\\A")) {
+			i = 2;
+		} else {
+			return null;
+		}
+
+		StringBuffer literal = new StringBuffer();
+		while (i < body.length()) {
+			char c = body.charAt(i);
+			int next = i + 1;
+			if (c == '\\') {
+				if (next >= body.length()) {
+					break;
+				}
+				c = body.charAt(next);
+				if (Character.isLetterOrDigit(c)) {
+					break; // A class like \d, or an assertion like \b.
+				}
+				next++;
+			} else if (METACHARACTERS.indexOf(c) != -1) {
+				break;
+			}
+
+			/*
+			 * A quantifier can make this character optional or repeat it. With +, it's
+			 * still certain to appear once.
+			 */
+			if (next < body.length()) {
+				char q = body.charAt(next);
+				if (q == '?' || q == '*' || q == '{') {
+					break;
+				}
+				if (q == '+') {
+					literal.append(c);
+					break;
+				}
+			}
+			literal.append(c);
+			i = next;
+		}
+		return literal.toString();
+	}
+
+	/**
+	 * Escape the characters that are special in find's -path globs.
+	 */
+	private static String escapeGlob(String s) {
+		StringBuffer b = new StringBuffer(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\')
+				b.append('\\');
+			b.append(c);
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,286 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.greenfabric.system.FileStat;
+import com.greenfabric.system.SystemPack;
+
+/**
+ * Keeps only the first matches in sort order, e.g. the 100 largest files. It's
+ * meant to be used only from within this package, in place of an ExternalSort,
+ * when a search is sorted and has a result limit that isn't too big.
+ * <p>
+ *
+ * Each thread that passes matches in keeps its own heap of the K best it has
+ * seen, in arrays, with the worst of them on top, so that most matches are
+ * turned away by comparing one long. Nothing is shared until the end, when
+ * the heaps are merged and the survivors passed on in order. Memory is
+ * proportional to K times the number of threads, however big the tree is.
+ * Matches with equal keys are ordered by path, as in an ExternalSort, so the
+ * output is the same whichever thread found what.
+ */
+final class TopK implements MatchConsumer {
+
+	/**
+	 * The largest K kept in heaps. Beyond this, an ExternalSort is used.
+	 */
+	static final int MAX_K = 64 * 1024;
+
+	private final int key;
+
+	private final boolean reverse;
+
+	private final int k;
+
+	private final boolean keepStats;
+
+	private final boolean follow;
+
+	private final Find find;
+
+	private final List<Heap> heaps = Collections.synchronizedList(new ArrayList<Heap>());
+
+	private final ThreadLocal<Heap> local = new ThreadLocal<Heap>() {
+		protected Heap initialValue() {
+			Heap heap = new Heap();
+			heaps.add(heap);
+			return heap;
+		}
+	};
+
+	/**
+	 * @param key       one of ExternalSort's keys.
+	 * @param reverse   true for the largest key first.
+	 * @param k         how many matches to keep.
+	 * @param keepStats true if the matches' attributes have to be passed on,
+	 *                  e.g. for a printf format.
+	 */
+	TopK(Find find, int key, boolean reverse, int k, boolean keepStats) {
+		this.key = key;
+		this.reverse = reverse;
+		this.k = k;
+		this.keepStats = keepStats;
+		this.follow = find.getFollow();
+		this.find = find;
+	}
+
+	/**
+	 * Return true if a search with the given result limit can keep its
+	 * matches in heaps.
+	 */
+	static boolean canSelect(int limit) {
+		return limit <= MAX_K;
+	}
+
+	/**
+	 * Take a match that comes without its attributes. They're fetched here, if
+	 * they're needed.
+	 */
+	public void receive(String path) {
+		FileStat stat = null;
+		if (ExternalSort.needsStat(key) || keepStats) {
+			try {
+				stat = SystemPack.getOSInfo().stat(new File(path), follow);
+			} catch (IOException e) {
+				return; // It has disappeared.
+			}
+		}
+		receive(path, Find.depthOf(path, find.startPointOf(path)), stat);
+	}
+
+	public void receive(String path, int depth, FileStat stat) {
+		local.get().offer(ExternalSort.keyOf(key, stat), path, depth, keepStats ? stat : null);
+	}
+
+	/**
+	 * Merge the threads' heaps, and pass the matches they kept on to the given
+	 * consumer, in order.
+	 */
+	void finish(MatchConsumer consumer) {
+		Heap all = new Heap();
+		for (int h = 0; h < heaps.size(); h++) {
+			Heap heap = heaps.get(h);
+			for (int i = 0; i < heap.size; i++) {
+				all.offer(heap.keys[i], heap.paths[i], heap.depths[i], heap.stats == null ? null : heap.stats[i]);
+			}
+		}
+		heaps.clear();
+
+		int n = all.size;
+		int[] order = new int[n]; // The worst comes off the heap first.
+		for (int i = n - 1; i >= 0; i--) {
+			order[i] = all.poll();
+		}
+		for (int i = 0; i < n; i++) {
+			int j = order[i];
+			consumer.receive(all.paths[j], all.depths[j], all.stats == null ? null : all.stats[j]);
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Return a negative number if the first match comes before the second in
+	 * sort order.
+	 */
+	private int compare(long key1, String path1, long key2, String path2) {
+		int c = key1 < key2 ? -1 : (key1 == key2 ? 0 : 1);
+		if (c == 0) {
+			c = Snapshot.comparePaths(path1, path2);
+		}
+		return reverse ? -c : c;
+	}
+
+	/*
+	 * PRIVATE CLASSES
+	 */
+
+	/**
+	 * The best matches one thread has seen, in a heap with the one that comes
+	 * last in sort order on top. The heap holds indexes into the other arrays,
+	 * so that the entries themselves never move.
+	 */
+	private final class Heap {
+		long[] keys = new long[Math.max(1, Math.min(k, 1024))];
+
+		String[] paths = new String[keys.length];
+
+		int[] depths = new int[keys.length];
+
+		FileStat[] stats = keepStats ? new FileStat[keys.length] : null;
+
+		int[] heap = new int[keys.length];
+
+		int size = 0;
+
+		/**
+		 * Keep the given match if it's one of the best K so far.
+		 */
+		void offer(long matchKey, String path, int depth, FileStat stat) {
+			int slot;
+			if (k <= 0) {
+				return;
+			} else if (size < k) {
+				slot = size;
+				if (slot == keys.length) {
+					grow();
+				}
+				heap[size] = slot;
+				store(slot, matchKey, path, depth, stat);
+				siftUp(size++);
+			} else {
+				slot = heap[0];
+				long worst = keys[slot];
+				if (reverse ? matchKey < worst : matchKey > worst) {
+					return; // The usual case, once the heap is full.
+				}
+				if (compare(matchKey, path, worst, paths[slot]) >= 0) {
+					return;
+				}
+				store(slot, matchKey, path, depth, stat);
+				siftDown(0);
+			}
+		}
+
+		/**
+		 * Take the top off the heap, and return the slot it was in.
+		 */
+		int poll() {
+			int top = heap[0];
+			heap[0] = heap[--size];
+			siftDown(0);
+			return top;
+		}
+
+		private void store(int slot, long matchKey, String path, int depth, FileStat stat) {
+			keys[slot] = matchKey;
+			paths[slot] = path;
+			depths[slot] = depth;
+			if (stats != null) {
+				stats[slot] = stat;
+			}
+		}
+
+		/**
+		 * Return true if the match in the first slot comes after the one in
+		 * the second, so belongs above it.
+		 */
+		private boolean above(int a, int b) {
+			return compare(keys[a], paths[a], keys[b], paths[b]) > 0;
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!above(heap[i], heap[parent])) {
+					break;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && above(heap[child + 1], heap[child])) {
+					child++;
+				}
+				if (!above(heap[child], heap[i])) {
+					break;
+				}
+				swap(i, child);
+				i = child;
+			}
+		}
+
+		private void swap(int i, int j) {
+			int t = heap[i];
+			heap[i] = heap[j];
+			heap[j] = t;
+		}
+
+		private void grow() {
+			int n = Math.min(k, keys.length * 2);
+			keys = Arrays.copyOf(keys, n);
+			paths = Arrays.copyOf(paths, n);
+			depths = Arrays.copyOf(depths, n);
+			if (stats != null) {
+				stats = Arrays.copyOf(stats, n);
+			}
+			heap = Arrays.copyOf(heap, n);
+		}
+	}
+}
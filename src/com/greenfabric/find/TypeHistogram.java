@@ -0,0 +1,419 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.find;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.oro.text.perl.MalformedPerl5PatternException;
+
+import com.greenfabric.system.CancellationToken;
+import com.greenfabric.system.FileStat;
+import com.greenfabric.system.SystemPack;
+
+/**
+ * Counts the matches of a search, and adds up their sizes, by file type and
+ * by extension: how many directories, files, symbolic links and others there
+ * are, and how many files and bytes end in .log, .jpg, and so on. Nothing
+ * but the counts is kept: no paths are collected.
+ * <p>
+ *
+ * The extension is what follows the last dot in a file's name, folded to
+ * lower case, so that .JPG and .jpg count together. Names that start with
+ * their only dot, like .profile, have none, and neither do names whose
+ * extension is longer than MAX_EXTENSION, which are mostly not extensions
+ * at all. Only regular files are counted by extension.
+ * <p>
+ *
+ * The directories are searched in parallel, like a MultiRootFind's, and each
+ * thread counts what it finds in a table of its own. An extension is looked
+ * up by hashing the end of the name in place, so no String is made for it,
+ * except the first time a thread sees it. The tables are merged when the
+ * search is over.
+ *
+ * <pre>
+ * Find options = new Find(&quot;.&quot;);
+ * TypeHistogram histogram = new TypeHistogram(new FindQuery(options));
+ * TypeHistogram.Result result = histogram.search(&quot;/data&quot;);
+ * Iterator buckets = result.getExtensions().iterator();
+ * while (buckets.hasNext()) {
+ * 	System.out.println(buckets.next());
+ * }
+ * </pre>
+ */
+public final class TypeHistogram {
+
+	/**
+	 * The longest extension counted as one.
+	 */
+	public static final int MAX_EXTENSION = 16;
+
+	public static final int DIRECTORY = 0;
+
+	public static final int FILE = 1;
+
+	public static final int SYMLINK = 2;
+
+	/**
+	 * Anything else: devices, pipes, sockets.
+	 */
+	public static final int OTHER = 3;
+
+	private static final String[] TYPE_NAMES = { "directory", "file", "symlink", "other" };
+
+	private final FindPlan plan;
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructs a new TypeHistogram that counts the matches of the given
+	 * query.
+	 *
+	 * @exception MalformedPerl5PatternException if the query's regex pattern has
+	 *                                           a syntax error.
+	 */
+	public TypeHistogram(FindQuery query) throws MalformedPerl5PatternException {
+		Find options = query.newFind(".");
+		options.setMatchStats(true); // Every match's size and type.
+		plan = new FindQuery(options).compile();
+	}
+
+	/**
+	 * Specify the pool to search on. Default is the one MultiRootFinds share.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Search the given directory, and return the counts.
+	 */
+	public Result search(String directoryName) throws IOException {
+		return search(directoryName, null);
+	}
+
+	/**
+	 * Search the given directory, and return the counts. If the token is
+	 * cancelled, the result is partial: it counts what was found up to then.
+	 *
+	 * @param token may be null.
+	 */
+	public Result search(String directoryName, CancellationToken token) throws IOException {
+		final List<Table> tables = Collections.synchronizedList(new ArrayList<Table>());
+		final ThreadLocal<Table> table = new ThreadLocal<Table>() {
+			protected Table initialValue() {
+				Table t = new Table();
+				tables.add(t);
+				return t;
+			}
+		};
+
+		String root = new File(directoryName).getPath();
+		Find find = plan.newFind(root);
+		find.setCancellationToken(token);
+		find.setRoots(new String[] { root }, pool != null ? pool : MultiRootFind.getDefaultPool(), false);
+		find.setConcurrentOutput(new MatchConsumer() {
+			public void receive(String path) {
+				receive(path, 0, null);
+			}
+
+			public void receive(String path, int depth, FileStat stat) {
+				table.get().add(path, stat);
+			}
+		});
+		FindResult result = find.search();
+
+		Table all = new Table();
+		for (int t = 0; t < tables.size(); t++) {
+			all.addAll(tables.get(t));
+		}
+		return new Result(all, result.isPartial());
+	}
+
+	/**
+	 * Return the name of the given type, e.g. "symlink".
+	 */
+	public static String getTypeName(int type) {
+		return TYPE_NAMES[type];
+	}
+
+	/**
+	 * The counts of a search.
+	 */
+	public static final class Result {
+		private final long[] typeCounts;
+
+		private final long[] typeBytes;
+
+		private final List<Bucket> extensions;
+
+		private final boolean partial;
+
+		Result(Table table, boolean partial) {
+			this.typeCounts = table.typeCounts;
+			this.typeBytes = table.typeBytes;
+			this.partial = partial;
+			List<Bucket> buckets = new ArrayList<Bucket>(table.size);
+			for (int i = 0; i < table.names.length; i++) {
+				if (table.names[i] != null) {
+					buckets.add(new Bucket(table.names[i], table.files[i], table.bytes[i]));
+				}
+			}
+			Collections.sort(buckets, new Comparator<Bucket>() {
+				public int compare(Bucket b1, Bucket b2) {
+					if (b1.bytes != b2.bytes) {
+						return b1.bytes > b2.bytes ? -1 : 1;
+					}
+					return b1.extension.compareTo(b2.extension);
+				}
+			});
+			extensions = Collections.unmodifiableList(buckets);
+		}
+
+		/**
+		 * Return true if the search stopped before it was done.
+		 */
+		public boolean isPartial() {
+			return partial;
+		}
+
+		/**
+		 * Return the number of matches of the given type, e.g. FILE.
+		 */
+		public long getCount(int type) {
+			return typeCounts[type];
+		}
+
+		/**
+		 * Return the bytes in the matches of the given type.
+		 */
+		public long getBytes(int type) {
+			return typeBytes[type];
+		}
+
+		/**
+		 * Return a Bucket for each extension, those with the most bytes first.
+		 * Files with no extension are in the one named "".
+		 */
+		public List<Bucket> getExtensions() {
+			return extensions;
+		}
+
+		public String toString() {
+			StringBuffer s = new StringBuffer("Result[");
+			for (int type = 0; type < TYPE_NAMES.length; type++) {
+				s.append(type == 0 ? "" : " ").append(TYPE_NAMES[type]).append('=').append(typeCounts[type]);
+			}
+			s.append(" extensions=").append(extensions.size()).append(partial ? " partial" : "").append(']');
+			return s.toString();
+		}
+	}
+
+	/**
+	 * The files with one extension.
+	 */
+	public static final class Bucket {
+		private final String extension;
+
+		private final long files;
+
+		private final long bytes;
+
+		Bucket(String extension, long files, long bytes) {
+			this.extension = extension;
+			this.files = files;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Return the extension, in lower case and without its dot, or "".
+		 */
+		public String getExtension() {
+			return extension;
+		}
+
+		public long getFiles() {
+			return files;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public String toString() {
+			return bytes + "\t" + files + "\t" + (extension.length() == 0 ? "(none)" : "." + extension);
+		}
+	}
+
+	/*
+	 * PRIVATE CLASSES
+	 */
+
+	/**
+	 * One thread's counts. The extensions are in an open addressing table,
+	 * with each one's hash kept beside it, so that a lookup only compares
+	 * characters when the hashes are the same.
+	 */
+	private static final class Table {
+		final long[] typeCounts = new long[TYPE_NAMES.length];
+
+		final long[] typeBytes = new long[TYPE_NAMES.length];
+
+		int[] hashes = new int[64];
+
+		String[] names = new String[64];
+
+		long[] files = new long[64];
+
+		long[] bytes = new long[64];
+
+		int size = 0;
+
+		void add(String path, FileStat stat) {
+			if (stat == null) {
+				try {
+					stat = SystemPack.getOSInfo().stat(new File(path), false);
+				} catch (IOException e) {
+					return; // It has disappeared.
+				}
+			}
+			int type = stat.isDirectory() ? DIRECTORY : stat.isSymLink() ? SYMLINK : stat.isFile() ? FILE : OTHER;
+			typeCounts[type]++;
+			typeBytes[type] += stat.getSize();
+			if (type != FILE) {
+				return;
+			}
+
+			/*
+			 * Find the extension, and hash it, folded to lower case.
+			 */
+			int end = path.length();
+			int start = end; // No extension.
+			for (int i = end - 1; i >= 0 && end - i <= MAX_EXTENSION + 1; i--) {
+				char c = path.charAt(i);
+				if (c == File.separatorChar) {
+					break;
+				}
+				if (c == '.') {
+					if (i > 0 && path.charAt(i - 1) != File.separatorChar && i < end - 1) {
+						start = i + 1;
+					}
+					break;
+				}
+			}
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + Character.toLowerCase(path.charAt(i));
+			}
+			int slot = find(hash, path, start, end - start);
+			if (names[slot] == null) {
+				char[] name = new char[end - start];
+				for (int i = start; i < end; i++) {
+					name[i - start] = Character.toLowerCase(path.charAt(i));
+				}
+				names[slot] = new String(name);
+				hashes[slot] = hash;
+				slot = added(slot);
+			}
+			files[slot]++;
+			bytes[slot] += stat.getSize();
+		}
+
+		/**
+		 * Add another table's counts to mine.
+		 */
+		void addAll(Table other) {
+			for (int type = 0; type < TYPE_NAMES.length; type++) {
+				typeCounts[type] += other.typeCounts[type];
+				typeBytes[type] += other.typeBytes[type];
+			}
+			for (int i = 0; i < other.names.length; i++) {
+				String name = other.names[i];
+				if (name == null) {
+					continue;
+				}
+				int slot = find(other.hashes[i], name, 0, name.length());
+				if (names[slot] == null) {
+					names[slot] = name;
+					hashes[slot] = other.hashes[i];
+					slot = added(slot);
+				}
+				files[slot] += other.files[i];
+				bytes[slot] += other.bytes[i];
+			}
+		}
+
+		/**
+		 * Return the slot of the given part of a string, or the empty slot
+		 * where it belongs.
+		 */
+		private int find(int hash, String s, int offset, int length) {
+			int mask = names.length - 1;
+			int i = (hash ^ (hash >>> 16)) & mask;
+			while (names[i] != null) {
+				if (hashes[i] == hash && names[i].length() == length
+						&& s.regionMatches(true, offset, names[i], 0, length)) {
+					return i;
+				}
+				i = (i + 1) & mask;
+			}
+			return i;
+		}
+
+		/**
+		 * Count the entry just put in the given slot, growing the table if
+		 * it's half full, and return where the entry is now.
+		 */
+		private int added(int slot) {
+			if (++size * 2 <= names.length) {
+				return slot;
+			}
+			String name = names[slot];
+			int hash = hashes[slot];
+			int[] oldHashes = hashes;
+			String[] oldNames = names;
+			long[] oldFiles = files;
+			long[] oldBytes = bytes;
+			int n = oldNames.length * 2;
+			hashes = new int[n];
+			names = new String[n];
+			files = new long[n];
+			bytes = new long[n];
+			for (int i = 0; i < oldNames.length; i++) {
+				if (oldNames[i] != null) {
+					int j = find(oldHashes[i], oldNames[i], 0, oldNames[i].length());
+					hashes[j] = oldHashes[i];
+					names[j] = oldNames[i];
+					files[j] = oldFiles[i];
+					bytes[j] = oldBytes[i];
+				}
+			}
+			return find(hash, name, 0, name.length());
+		}
+	}
+}
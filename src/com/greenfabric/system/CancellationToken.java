@@ -0,0 +1,98 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A flag that one thread raises to ask an operation running in another thread
+ * to stop. The operation checks isCancelled() at convenient points; code that
+ * is blocked, like a thread reading the output of a native program, registers
+ * a listener that unblocks it instead.
+ * <p>
+ *
+ * A token can be cancelled only once, and can't be reset.
+ *
+ * <pre>
+ * CancellationToken token = new CancellationToken();
+ * find.setCancellationToken(token);
+ * ... // Then, from another thread:
+ * token.cancel();
+ * </pre>
+ */
+public class CancellationToken {
+
+	private volatile boolean cancelled = false;
+
+	private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+	/**
+	 * Ask the operations using me to stop, and run my listeners. Calling this
+	 * more than once does nothing.
+	 */
+	public void cancel() {
+		Runnable[] toRun;
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			toRun = listeners.toArray(new Runnable[listeners.size()]);
+			listeners.clear();
+		}
+		for (int i = 0; i < toRun.length; i++) {
+			toRun[i].run();
+		}
+	}
+
+	/**
+	 * Return true if I've been cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Arrange for the given code to run when I'm cancelled. It runs in the
+	 * cancelling thread, so it should be quick. If I've already been cancelled,
+	 * it runs right away, in the calling thread.
+	 */
+	public void addListener(Runnable listener) {
+		synchronized (this) {
+			if (!cancelled) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	/**
+	 * Forget a listener. Operations should call this when they finish, so that a
+	 * long-lived token doesn't hold on to them.
+	 */
+	public synchronized void removeListener(Runnable listener) {
+		listeners.remove(listener);
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.system;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * The attributes of a file, as returned by one call to
+ * {@link OSInfo#stat(java.io.File, boolean)}. This is the Java equivalent of
+ * the unix <code>struct stat</code>: everything is fetched at once, so that
+ * code which needs several attributes of a file doesn't go back to the
+ * operating system for each one.
+ * <p>
+ *
+ * Attributes that the current OS can't report are zero. For example, on
+ * Windows the inode, device, mode and owner are always zero.
+ */
+public final class FileStat {
+
+	/*
+	 * File type bits, as found in the S_IFMT part of the unix mode.
+	 */
+	static final int TYPE_MASK = 0170000;
+
+	static final int TYPE_DIRECTORY = 0040000;
+
+	static final int TYPE_FILE = 0100000;
+
+	static final int TYPE_SYMLINK = 0120000;
+
+	private final long size;
+
+	private final long lastModified;
+
+	private final long lastAccessed;
+
+	private final long lastChanged;
+
+	private final long inode;
+
+	private final long device;
+
+	private final int mode;
+
+	private final int uid;
+
+	private final int gid;
+
+	private final int links;
+
+	/**
+	 * Constructs a new FileStat. This is meant to be called by the OSInfo
+	 * adapters, and by code that parses attributes reported by native tools.
+	 *
+	 * @param mode the unix mode, including the file type bits.
+	 */
+	public FileStat(long size, long lastModified, long lastAccessed, long lastChanged, long inode, long device,
+			int mode, int uid, int gid, int links) {
+		this.size = size;
+		this.lastModified = lastModified;
+		this.lastAccessed = lastAccessed;
+		this.lastChanged = lastChanged;
+		this.inode = inode;
+		this.device = device;
+		this.mode = mode;
+		this.uid = uid;
+		this.gid = gid;
+		this.links = links;
+	}
+
+	/**
+	 * Create a FileStat from the portable attributes that every platform
+	 * supports. The file type is translated into unix mode bits, and everything
+	 * else that's unix specific is left at zero.
+	 */
+	static FileStat fromBasic(BasicFileAttributes attrs) {
+		int type;
+		if (attrs.isDirectory())
+			type = TYPE_DIRECTORY;
+		else if (attrs.isSymbolicLink())
+			type = TYPE_SYMLINK;
+		else if (attrs.isRegularFile())
+			type = TYPE_FILE;
+		else
+			type = 0;
+		long modified = attrs.lastModifiedTime().toMillis();
+		return new FileStat(attrs.size(), modified, attrs.lastAccessTime().toMillis(), modified, 0, 0, type, 0, 0, 1);
+	}
+
+	/**
+	 * Return the size in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Return the modification time, in milliseconds since the epoch.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Return the access time, in milliseconds since the epoch.
+	 */
+	public long getLastAccessed() {
+		return lastAccessed;
+	}
+
+	/**
+	 * Return the status change time (unix ctime), in milliseconds since the
+	 * epoch. This changes whenever the file's inode does: when it's written,
+	 * renamed, linked or has its permissions changed. On systems without a ctime
+	 * this is the modification time.
+	 */
+	public long getLastChanged() {
+		return lastChanged;
+	}
+
+	/**
+	 * Return the inode number, or 0 if the OS doesn't have inodes.
+	 */
+	public long getInode() {
+		return inode;
+	}
+
+	/**
+	 * Return the id of the device the file lives on, or 0 if unknown.
+	 */
+	public long getDevice() {
+		return device;
+	}
+
+	/**
+	 * Return the full unix mode, including the file type bits.
+	 */
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * Return just the permission bits of the mode (including setuid, setgid
+	 * and sticky).
+	 */
+	public int getPermissions() {
+		return mode & 07777;
+	}
+
+	/**
+	 * Return the numeric id of the owner.
+	 */
+	public int getUid() {
+		return uid;
+	}
+
+	/**
+	 * Return the numeric id of the group.
+	 */
+	public int getGid() {
+		return gid;
+	}
+
+	/**
+	 * Return the number of hard links to the file.
+	 */
+	public int getLinks() {
+		return links;
+	}
+
+	/**
+	 * Return true if this is a directory.
+	 */
+	public boolean isDirectory() {
+		return (mode & TYPE_MASK) == TYPE_DIRECTORY;
+	}
+
+	/**
+	 * Return true if this is a regular file.
+	 */
+	public boolean isFile() {
+		return (mode & TYPE_MASK) == TYPE_FILE;
+	}
+
+	/**
+	 * Return true if this is a symbolic link. This can only be true when the
+	 * stat was done without following links.
+	 */
+	public boolean isSymLink() {
+		return (mode & TYPE_MASK) == TYPE_SYMLINK;
+	}
+}
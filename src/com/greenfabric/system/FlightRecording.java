@@ -0,0 +1,67 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.system;
+
+/**
+ * Tells whether javafind's flight recorder events are worth creating. An
+ * event class extends jdk.jfr.Event, so creating one loads the flight
+ * recorder's classes, even when nothing is recording, and fails on a runtime
+ * that was linked without the jdk.jfr module. So the code that records an
+ * event checks isRecording() first.
+ *
+ * <pre>
+ * DirectoryListEvent event = FlightRecording.isRecording() ? new DirectoryListEvent() : null;
+ * </pre>
+ */
+public final class FlightRecording {
+
+	/*
+	 * False if this runtime has no flight recorder.
+	 */
+	private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+	private FlightRecording() {
+	}
+
+	/**
+	 * Return true if the flight recorder has been started in this JVM, from
+	 * the command line or later. Until then, the only class of jdk.jfr that's
+	 * loaded is FlightRecorder.
+	 */
+	public static boolean isRecording() {
+		return AVAILABLE && Recorder.isInitialized();
+	}
+
+	/*
+	 * PRIVATE CLASSES
+	 */
+
+	/**
+	 * Refers to jdk.jfr, so that it's only loaded if the module is there.
+	 */
+	private static final class Recorder {
+		static boolean isInitialized() {
+			return jdk.jfr.FlightRecorder.isInitialized();
+		}
+	}
+}
@@ -23,6 +23,8 @@
 package com.greenfabric.system;
 
 import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This class contains the knowledge needed to make decisions or detect
@@ -32,6 +34,11 @@ import java.io.*;
  **/
 public class GnuInfo {
 
+    /**
+     * The answers findExecutable() has given, including null ones.
+     **/
+    private static final Map<String, File> executables = new HashMap<String, File>();
+
     /**
      * Return true if the current operating system is one known to be based 
      * on the GNU software utilities.
@@ -47,11 +54,18 @@ public class GnuInfo {
 
     /**
      * Tries to locate the given executable in the standard
-     * executable directories.  To-do: Cache the answers given.
+     * executable directories.  Each one is only looked for once.
      *
      * @return the file if found and readable, or null if not.
      **/
-    public static File findExecutable(String execName) {
+    public static synchronized File findExecutable(String execName) {
+	if (! executables.containsKey(execName))
+	    executables.put(execName, lookFor(execName));
+	return executables.get(execName);
+    }
+
+
+    private static File lookFor(String execName) {
 	String[] binDirectories = new String[] 
 	    {"/usr/bin", "/bin", "/usr/local/bin"};
 
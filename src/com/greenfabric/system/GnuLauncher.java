@@ -23,6 +23,8 @@
 package com.greenfabric.system;
 
 import java.io.*;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class performs the service of executing commands in a GNU
@@ -102,21 +104,87 @@ public class GnuLauncher {
      **/
     public static void exec(StdOutConsumer consumer, String command) throws 
 	IOException, IllegalStateException {
+	exec(consumer, command, null);
+    }
+
+
+    /**
+     * Execute a command using bash, stopping early if the given token is
+     * cancelled.  Stopping kills the whole process tree: bash, and every
+     * program in the pipeline it started.  A consumer can stop the command
+     * by cancelling the token from within receive(); no more lines are
+     * delivered after that.
+     *
+     * Each command is recorded as a flight recorder event, with how long
+     * it ran, how many lines it printed, and its exit status, if the flight
+     * recorder has been started.  Waiting for the status is only done while
+     * the event is being recorded.
+     *
+     * @param token	may be null, meaning the command always runs to
+     *			the end.
+     * @return		true if the command ran to the end, false if it
+     *			was stopped.
+     * @see #exec(StdOutConsumer, String)
+     **/
+    public static boolean exec(StdOutConsumer consumer, String command,
+			       CancellationToken token) throws 
+	IOException, IllegalStateException {
 
 	if (! canFunction())
 	    throw new IllegalStateException("This is not a GNU system.");
 
+	NativeProcessEvent event = FlightRecording.isRecording() ?
+	    new NativeProcessEvent() : null;
+	if (event != null)
+	    event.begin();
 	String[] cmd = new String[] { bashLocation, "-c", command };
-	Process p  = rt.exec(cmd);
+	final Process p  = rt.exec(cmd);
 	BufferedReader in = new BufferedReader(
 				new InputStreamReader(
 				    p.getInputStream()));
 
-	String line;
-	while ((line = in.readLine()) != null) {
-	    consumer.receive(line);
+	/*
+	 * A cancel from another thread kills the processes, which ends
+	 * the output and so unblocks readLine().
+	 */
+	Runnable killer = new Runnable() { public void run() {
+		destroyTree(p);
+	    }};
+	if (token != null)
+	    token.addListener(killer);
+
+	long lines = 0;
+	boolean ended = false;
+	try {
+	    String line;
+	    while ((line = in.readLine()) != null) {
+		if (token != null && token.isCancelled())
+		    break;
+		consumer.receive(line);
+		lines++;
+	    }
+	    ended = true;
+	} catch (IOException e) {
+	    if (token == null || ! token.isCancelled())
+		throw e;
+	} finally {
+	    if (token != null) {
+		token.removeListener(killer);
+		if (token.isCancelled())
+		    destroyTree(p);
+	    }
+	    in.close();
+	    if (event != null) {
+		event.end();
+		if (event.shouldCommit()) {
+		    event.command  = command;
+		    event.lines    = lines;
+		    event.exitCode = ended ? exitCode(p) : -1;
+		    event.commit();
+		}
+	    }
 	}
-	in.close();
+	return token == null || ! token.isCancelled();
     }
 
 
@@ -124,12 +192,41 @@ public class GnuLauncher {
      * Return true if I can work in this environment.  Should be checked before
      * attempting to call exec().
      **/
-    public static boolean canFunction() {
+    public static synchronized boolean canFunction() {
 	if (canFunction == null) {
-	    bashLocation = GnuInfo.findExecutable("bash").toString();
-	    canFunction  = new Boolean( bashLocation != null );
+	    File bash = GnuInfo.findExecutable("bash");
+	    bashLocation = (bash != null) ? bash.toString() : null;
+	    canFunction  = Boolean.valueOf( bashLocation != null );
 	}
 
 	return canFunction.booleanValue();
     }
+
+
+    /**
+     * Return the exit status of a process whose output has ended, or -1
+     * if it doesn't exit soon after.  Once its output is closed, it's
+     * normally about to.
+     **/
+    private static int exitCode(Process p) {
+	try {
+	    if (p.waitFor(100, TimeUnit.MILLISECONDS))
+		return p.exitValue();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	return -1;
+    }
+
+
+    /**
+     * Kill a process and all of its descendants.  The descendants go
+     * first, because once bash is gone they're no longer its children.
+     **/
+    private static void destroyTree(Process p) {
+	Iterator<ProcessHandle> children = p.descendants().iterator();
+	while (children.hasNext())
+	    children.next().destroy();
+	p.destroy();
+    }
 }
@@ -0,0 +1,235 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.system;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A consumer that writes lines to a channel, usually standard output, as fast
+ * as possible. It's meant for printing large numbers of pathnames, e.g. when
+ * the output of a find is piped into another program.
+ * <p>
+ *
+ * System.out.println() takes a lock, converts the line through a chain of
+ * writers, and may flush, for every line. A LineWriter instead encodes each
+ * line straight into one large byte buffer, which is reused, and writes the
+ * buffer out in big blocks. Lines that are pure ASCII, like most pathnames,
+ * are copied without going through the charset encoder at all. Lines can end
+ * in a newline or, for <code>xargs -0</code> and the like, a NUL character.
+ * <p>
+ *
+ * Nothing appears until the buffer fills up or flush() is called. The shared
+ * instance for standard output is flushed when the JVM exits, too.
+ * <p>
+ *
+ * Like a PrintStream, a LineWriter never throws an IOException: when writing
+ * fails, for example because the reading end of a pipe was closed, the rest
+ * of the output is dropped, and checkError() returns true.
+ */
+public final class LineWriter implements StdOutConsumer {
+
+	/**
+	 * The default buffer size: big enough that writes are rare, small enough to
+	 * not matter.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private static LineWriter stdOut;
+
+	private final WritableByteChannel channel;
+
+	private final byte[] buffer;
+
+	/*
+	 * A view of the buffer, for the encoder to write into.
+	 */
+	private final ByteBuffer bytes;
+
+	private final CharsetEncoder encoder;
+
+	/*
+	 * True if the charset encodes every ASCII character as the same single
+	 * byte, so that ASCII lines can be copied straight into the buffer.
+	 */
+	private final boolean asciiCompatible;
+
+	private int count = 0;
+
+	private boolean error = false;
+
+	/**
+	 * Constructs a new LineWriter.
+	 *
+	 * @param channel    where to write.
+	 * @param bufferSize how many bytes to collect before writing.
+	 * @param charset    how to encode the lines.
+	 */
+	public LineWriter(WritableByteChannel channel, int bufferSize, Charset charset) {
+		this.channel = channel;
+		buffer = new byte[bufferSize];
+		bytes = ByteBuffer.wrap(buffer);
+		encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		asciiCompatible = isAsciiCompatible(charset);
+	}
+
+	/**
+	 * Return the shared LineWriter for standard output. It uses the default
+	 * charset, like System.out, and is flushed when the JVM exits.
+	 */
+	public static synchronized LineWriter getStdOut() {
+		if (stdOut == null) {
+			stdOut = new LineWriter(new FileOutputStream(FileDescriptor.out).getChannel(), DEFAULT_BUFFER_SIZE,
+					Charset.defaultCharset());
+			Runtime.getRuntime().addShutdownHook(new Thread("javafind-flush") {
+				public void run() {
+					stdOut.flush();
+				}
+			});
+		}
+		return stdOut;
+	}
+
+	/**
+	 * Write the given line, followed by a newline.
+	 */
+	public void receive(String line) {
+		write(line, (byte) '\n');
+	}
+
+	/**
+	 * Write the given line, followed by the given terminator: normally '\n', or
+	 * 0 for NUL-separated output.
+	 */
+	public synchronized void write(String line, byte terminator) {
+		int n = line.length();
+		int i = 0;
+		if (asciiCompatible && n < buffer.length - count) {
+			for (; i < n; i++) {
+				char c = line.charAt(i);
+				if (c >= 0x80) {
+					break;
+				}
+				buffer[count++] = (byte) c;
+			}
+		}
+		if (i < n) {
+			encode(line, i);
+		}
+		if (count == buffer.length) {
+			writeBuffer();
+		}
+		buffer[count++] = terminator;
+	}
+
+	/**
+	 * Write bytes that are already encoded, like a formatted record. They go
+	 * out as they are, with no terminator added.
+	 */
+	public synchronized void write(byte[] b, int off, int len) {
+		while (len > 0) {
+			if (count == buffer.length) {
+				writeBuffer();
+			}
+			int n = Math.min(len, buffer.length - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Write out everything that has been buffered.
+	 */
+	public synchronized void flush() {
+		writeBuffer();
+	}
+
+	/**
+	 * Return true if writing has failed, which means some output was lost.
+	 */
+	public synchronized boolean checkError() {
+		return error;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Encode the rest of a line, starting at the given index, into the buffer,
+	 * writing the buffer out as often as it fills up.
+	 */
+	private void encode(String line, int start) {
+		CharBuffer in = CharBuffer.wrap(line, start, line.length());
+		encoder.reset();
+		boolean flushing = false;
+		while (true) {
+			bytes.limit(buffer.length);
+			bytes.position(count);
+			CoderResult result = flushing ? encoder.flush(bytes) : encoder.encode(in, bytes, true);
+			count = bytes.position();
+			if (result.isOverflow()) {
+				writeBuffer();
+			} else if (flushing) {
+				return;
+			} else {
+				flushing = true;
+			}
+		}
+	}
+
+	private void writeBuffer() {
+		if (count > 0 && !error) {
+			ByteBuffer out = ByteBuffer.wrap(buffer, 0, count);
+			try {
+				while (out.hasRemaining()) {
+					channel.write(out);
+				}
+			} catch (IOException e) {
+				error = true;
+			}
+		}
+		count = 0;
+	}
+
+	private static boolean isAsciiCompatible(Charset charset) {
+		byte[] ascii = new byte[128];
+		for (int i = 0; i < ascii.length; i++) {
+			ascii[i] = (byte) i;
+		}
+		String s = new String(ascii, Charset.forName("US-ASCII"));
+		return Arrays.equals(s.getBytes(charset), ascii);
+	}
+}
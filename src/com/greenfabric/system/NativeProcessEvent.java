@@ -0,0 +1,54 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.system;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A flight recorder event for a command run by GnuLauncher, from its launch
+ * until the end of its output. Every command is recorded by default.
+ **/
+@Name("com.greenfabric.system.NativeProcess")
+@Label("Native Process")
+@Category({ "JavaFind", "Native" })
+@Description("A command run through bash, from launch to the end of its output")
+@Threshold("0 ms")
+@StackTrace(false)
+final class NativeProcessEvent extends Event {
+
+    @Label("Command")
+    String command;
+
+    @Label("Lines")
+    long lines;
+
+    @Label("Exit Code")
+    @Description("The exit status, or -1 if the output failed or the command didn't exit after it")
+    int exitCode;
+}
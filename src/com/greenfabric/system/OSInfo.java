@@ -51,4 +51,18 @@ public interface OSInfo {
 	 *         and allows them to be tested from Java.
 	 */
 	public boolean supportsSymLinks();
+
+	/**
+	 * Fetch all of the attributes of a file with a single call to the OS.
+	 * 
+	 * @param follow
+	 *            if true, and the file is a symbolic link, the attributes of
+	 *            the link's target are returned. Otherwise the link itself is
+	 *            described.
+	 * 
+	 * @exception IOException
+	 *                if the file doesn't exist, or its attributes can't be
+	 *                read.
+	 */
+	public FileStat stat(File aFile, boolean follow) throws IOException;
 }
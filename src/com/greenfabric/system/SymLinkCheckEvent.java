@@ -0,0 +1,51 @@
+/*
+ * The Original Code is 'JavaFind'
+ * The Initial Developer of the Original Code is Robb Shecter. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002, 2003, 2004 by
+ * Robb Shecter. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * The contents of this file may be used under the terms of the LGPL license
+ * (the "GNU LIBRARY GENERAL PUBLIC LICENSE").
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Library General Public License as published 
+ * by the Free Software Foundation; either version 2 of the License, or any
+ * later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ */
+package com.greenfabric.system;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A flight recorder event for a symbolic link check that had to resolve the
+ * file's canonical path. By default only checks that take 1 ms or more are
+ * recorded, which points at slow or remote file systems.
+ **/
+@Name("com.greenfabric.system.SymLinkCheck")
+@Label("Symbolic Link Check")
+@Category({ "JavaFind", "Native" })
+@Description("A check of whether a file is a symbolic link")
+@Threshold("1 ms")
+@StackTrace(false)
+final class SymLinkCheckEvent extends Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Symbolic Link")
+    boolean symLink;
+}
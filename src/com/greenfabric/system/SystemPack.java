@@ -29,12 +29,26 @@ package com.greenfabric.system;
  * @author      Robb Shecter, robb@acm.org
  **/
 public class SystemPack {
-    
+
+    /**
+     * Holds the shared OSInfo.  The implementations keep no state, so one
+     * will do, and it's only made when first asked for.
+     **/
+    private static class Shared {
+	static final OSInfo osInfo = createOSInfo();
+    }
+
+
     /**
      * Return a reference to an OSInfo implementation that's
      * appropriate for the current platform.
      **/
     public static OSInfo getOSInfo() {
+	return Shared.osInfo;
+    }
+
+
+    private static OSInfo createOSInfo() {
 	/*
 	 * Currently, the logic here is very simple.  It can 
 	 * be easily expanded if mroe adapters (implementations
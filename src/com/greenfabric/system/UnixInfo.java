@@ -23,6 +23,14 @@
 package com.greenfabric.system;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
 import org.apache.oro.text.perl.Perl5Util;
 
 /**
@@ -31,20 +39,58 @@ import org.apache.oro.text.perl.Perl5Util;
  * @author      Robb Shecter, robb@acm.org
  **/
 class UnixInfo implements OSInfo {
-    private Perl5Util regex = new Perl5Util();
 
     /**
      * Regex-notation for the file path separator.
      **/
     private static String sep = "\\" + File.separatorChar;
 
+    /**
+     * The attributes fetched by stat(), in the syntax of
+     * Files.readAttributes().
+     **/
+    private static final String STAT_ATTRIBUTES =
+	"unix:size,lastModifiedTime,lastAccessTime,ctime,ino,dev,mode,uid,gid,nlink";
+
+    private static final LinkOption[] FOLLOW    = new LinkOption[0];
+    private static final LinkOption[] NO_FOLLOW =
+	new LinkOption[] { LinkOption.NOFOLLOW_LINKS };
+
+    /**
+     * Set to false the first time the "unix" attribute view turns out to
+     * be unavailable, so that we don't keep trying.
+     **/
+    private static boolean unixViewAvailable = true;
+
 
     public boolean supportsSymLinks() { return true; }
 
 
     /**
-      * Return true if this is a symbolic link.  The
-      * basic algorithm is to compare the absolute path with the canonical
+      * Return true if this is a symbolic link.  A check that takes longer
+      * than its threshold is recorded as a flight recorder event.
+      *
+      * @exception	IOException	if the OS cannot access the info
+      *					it needs to check the file status.
+      **/
+    public boolean isSymLink(File aFile) throws IOException {
+	if (! FlightRecording.isRecording())
+	    return checkSymLink(aFile);
+	SymLinkCheckEvent event = new SymLinkCheckEvent();
+	event.begin();
+	boolean isSymLink = checkSymLink(aFile);
+	event.end();
+	if (event.shouldCommit()) {
+	    event.path    = aFile.getPath();
+	    event.symLink = isSymLink;
+	    event.commit();
+	}
+	return isSymLink;
+    }
+
+
+    /**
+      * Do the work of isSymLink().  The basic algorithm is to compare the absolute path with the canonical
       * path.  If they're not equal, then the file is a symbolic link. <p>
       *
       * It turns out that a bit of work is required to rule out a "false
@@ -74,7 +120,7 @@ class UnixInfo implements OSInfo {
       * @exception	IOException	if the OS cannot access the info
       *					it needs to check the file status.
       **/
-    public boolean isSymLink(File aFile) throws IOException {
+    private boolean checkSymLink(File aFile) throws IOException {
         String absolutePath  = aFile.getAbsolutePath();
         String canonicalPath = aFile.getCanonicalPath();
 
@@ -86,6 +132,7 @@ class UnixInfo implements OSInfo {
         }
 
         String fixedAbsolutePath = absolutePath;
+        Perl5Util regex = new Perl5Util(); // Only needed this far in.
 
         /*
          * Change "dirname/." to "dirname" iteratively
@@ -113,5 +160,45 @@ class UnixInfo implements OSInfo {
             return true;
         }
     }
-    
+
+
+    /**
+      * Fetch the attributes with a single call through the "unix"
+      * attribute view, which is the only one that reports the inode, mode
+      * and owner.  JVMs that don't provide that view get the basic
+      * attributes instead.
+      **/
+    public FileStat stat(File aFile, boolean follow) throws IOException {
+	LinkOption[] options = follow ? FOLLOW : NO_FOLLOW;
+	Path path;
+	try {
+	    path = aFile.toPath();
+	} catch (InvalidPathException e) {
+	    // The name can't be encoded in the platform charset.
+	    throw new IOException(e.getMessage());
+	}
+	if (unixViewAvailable) {
+	    try {
+		Map<String, Object> attrs = Files.readAttributes(path,
+						 STAT_ATTRIBUTES, options);
+		return new FileStat(
+			((Long) attrs.get("size")).longValue(),
+			((FileTime) attrs.get("lastModifiedTime")).toMillis(),
+			((FileTime) attrs.get("lastAccessTime")).toMillis(),
+			((FileTime) attrs.get("ctime")).toMillis(),
+			((Long) attrs.get("ino")).longValue(),
+			((Long) attrs.get("dev")).longValue(),
+			((Integer) attrs.get("mode")).intValue(),
+			((Integer) attrs.get("uid")).intValue(),
+			((Integer) attrs.get("gid")).intValue(),
+			((Integer) attrs.get("nlink")).intValue());
+	    } catch (UnsupportedOperationException e) {
+		unixViewAvailable = false;
+	    } catch (IllegalArgumentException e) {
+		unixViewAvailable = false;
+	    }
+	}
+	return FileStat.fromBasic(Files.readAttributes(path,
+					BasicFileAttributes.class, options));
+    }
 }
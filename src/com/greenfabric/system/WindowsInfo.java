@@ -23,6 +23,10 @@
 package com.greenfabric.system;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * An implementation of OSInfo for "MS Windows" operating systems.
@@ -40,4 +44,13 @@ class WindowsInfo implements OSInfo {
 		return false;
 	}
 
+	public FileStat stat(File aFile, boolean follow) throws IOException {
+		LinkOption[] options = follow ? new LinkOption[0] : new LinkOption[] { LinkOption.NOFOLLOW_LINKS };
+		try {
+			return FileStat.fromBasic(Files.readAttributes(aFile.toPath(), BasicFileAttributes.class, options));
+		} catch (InvalidPathException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
 }
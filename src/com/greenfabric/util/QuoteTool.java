@@ -64,10 +64,18 @@ import org.apache.oro.text.perl.Perl5Util;
 public class QuoteTool {
 
     private QuoteDelegate serverType;	// Handles different cases
-    private static Perl5Util regex = new Perl5Util(); // Pattern matcher
     private static final char bs = '\\';	// The backspace character
 
 
+	/**
+	 * Holds the pattern matcher, so that it's only made when a delegate
+	 * that uses it first quotes something.
+	 **/
+	private static class Matcher {
+		static final Perl5Util regex = new Perl5Util();
+	}
+
+
 	/**
 	 * A quote delegate contains the actual commands that quote a 
 	 * string depending on a particular database.  There will be 
@@ -91,7 +99,7 @@ public class QuoteTool {
 	 **/
 	public static final QuoteDelegate MYSQL = new QuoteDelegate() {
 	public String quote(String s) {
-	    return regex.substitute("s/(["+bs+bs+"'\"%_])/"+bs+"$1/g", s);
+	    return Matcher.regex.substitute("s/(["+bs+bs+"'\"%_])/"+bs+"$1/g", s);
 	}};
 	
 
@@ -105,7 +113,7 @@ public class QuoteTool {
 	 **/
 	public static final QuoteDelegate INSTANT_DB = new QuoteDelegate() {
 	public String quote(String s) {
-	    return regex.substitute("s/(["+bs+bs+"'])/"+bs+"$1/g", s);
+	    return Matcher.regex.substitute("s/(["+bs+bs+"'])/"+bs+"$1/g", s);
 	}};
 	
 
@@ -118,7 +126,7 @@ public class QuoteTool {
 	 **/
 	public static final QuoteDelegate ACCESS97 = new QuoteDelegate() {
 	public String quote(String s) {
-	    return regex.substitute("s/(['])/'$1/g", s);
+	    return Matcher.regex.substitute("s/(['])/'$1/g", s);
 	}};
 
 
@@ -132,7 +140,7 @@ public class QuoteTool {
 	 **/
 	public static final QuoteDelegate SQL_SERVER = new QuoteDelegate() {
 	public String quote(String s) {
-	    return regex.substitute("s/(["+bs+bs+"'])/"+bs+"$1/g", s);
+	    return Matcher.regex.substitute("s/(["+bs+bs+"'])/"+bs+"$1/g", s);
 	}};
 
 	
@@ -150,10 +158,10 @@ public class QuoteTool {
 	 **/
 	public static final QuoteDelegate HTML = new QuoteDelegate() {
 	public String quote(String s) {
-	   s = regex.substitute("s/&/&amp;/g", s);
-	   s = regex.substitute("s/>/&gt;/g", s);
-	   s = regex.substitute("s/</&lt;/g", s);
-	   s = regex.substitute("s/\"/&quot;/g", s);
+	   s = Matcher.regex.substitute("s/&/&amp;/g", s);
+	   s = Matcher.regex.substitute("s/>/&gt;/g", s);
+	   s = Matcher.regex.substitute("s/</&lt;/g", s);
+	   s = Matcher.regex.substitute("s/\"/&quot;/g", s);
 	   return s;
 	}};
 
@@ -201,6 +209,32 @@ public class QuoteTool {
 	};
 	
 
+	/**
+	 * Specify Bourne shell quoting.  The whole string is put inside
+	 * single quotes, where nothing is special to the shell except the
+	 * single quote itself.
+	 *
+	 * <pre>
+	 * text	--->	'text'
+	 * '	--->	'\''
+	 * </pre>
+	 **/
+	public static final QuoteDelegate SHELL = new QuoteDelegate() {
+	public String quote(String s) {
+	    StringBuffer result = new StringBuffer(s.length() + 2);
+	    result.append('\'');
+	    for (int i=0; i<s.length(); i++) {
+		char c = s.charAt(i);
+		if (c == '\'')
+		    result.append("'\\''");
+		else
+		    result.append(c);
+	    }
+	    result.append('\'');
+	    return result.toString();
+	}};
+
+
     /**
      * Specify HTTP URL quoting.
      **/
@@ -283,6 +317,7 @@ public class QuoteTool {
 	QuoteTool tool4 = new QuoteTool(QuoteTool.HTML);
 	QuoteTool tool5 = new QuoteTool(QuoteTool.INSTANT_DB);
 	QuoteTool tool6 = new QuoteTool(QuoteTool.HTTP);
+	QuoteTool tool7 = new QuoteTool(QuoteTool.SHELL);
 
 	System.out.println("Original text: "+text);
 	System.out.println("SQL SERVER:    "+tool1.quote(text));
@@ -291,6 +326,7 @@ public class QuoteTool {
 	System.out.println("HTML:          "+tool4.quote(text));
 	System.out.println("INSTANT DB:    "+tool5.quote(text));
 	System.out.println("HTTP:          "+tool6.quote(text));
+	System.out.println("SHELL:         "+tool7.quote(text));
     }
 
 